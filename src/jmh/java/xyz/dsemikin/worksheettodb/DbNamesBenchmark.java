@@ -0,0 +1,54 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DbNamesBenchmark {
+
+    @Param({"100"})
+    public int namesCount;
+
+    /** Number of different names. Names repeat, so that unique suffixes must be generated. */
+    @Param({"20"})
+    public int distinctNamesCount;
+
+    private List<String> names;
+
+    @Setup(Level.Trial)
+    public void createNames() {
+        names = new ArrayList<>(namesCount);
+        for (int nameNum = 0; nameNum < namesCount; ++nameNum) {
+            names.add("Time Bookings (Q" + (nameNum % distinctNamesCount) + ") - \u00dcbersicht");
+        }
+    }
+
+    @Benchmark
+    public void simplifyStringForDbName(final Blackhole blackhole) {
+        for (final String name : names) {
+            blackhole.consume(SqlDbTableImporter.simplifyStringForDbName(name));
+        }
+    }
+
+    @Benchmark
+    public List<String> generateUniqueNamesForDb() {
+        return SqlDbTableImporter.generateUniqueNamesForDb(names);
+    }
+}
@@ -0,0 +1,23 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExcelFileReaderBenchmark {
+
+    @Benchmark
+    public Map<String, SheetData> readExcelFile(final GeneratedWorkbook workbook) throws IOException, ExcelFileStructureException {
+        return ExcelFileReader.readExcelFile(workbook.path);
+    }
+}
@@ -0,0 +1,42 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** xlsx file, which is generated once per benchmark trial (see {@link XlsxGenerator}). */
+@State(Scope.Benchmark)
+public class GeneratedWorkbook {
+
+    @Param({"2"})
+    public int sheets;
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"10"})
+    public int columns;
+
+    @Param({"nsdbx"})
+    public String typeMix;
+
+    public Path path;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        path = Files.createTempFile("worksheet-to-db-bench-", ".xlsx");
+        XlsxGenerator.generate(path, sheets, rows, columns, typeMix);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
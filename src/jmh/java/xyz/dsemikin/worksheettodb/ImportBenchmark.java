@@ -0,0 +1,50 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/** Whole import (reading the file and writing to DB) into in-memory H2 database. */
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+
+    @Param({"true", "false"})
+    public boolean bulkLoad;
+
+    /** 0 - exact type detection (file is read twice). */
+    @Param({"0", "1000"})
+    public int sampleRows;
+
+    private int dbNum;
+
+    @Benchmark
+    public void importTables(final GeneratedWorkbook workbook)
+            throws IOException, ExcelFileStructureException, SheetImportException {
+        final Properties connectionProperties = new Properties();
+        connectionProperties.put("user", "sa");
+        connectionProperties.put("password", "");
+        final ImportOptions options = new ImportOptions()
+                .setBulkLoad(bulkLoad)
+                .setSampleRows(sampleRows);
+        // In-memory DB is dropped, when its last connection is closed, i.e. at the end of the import.
+        SqlDbTableImporter.importTables(
+                "jdbc:h2:mem:import_benchmark_" + (dbNum++),
+                connectionProperties,
+                RowSource.fromExcelFile(workbook.path),
+                options
+        );
+    }
+}
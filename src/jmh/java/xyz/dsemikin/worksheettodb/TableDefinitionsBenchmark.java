@@ -0,0 +1,35 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class TableDefinitionsBenchmark {
+
+    private Map<String, SheetData> data;
+
+    @Setup(Level.Trial)
+    public void readData(final GeneratedWorkbook workbook) throws IOException, ExcelFileStructureException {
+        data = ExcelFileReader.readExcelFile(workbook.path);
+    }
+
+    @Benchmark
+    public Map<String, TableDefinition> calculateTableDefinitions() {
+        return SqlDbTableImporter.calculateTableDefinitions(data);
+    }
+}
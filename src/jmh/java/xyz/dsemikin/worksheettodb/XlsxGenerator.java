@@ -0,0 +1,107 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+/**
+ * Writes synthetic xlsx files for benchmarks.
+ *
+ * Type of each column is defined by {@code typeMix}, which is cycled over the columns:
+ * 'n' - number, 's' - string, 'd' - date, 'b' - boolean, 'x' - string with about one third of
+ * cells empty. E.g. {@code "nsd"} with 5 columns gives number, string, date, number, string.
+ * Content is pseudo-random, but the same for the same parameters.
+ */
+public class XlsxGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            throw new IllegalArgumentException("""
+                    Generator takes five arguments:
+                     1. path to output xlsx file
+                     2. number of sheets
+                     3. number of data rows per sheet
+                     4. number of columns
+                     5. type mix (e.g. nsdbx, see XlsxGenerator)
+                    """);
+        }
+        generate(
+                Paths.get(args[0]),
+                Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]),
+                args[4]
+        );
+    }
+
+    public static void generate(
+            final Path path,
+            final int sheetsCount,
+            final int rowsCount,
+            final int columnsCount,
+            final String typeMix
+    ) throws IOException {
+        if (typeMix.isEmpty()) {
+            throw new IllegalArgumentException("Type mix must not be empty.");
+        }
+        final Random random = new Random(42);
+        final LocalDateTime baseDate = LocalDateTime.of(2021, 1, 1, 0, 0);
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000)) {
+            final CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+
+            for (int sheetNum = 0; sheetNum < sheetsCount; ++sheetNum) {
+                final Sheet sheet = workbook.createSheet("Sheet " + sheetNum);
+                final Row header = sheet.createRow(0);
+                for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+                    header.createCell(columnNum).setCellValue("Column " + columnNum);
+                }
+                for (int rowNum = 1; rowNum <= rowsCount; ++rowNum) {
+                    final Row row = sheet.createRow(rowNum);
+                    for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+                        final char type = typeMix.charAt(columnNum % typeMix.length());
+                        switch (type) {
+                            case 'n' -> row.createCell(columnNum).setCellValue(random.nextInt(100_000) / 100.0);
+                            case 's' -> row.createCell(columnNum).setCellValue(randomString(random));
+                            case 'd' -> {
+                                final Cell cell = row.createCell(columnNum);
+                                cell.setCellValue(baseDate.plusMinutes(random.nextInt(525_600)));
+                                cell.setCellStyle(dateStyle);
+                            }
+                            case 'b' -> row.createCell(columnNum).setCellValue(random.nextBoolean());
+                            case 'x' -> {
+                                if (random.nextInt(3) != 0) {
+                                    row.createCell(columnNum).setCellValue(randomString(random));
+                                }
+                            }
+                            default -> throw new IllegalArgumentException("Unknown column type in type mix: " + type);
+                        }
+                    }
+                }
+            }
+
+            try (OutputStream outputStream = Files.newOutputStream(path)) {
+                workbook.write(outputStream);
+            }
+            workbook.dispose();
+        }
+    }
+
+    /** Mostly repeating values (as in real data), with some unique ones. */
+    private static String randomString(final Random random) {
+        if (random.nextInt(10) == 0) {
+            return "Unique value " + random.nextLong();
+        }
+        return "Value " + random.nextInt(200);
+    }
+}
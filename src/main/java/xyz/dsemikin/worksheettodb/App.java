@@ -1,23 +1,76 @@
 package xyz.dsemikin.worksheettodb;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 public class App {
-    public static void main(String[] args) throws ExcelFileStructureException, IOException, SQLException {
 
-        if (args.length != 4) {
+    private static final Logger LOGGER = LoggerFactory.getLogger(App.class);
+    private static final long DAEMON_STOP_TIMEOUT_MILLIS = 60_000;
+
+    public static void main(String[] args) throws ExcelFileStructureException, IOException, SheetImportException, FileImportException {
+
+        if (args.length < 4) {
             throw new IllegalArgumentException("""
-                    "Application takes exactly four arguments:
-                     1. path to excel file,
-                     2. DB connection string
+                    "Application takes four arguments:
+                     1. path to excel file, directory or glob pattern (e.g. "data/*.xlsx")
+                        (all the files are imported in one run),
+                     2. DB connection string (or arrow:DIRECTORY to write each sheet into
+                        Arrow IPC file in the directory instead of DB)
                      3. DB username
                      4. DB password
+                    followed by optional options:
+                     --batch-size=N       number of rows in one JDBC batch (default: 1000)
+                     --commit-interval=N  commit transaction after each N batches (default: 10)
+                     --queue-capacity=N   max number of rows per sheet read, but not yet inserted (default: 10000)
+                     --parallelism=N      number of sheets read and imported in parallel (default: 1)
+                     --insert-parallelism=N  number of connections, which write rows of one sheet
+                                          in parallel chunks (row order is not kept) (default: 1)
+                     --sample-rows=N      detect column types from first N rows of each sheet
+                                          and widen columns later if needed (default: 0 - all rows)
+                     --bulk-load=true|false  use native bulk loader of the DB, if supported
+                                          (H2 embedded, PostgreSQL) (default: true)
+                     --incremental=true|false  update existing tables: insert new rows and
+                                          update changed ones (default: false)
+                     --key-column=NAME    column, which identifies rows in incremental mode
+                                          (default: rows are identified by content)
+                     --delete-missing=true|false  in incremental mode delete rows, which are not
+                                          in the sheet anymore (requires key column) (default: false)
+                     --skip-unchanged=true|false  skip xlsx sheets, which did not change since
+                                          last import (requires --incremental=true) (default: false)
+                     --spill-rows=true|false  keep rows read for type detection in temporary files
+                                          and import them from there instead of parsing the
+                                          file again (default: false)
+                     --import-plans=true|false  keep column types of imported sheets in DB and
+                                          reuse them for sheets with the same header row
+                                          instead of detecting types again (default: false)
+                     --resumable=true|false  record committed rows of each table, so that failed
+                                          import of the same file continues, where it stopped,
+                                          when it is started again (default: false)
+                     --id-column=true|false  add identity column "id" (primary key) to each
+                                          table (default: false)
+                     --index=HINTS        comma separated indexes to create after load, each
+                                          TABLE.COLUMN or TABLE.COLUMN1+COLUMN2 (TABLE may be *);
+                                          loaded tables are analyzed afterwards
+                     --lookup-tables=N    move string columns with at most N distinct values
+                                          to lookup tables (max 1000) (default: 0 - never)
+                     --progress-interval=N  log progress line each N seconds (default: 10, 0 - never)
+                     --report=PATH        write JSON report with import metrics to the file
+                     --file-parallelism=N number of files imported in parallel, if several files
+                                          are given (default: number of processors)
+                     --watch=true|false   first argument is inbox directory: import files, which
+                                          appear in it, and move them to done/ or failed/
+                                          subdirectories, until stopped (default: false)
                     """);
         }
 
@@ -25,18 +78,194 @@ public class App {
         final String connectionString = args[1];
         final String dbUsername = args[2];
         final String dbPassword = args[3];
+        final AppOptions appOptions = new AppOptions();
+        final ImportOptions importOptions = parseOptions(args, 4, appOptions);
 
 
-        final Path inputFilePath = Paths.get(args[0]);
-        Map<String, List<Map<String, ExcelValueWrapper>>> data = ExcelFileReader.readExcelFile(inputFilePath);
-
         final Properties connectionProperties = new Properties();
         connectionProperties.put("user", dbUsername);
         connectionProperties.put("password", dbPassword);
 
-        SqlDbTableImporter.importTables(connectionString, connectionProperties, data);
+        final ImportMetrics metrics = new ImportMetrics();
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            LOGGER.warn("Failed to register import metrics MBean. Metrics will not be available over JMX.", e);
+        }
+        final ProgressReporter progressReporter = appOptions.progressIntervalSeconds > 0
+                ? new ProgressReporter(metrics, appOptions.progressIntervalSeconds)
+                : null;
+        String status = "failed";
+        try {
+            if (connectionString.startsWith(ArrowFileExporter.URL_PREFIX)) {
+                if (appOptions.watch || BatchImporter.isBatchInput(inputPath)) {
+                    throw new IllegalArgumentException("Export to Arrow files is supported for single Excel file only.");
+                }
+                final Path outputDirectory = Paths.get(connectionString.substring(ArrowFileExporter.URL_PREFIX.length()));
+                ArrowFileExporter.exportTables(outputDirectory, RowSource.fromExcelFile(Paths.get(inputPath)), importOptions, metrics);
+            } else if (appOptions.watch) {
+                runDaemon(Paths.get(inputPath), connectionString, connectionProperties, importOptions, metrics);
+            } else if (BatchImporter.isBatchInput(inputPath)) {
+                importFiles(inputPath, connectionString, connectionProperties, importOptions, appOptions.fileParallelism, metrics);
+            } else {
+                SqlDbTableImporter.importTables(connectionString, connectionProperties, RowSource.fromExcelFile(Paths.get(inputPath)), importOptions, metrics);
+            }
+            status = "succeeded";
+        } finally {
+            if (progressReporter != null) {
+                progressReporter.close();
+            }
+            writeReport(appOptions.reportPath, metrics, status);
+            try {
+                metrics.unregisterMBean();
+            } catch (JMException e) {
+                LOGGER.warn("Failed to unregister import metrics MBean.", e);
+            }
+        }
 
         System.out.println("Done.");
     }
 
+    /** Options of the application itself, which are not passed to the importer. */
+    private static class AppOptions {
+        private int progressIntervalSeconds = 10;
+        private Path reportPath;
+        private int fileParallelism = Runtime.getRuntime().availableProcessors();
+        private boolean watch;
+    }
+
+    /** Runs until the JVM is stopped (e.g. with Ctrl+C). Import of the current file is finished before exit. */
+    private static void runDaemon(
+            final Path inbox,
+            final String connectionString,
+            final Properties connectionProperties,
+            final ImportOptions importOptions,
+            final ImportMetrics metrics
+    ) throws IOException {
+        try (ImportDaemon daemon = new ImportDaemon(inbox, connectionString, connectionProperties, importOptions, metrics)) {
+            final Thread mainThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    daemon.stop();
+                    mainThread.join(DAEMON_STOP_TIMEOUT_MILLIS);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to stop import daemon.", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "import-daemon-shutdown"));
+            daemon.run();
+        }
+    }
+
+    private static void importFiles(
+            final String inputPath,
+            final String connectionString,
+            final Properties connectionProperties,
+            final ImportOptions importOptions,
+            final int fileParallelism,
+            final ImportMetrics metrics
+    ) throws IOException, FileImportException {
+        final List<Path> files = BatchImporter.findExcelFiles(inputPath);
+        if (files.isEmpty()) {
+            LOGGER.info("No Excel files found in " + inputPath + ". No DB modification will be done.");
+            return;
+        }
+        LOGGER.info("Importing " + files.size() + " file(s) using " + fileParallelism + " thread(s).");
+        final List<BatchImporter.FileResult> results = BatchImporter.importFiles(
+                connectionString, connectionProperties, files, importOptions, fileParallelism, metrics);
+        BatchImporter.summary(results).forEach(System.out::println);
+        final Map<Path, Exception> failures = new LinkedHashMap<>();
+        for (final BatchImporter.FileResult result : results) {
+            if (!result.succeeded()) {
+                failures.put(result.path(), result.failure());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new FileImportException(failures);
+        }
+    }
+
+    private static void writeReport(final Path reportPath, final ImportMetrics metrics, final String status) {
+        if (reportPath == null) {
+            return;
+        }
+        try {
+            Files.writeString(reportPath, metrics.toJson(status));
+            LOGGER.info("Import report is written to " + reportPath + ".");
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write import report to " + reportPath + ".", e);
+        }
+    }
+
+    private static ImportOptions parseOptions(
+            final String[] args,
+            final int firstOptionIndex,
+            final AppOptions appOptions
+    ) {
+        final ImportOptions importOptions = new ImportOptions();
+        for (int argNum = firstOptionIndex; argNum < args.length; ++argNum) {
+            final String arg = args[argNum];
+            final int separatorIndex = arg.indexOf('=');
+            if (!arg.startsWith("--") || separatorIndex == -1) {
+                throw new IllegalArgumentException("Option must have form --name=value, but got: " + arg);
+            }
+            final String name = arg.substring(2, separatorIndex);
+            final String value = arg.substring(separatorIndex + 1);
+            switch (name) {
+                case "batch-size" -> importOptions.setBatchSize(parseInt(name, value));
+                case "commit-interval" -> importOptions.setCommitInterval(parseInt(name, value));
+                case "queue-capacity" -> importOptions.setQueueCapacity(parseInt(name, value));
+                case "parallelism" -> importOptions.setParallelism(parseInt(name, value));
+                case "insert-parallelism" -> importOptions.setInsertParallelism(parseInt(name, value));
+                case "sample-rows" -> importOptions.setSampleRows(parseInt(name, value));
+                case "bulk-load" -> importOptions.setBulkLoad(parseBoolean(name, value));
+                case "incremental" -> importOptions.setIncremental(parseBoolean(name, value));
+                case "key-column" -> importOptions.setKeyColumn(value);
+                case "delete-missing" -> importOptions.setDeleteMissing(parseBoolean(name, value));
+                case "skip-unchanged" -> importOptions.setSkipUnchanged(parseBoolean(name, value));
+                case "spill-rows" -> importOptions.setSpillRows(parseBoolean(name, value));
+                case "import-plans" -> importOptions.setImportPlans(parseBoolean(name, value));
+                case "resumable" -> importOptions.setResumable(parseBoolean(name, value));
+                case "id-column" -> importOptions.setIdColumn(parseBoolean(name, value));
+                case "index" -> importOptions.setIndexHints(List.of(value.split(",")));
+                case "lookup-tables" -> importOptions.setLookupTableMaxValues(parseInt(name, value));
+                case "progress-interval" -> {
+                    appOptions.progressIntervalSeconds = parseInt(name, value);
+                    if (appOptions.progressIntervalSeconds < 0) {
+                        throw new IllegalArgumentException("Value of option --" + name + " must not be negative, but got: " + value);
+                    }
+                }
+                case "report" -> appOptions.reportPath = Paths.get(value);
+                case "watch" -> appOptions.watch = parseBoolean(name, value);
+                case "file-parallelism" -> {
+                    appOptions.fileParallelism = parseInt(name, value);
+                    if (appOptions.fileParallelism < 1) {
+                        throw new IllegalArgumentException("Value of option --" + name + " must be positive, but got: " + value);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        // Files of a batch or an inbox should not fail one by one because of the options.
+        importOptions.validate();
+        return importOptions;
+    }
+
+    private static int parseInt(final String optionName, final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Value of option --" + optionName + " must be integer, but got: " + value);
+        }
+    }
+
+    private static boolean parseBoolean(final String optionName, final String value) {
+        return switch (value) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("Value of option --" + optionName + " must be true or false, but got: " + value);
+        };
+    }
+
 }
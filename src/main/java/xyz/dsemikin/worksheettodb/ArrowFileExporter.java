@@ -0,0 +1,101 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Alternative to {@link SqlDbTableImporter}, which writes each worksheet into columnar Arrow IPC
+ * file (see {@link ArrowFileRowSink}) instead of DB table. Such files can be read directly by
+ * analytics engines (e.g. with {@code pyarrow.ipc.open_file()}).
+ *
+ * Import runs the same way, as streaming import into DB: column types are detected during the
+ * first pass over the source (see also {@link ImportOptions#spillRows()}), and rows are written
+ * during the second one, sheets in parallel (see {@link ImportOptions#parallelism()}).
+ * Options, which make sense for DB only (incremental import, lookup tables, skipping unchanged
+ * sheets, insert parallelism, id columns, indexes, import plans and resumable import), and detection of types from samples are ignored.
+ */
+public class ArrowFileExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArrowFileExporter.class);
+
+    /** Prefix of the "connection string", which makes the application write Arrow files into the given directory. */
+    public static final String URL_PREFIX = "arrow:";
+
+    public static void exportTables(
+            final Path outputDirectory,
+            final RowSource source,
+            final ImportOptions options
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        exportTables(outputDirectory, source, options, new ImportMetrics());
+    }
+
+    /** Same as above, but progress of the export is recorded in {@code metrics}, while it runs. */
+    public static void exportTables(
+            final Path outputDirectory,
+            final RowSource source,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        warnAboutIgnoredOptions(options);
+        Files.createDirectories(outputDirectory);
+
+        final TableDefinitionsCollector collector = new TableDefinitionsCollector();
+        try (
+                RowSpill spill = options.spillRows() ? new RowSpill() : null;
+                BufferAllocator allocator = new RootAllocator()
+        ) {
+            final long schemaDetectionStartNanos = System.nanoTime();
+            if (spill == null) {
+                source.readRows(collector);
+            } else {
+                spill.record(source, collector);
+            }
+            metrics.schemaDetectionFinished(System.nanoTime() - schemaDetectionStartNanos);
+            final Map<String, TableDefinition> tableDefinitions = collector.tableDefinitions();
+            if (tableDefinitions.isEmpty()) {
+                LOGGER.info("Provided data is empty. No files will be written.");
+                return;
+            }
+            // Each sink gets its own allocator, so that memory of a failed table can not be left in others.
+            final RowSink.Factory sinkFactory = () -> new ArrowFileRowSink(
+                    outputDirectory,
+                    allocator.newChildAllocator("arrow-file-sink", 0, Long.MAX_VALUE),
+                    options,
+                    metrics);
+            final RowSource rowsSource = new MeteredRowSource(spill == null ? source : spill, metrics);
+            RowPipeline.run(rowsSource, tableDefinitions, sinkFactory, options);
+        }
+    }
+
+    private static void warnAboutIgnoredOptions(final ImportOptions options) {
+        if (options.sampleRows() > 0) {
+            // Column types of Arrow file can not be changed after it is started.
+            LOGGER.warn("Column types are detected from all rows, when exporting to Arrow files. Sample rows option is ignored.");
+        }
+        if (options.incremental() || options.skipUnchanged()) {
+            LOGGER.warn("Incremental import is not supported, when exporting to Arrow files. All sheets are written completely.");
+        }
+        if (options.lookupTableMaxValues() > 0) {
+            LOGGER.warn("Lookup tables are not created, when exporting to Arrow files.");
+        }
+        if (options.idColumn() || !options.indexHints().isEmpty()) {
+            LOGGER.warn("Id columns and indexes are not created, when exporting to Arrow files.");
+        }
+        if (options.resumable()) {
+            LOGGER.warn("Resumable import is not supported, when exporting to Arrow files. Files of all sheets are written completely.");
+        }
+        if (options.importPlans()) {
+            LOGGER.warn("Import plans are kept in DB only. Column types are detected, when exporting to Arrow files.");
+        }
+        if (options.insertParallelism() > 1) {
+            LOGGER.warn("Rows of one sheet are written by one thread, when exporting to Arrow files. Insert parallelism is ignored.");
+        }
+    }
+}
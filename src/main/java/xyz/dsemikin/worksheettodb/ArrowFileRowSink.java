@@ -0,0 +1,260 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.message.ArrowFieldNode;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes each table into Arrow IPC file {@code <table name>.arrow} in the output directory
+ * instead of DB (see {@link ArrowFileExporter}).
+ *
+ * Values are set directly into column vectors, which are written as one record batch each
+ * {@link ImportOptions#batchSize()} * {@link ImportOptions#commitInterval()} rows. Buffers
+ * of the batches are compressed with ZSTD.
+ *
+ * Column types: STRING and EMPTY - utf8 (EMPTY columns are filled with empty strings, as in DB),
+ * DOUBLE - float64, BOOLEAN - bool, DATE - timestamp[us] without time zone. Empty cells are nulls.
+ * Existing files are not overwritten. File of the table, which failed, is deleted.
+ */
+class ArrowFileRowSink implements RowSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArrowFileRowSink.class);
+
+    static final String FILE_EXTENSION = ".arrow";
+
+    private final Path outputDirectory;
+    private final BufferAllocator allocator;
+    private final int recordBatchSize;
+    private final ImportMetrics metrics;
+    private final CompressionCodec codec = CommonsCompressionFactory.INSTANCE.createCodec(CompressionUtil.CodecType.ZSTD);
+
+    private TableDefinition tableDefinition;
+    private Path file;
+    private FileChannel channel;
+    private VectorSchemaRoot root;
+    private CompressingFileWriter writer;
+    private int rowsInBatch;
+
+    /** Memory of the vectors is taken from {@code allocator} and released, when the sink is closed. */
+    ArrowFileRowSink(
+            final Path outputDirectory,
+            final BufferAllocator allocator,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) {
+        this.outputDirectory = outputDirectory;
+        this.allocator = allocator;
+        this.recordBatchSize = options.batchSize() * options.commitInterval();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void startTable(final TableDefinition tableDefinition) {
+        metrics.sheetWriteStarted(tableDefinition.sheetName());
+        this.tableDefinition = tableDefinition;
+        final Path tableFile = outputDirectory.resolve(tableDefinition.tableName() + FILE_EXTENSION);
+        LOGGER.info("Table " + tableDefinition.tableName() + ": Writing file " + tableFile + ".");
+        try {
+            channel = FileChannel.open(tableFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            // Only the file, which is created by the sink, is deleted, if import of the table fails.
+            file = tableFile;
+            root = VectorSchemaRoot.create(schemaOf(tableDefinition), allocator);
+            writer = new CompressingFileWriter(root, channel);
+            writer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Table " + tableDefinition.tableName() + ": Failed to create file " + tableFile + ".", e);
+        }
+        rowsInBatch = 0;
+    }
+
+    @Override
+    public void row(final List<ExcelValueWrapper> values) {
+        final int columnsCount = tableDefinition.columnsCount();
+        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+            final FieldVector vector = root.getVector(columnNum);
+            final ExcelValueWrapper value = values.get(columnNum);
+            final ExcelValueWrapper.Type columnType = tableDefinition.columnTypes().get(columnNum);
+            if (columnType == ExcelValueWrapper.Type.EMPTY) {
+                ((VarCharVector) vector).setSafe(rowsInBatch, new byte[0]); // by convention we use empty string
+            } else if (value.type() != ExcelValueWrapper.Type.EMPTY) {
+                switch (columnType) {
+                    case STRING  -> ((VarCharVector) vector).setSafe(rowsInBatch, value.maybeStringValue().getBytes(StandardCharsets.UTF_8));
+                    case DOUBLE  -> ((Float8Vector) vector).setSafe(rowsInBatch, value.doubleValue());
+                    case BOOLEAN -> ((BitVector) vector).setSafe(rowsInBatch, value.booleanValue() ? 1 : 0);
+                    case DATE    -> ((TimeStampMicroVector) vector).setSafe(rowsInBatch, epochMicros(value.maybeDateValue()));
+                    default -> throw new IllegalStateException("Unknown column type: " + columnType);
+                }
+            }
+        }
+        ++rowsInBatch;
+        if (rowsInBatch == recordBatchSize) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void endTable() {
+        if (rowsInBatch > 0) {
+            writeBatch();
+        }
+        try {
+            writer.end();
+            LOGGER.info("Table " + tableDefinition.tableName() + ": " + writer.bytesWritten() + " bytes written to " + file + ".");
+            closeFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Table " + tableDefinition.tableName() + ": Failed to write file " + file + ".", e);
+        }
+        metrics.sheetWriteFinished(tableDefinition.sheetName());
+        tableDefinition = null;
+        file = null;
+    }
+
+    /** Types of the columns can not be changed in the file, which is started, so only lengths of strings may change. */
+    @Override
+    public void widenTable(final TableDefinition widenedDefinition) {
+        if (!widenedDefinition.columnTypes().equals(tableDefinition.columnTypes())) {
+            throw new IllegalStateException("Table " + tableDefinition.tableName() +
+                    ": Column types of Arrow file can not be changed after it is started.");
+        }
+        tableDefinition = widenedDefinition;
+    }
+
+    @Override
+    public void abortTable() {
+        try {
+            closeFile();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to close file " + file + " after import failure.", e);
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete incomplete file " + file + ".", e);
+            }
+        }
+        tableDefinition = null;
+        file = null;
+    }
+
+    @Override
+    public void close() {
+        allocator.close();
+    }
+
+    static Schema schemaOf(final TableDefinition tableDefinition) {
+        final List<Field> fields = new ArrayList<>(tableDefinition.columnsCount());
+        for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+            fields.add(Field.nullable(tableDefinition.columnNames().get(columnNum), arrowType(tableDefinition.columnTypes().get(columnNum))));
+        }
+        return new Schema(fields);
+    }
+
+    static ArrowType arrowType(final ExcelValueWrapper.Type columnType) {
+        return switch (columnType) {
+            case BOOLEAN -> ArrowType.Bool.INSTANCE;
+            case DATE -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, null); // dates of Excel have no time zone
+            case DOUBLE -> new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case EMPTY, STRING -> ArrowType.Utf8.INSTANCE;
+        };
+    }
+
+    private static long epochMicros(final LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    private void writeBatch() {
+        final long startNanos = System.nanoTime();
+        root.setRowCount(rowsInBatch);
+        try (ArrowRecordBatch batch = compressedRecordBatch()) {
+            writer.writeCompressedBatch(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Table " + tableDefinition.tableName() + ": Failed to write file " + file + ".", e);
+        }
+        // Buffers are kept for the next batch. Values, which are not set, are nulls.
+        for (final FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+        metrics.batchExecuted(tableDefinition.sheetName(), rowsInBatch, System.nanoTime() - startNanos);
+        rowsInBatch = 0;
+    }
+
+    /**
+     * Same as {@link org.apache.arrow.vector.VectorUnloader} with codec does, but buffers of the vectors
+     * are kept for the next batch: codec releases buffers, which it compresses, so they are retained
+     * before, and batch retains compressed buffers itself, so they are released after.
+     */
+    private ArrowRecordBatch compressedRecordBatch() {
+        final List<ArrowFieldNode> nodes = new ArrayList<>(root.getFieldVectors().size());
+        final List<ArrowBuf> compressedBuffers = new ArrayList<>();
+        try {
+            for (final FieldVector vector : root.getFieldVectors()) {
+                nodes.add(new ArrowFieldNode(vector.getValueCount(), vector.getNullCount()));
+                for (final ArrowBuf buffer : vector.getFieldBuffers()) {
+                    buffer.getReferenceManager().retain();
+                    compressedBuffers.add(codec.compress(allocator, buffer));
+                }
+            }
+            return new ArrowRecordBatch(root.getRowCount(), nodes, compressedBuffers, CompressionUtil.createBodyCompression(codec), true);
+        } finally {
+            compressedBuffers.forEach(ArrowBuf::close);
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (root != null) {
+            root.close();
+            root = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /** {@link ArrowFileWriter} can not compress batches itself, so compressed batches are passed to it directly. */
+    private static class CompressingFileWriter extends ArrowFileWriter {
+
+        CompressingFileWriter(final VectorSchemaRoot root, final FileChannel channel) {
+            super(root, null, channel);
+        }
+
+        void writeCompressedBatch(final ArrowRecordBatch batch) throws IOException {
+            writeRecordBatch(batch);
+        }
+    }
+}
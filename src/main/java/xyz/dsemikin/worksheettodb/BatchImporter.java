@@ -0,0 +1,309 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Imports many Excel files into the same DB in one run.
+ *
+ * Files are imported in parallel by pool of {@code fileParallelism} worker threads, which steal
+ * work from each other ({@link ForkJoinPool}). Files are submitted from the largest to the smallest
+ * one, so that the batch does not end with one big file imported by a single thread, while other
+ * threads are idle.
+ *
+ * Each file is imported independently (with its own connections, see
+ * {@link SqlDbTableImporter#importTables(String, Properties, RowSource, ImportOptions, ImportMetrics)}):
+ * failure of one file does not stop import of other ones.
+ *
+ * Sheet names of all files are read before the import. Files, whose sheets get the same table
+ * names, are imported one after another in incremental import and are rejected otherwise.
+ */
+public class BatchImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchImporter.class);
+
+    /** Result of import of one file. {@code failure} is {@code null}, if the file was imported successfully. */
+    public record FileResult(Path path, long sizeInBytes, long durationMillis, Exception failure) {
+        public boolean succeeded() {
+            return failure == null;
+        }
+    }
+
+    /** Input is a directory or a glob pattern, i.e. it may denote more than one file. */
+    public static boolean isBatchInput(final String pathOrGlob) {
+        return indexOfGlobChar(pathOrGlob) != -1 || Files.isDirectory(Paths.get(pathOrGlob));
+    }
+
+    /**
+     * Excel files (xlsx and xls), which are denoted by {@code pathOrGlob}: the file itself, files in the
+     * directory (not recursively) or files, which match glob pattern (e.g. {@code data/*.xlsx} or
+     * {@code data/**.xlsx}). Lock files of Excel ({@code ~$...}) are skipped.
+     */
+    public static List<Path> findExcelFiles(final String pathOrGlob) throws IOException {
+        final int globStart = indexOfGlobChar(pathOrGlob);
+        if (globStart == -1) {
+            final Path path = Paths.get(pathOrGlob);
+            if (!Files.isDirectory(path)) {
+                return List.of(path);
+            }
+            try (Stream<Path> children = Files.list(path)) {
+                return children.filter(BatchImporter::isExcelFile).sorted().toList();
+            }
+        }
+        final int separatorIndex = Math.max(
+                pathOrGlob.lastIndexOf('/', globStart),
+                pathOrGlob.lastIndexOf(FileSystems.getDefault().getSeparator().charAt(0), globStart));
+        final Path baseDirectory = separatorIndex == -1 ? Paths.get("") : Paths.get(pathOrGlob.substring(0, separatorIndex + 1));
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pathOrGlob.substring(separatorIndex + 1));
+        final Path walkStart = separatorIndex == -1 ? Paths.get(".") : baseDirectory;
+        try (Stream<Path> paths = Files.walk(walkStart)) {
+            return paths
+                    .filter(path -> matcher.matches(walkStart.relativize(path)))
+                    .filter(BatchImporter::isExcelFile)
+                    .map(path -> baseDirectory.resolve(walkStart.relativize(path)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Imports all the files and returns results in the order of {@code files}. Exceptions of
+     * the files are logged and returned in the results, only {@link Error}s are thrown.
+     */
+    public static List<FileResult> importFiles(
+            final String connectionString,
+            final Properties connectionProperties,
+            final List<Path> files,
+            final ImportOptions options,
+            final int fileParallelism,
+            final ImportMetrics metrics
+    ) {
+        if (fileParallelism <= 0) {
+            throw new IllegalArgumentException("File parallelism must be positive, but got: " + fileParallelism);
+        }
+        final Map<Path, Long> sizes = new LinkedHashMap<>();
+        for (final Path file : files) {
+            long size;
+            try {
+                size = Files.size(file);
+            } catch (IOException e) {
+                size = -1; // import will fail and report the reason
+            }
+            sizes.put(file, size);
+        }
+        final Map<Path, FileResult> results = new HashMap<>();
+        final List<List<Path>> groups = groupFilesByTables(files, options.incremental(), sizes, results);
+        groups.sort(Comparator.comparing((List<Path> group) -> group.stream().mapToLong(sizes::get).sum(), Comparator.reverseOrder()));
+
+        final ForkJoinPool pool = new ForkJoinPool(fileParallelism);
+        try {
+            final List<Future<List<FileResult>>> futures = new ArrayList<>(groups.size());
+            for (final List<Path> group : groups) {
+                futures.add(pool.submit(() -> {
+                    final List<FileResult> groupResults = new ArrayList<>(group.size());
+                    for (final Path file : group) {
+                        groupResults.add(importFile(connectionString, connectionProperties, file, sizes.get(file), options, metrics));
+                    }
+                    return groupResults;
+                }));
+            }
+            for (int groupNum = 0; groupNum < groups.size(); ++groupNum) {
+                try {
+                    for (final FileResult result : futures.get(groupNum).get()) {
+                        results.put(result.path(), result);
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    // importFile() catches all exceptions, so this is not expected
+                    for (final Path file : groups.get(groupNum)) {
+                        results.putIfAbsent(file, new FileResult(file, sizes.get(file), 0, (Exception) e.getCause()));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting for import of files " + groups.get(groupNum) + ".");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        final List<FileResult> orderedResults = new ArrayList<>(files.size());
+        for (final Path file : files) {
+            orderedResults.add(results.get(file));
+        }
+        return orderedResults;
+    }
+
+    /**
+     * Groups of files, which are imported one after another by the same thread, because they load
+     * the same tables (their sheets get the same table names). In incremental import files, which
+     * share tables, go to the same group, in the order of {@code files}. Otherwise the second file
+     * would fail with "table exists" after its sheets are read, so such files are rejected before
+     * the import: their failures are put into {@code rejected}, and they do not get into any group.
+     */
+    private static List<List<Path>> groupFilesByTables(
+            final List<Path> files,
+            final boolean incremental,
+            final Map<Path, Long> sizes,
+            final Map<Path, FileResult> rejected
+    ) {
+        final List<List<Path>> groups = new ArrayList<>();
+        final Map<String, Path> tableFiles = new HashMap<>();
+        final Map<Path, List<Path>> fileGroups = new HashMap<>();
+        for (final Path file : files) {
+            final Set<String> tableNames;
+            try {
+                tableNames = tableNames(file);
+            } catch (IOException | ExcelFileStructureException | RuntimeException e) {
+                // import of the file will fail and report the reason
+                LOGGER.debug("File " + file + ": Failed to read sheet names.", e);
+                final List<Path> group = new ArrayList<>(List.of(file));
+                groups.add(group);
+                fileGroups.put(file, group);
+                continue;
+            }
+
+            final Set<List<Path>> sharingGroups = Collections.newSetFromMap(new IdentityHashMap<>());
+            String sharedTableName = null;
+            for (final String tableName : tableNames) {
+                final Path otherFile = tableFiles.get(tableName);
+                if (otherFile != null) {
+                    sharingGroups.add(fileGroups.get(otherFile));
+                    sharedTableName = tableName;
+                }
+            }
+            if (sharedTableName != null && !incremental) {
+                final Exception failure = new IllegalStateException("Table " + sharedTableName + " is loaded from file " +
+                        tableFiles.get(sharedTableName) + " too. Files with the same sheet names can be imported into " +
+                        "the same tables only in incremental import.");
+                LOGGER.error("File " + file + ": Import rejected. " + failure.getMessage());
+                rejected.put(file, new FileResult(file, sizes.get(file), 0, failure));
+                continue;
+            }
+
+            final List<Path> group;
+            if (sharingGroups.isEmpty()) {
+                group = new ArrayList<>();
+                groups.add(group);
+            } else {
+                // Merge all the groups, which share tables with the file, into the first one.
+                final Iterator<List<Path>> groupIterator = sharingGroups.iterator();
+                group = groupIterator.next();
+                while (groupIterator.hasNext()) {
+                    final List<Path> mergedGroup = groupIterator.next();
+                    group.addAll(mergedGroup);
+                    groups.removeIf(otherGroup -> otherGroup == mergedGroup);
+                }
+                group.sort(Comparator.comparing(files::indexOf));
+                for (final Path groupFile : group) {
+                    fileGroups.put(groupFile, group);
+                }
+                LOGGER.info("File " + file + ": Sheets have the same table names, as in files " + group +
+                        ". These files will be imported one after another.");
+            }
+            group.add(file);
+            fileGroups.put(file, group);
+            for (final String tableName : tableNames) {
+                tableFiles.putIfAbsent(tableName, file);
+            }
+        }
+        return groups;
+    }
+
+    /** Names of the tables, which the sheets of the file get (see {@link TableDefinitionsCollector#allocateTableName(String)}). */
+    private static Set<String> tableNames(final Path file) throws IOException, ExcelFileStructureException {
+        final Set<String> tableNames = new HashSet<>();
+        for (final String sheetName : ExcelFileReader.sheetNames(file)) {
+            SqlDbTableImporter.generateUniqueNameForDb(sheetName, tableNames);
+        }
+        return tableNames;
+    }
+
+    /** Lines, which describe results of the batch: one line per file and totals. */
+    public static List<String> summary(final List<FileResult> results) {
+        final List<String> lines = new ArrayList<>();
+        long succeededCount = 0;
+        long totalSize = 0;
+        for (final FileResult result : results) {
+            lines.add(String.format(Locale.ROOT, "%-9s %10.1f s %12d bytes  %s%s",
+                    result.succeeded() ? "OK" : "FAILED",
+                    result.durationMillis() / 1000.0,
+                    result.sizeInBytes(),
+                    result.path(),
+                    result.succeeded() ? "" : " (" + result.failure().getMessage() + ")"));
+            if (result.succeeded()) {
+                ++succeededCount;
+            }
+            totalSize += Math.max(result.sizeInBytes(), 0);
+        }
+        lines.add(String.format(Locale.ROOT, "%d file(s) imported, %d failed, %d bytes in total.",
+                succeededCount, results.size() - succeededCount, totalSize));
+        return lines;
+    }
+
+    private static FileResult importFile(
+            final String connectionString,
+            final Properties connectionProperties,
+            final Path file,
+            final long sizeInBytes,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) {
+        LOGGER.info("File " + file + ": Import started.");
+        final long startNanos = System.nanoTime();
+        Exception failure = null;
+        try {
+            SqlDbTableImporter.importTables(connectionString, connectionProperties, RowSource.fromExcelFile(file), options, metrics.forFile(file.toString()));
+            LOGGER.info("File " + file + ": Import finished.");
+        } catch (Exception e) {
+            LOGGER.error("File " + file + ": Import failed.", e);
+            failure = e;
+        }
+        return new FileResult(file, sizeInBytes, (System.nanoTime() - startNanos) / 1_000_000, failure);
+    }
+
+    static boolean isExcelFile(final Path path) {
+        final String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(path)
+                && !fileName.startsWith("~$")
+                && (fileName.endsWith(".xlsx") || fileName.endsWith(".xls"));
+    }
+
+    private static int indexOfGlobChar(final String pathOrGlob) {
+        for (int charNum = 0; charNum < pathOrGlob.length(); ++charNum) {
+            switch (pathOrGlob.charAt(charNum)) {
+                case '*', '?', '[', '{' -> {
+                    return charNum;
+                }
+                default -> { }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,208 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Base for sinks, which load rows with native bulk loader of the database instead of
+ * INSERT statements (see {@link H2CsvRowSink} and {@link PostgresCopyRowSink}).
+ *
+ * Rows are loaded in chunks of {@link ImportOptions#batchSize()} * {@link ImportOptions#commitInterval()}
+ * rows, and transaction is committed after each chunk, i.e. as often, as {@link JdbcRowSink} does it.
+ * If {@code checkpoints} are given, number of committed rows is recorded in the same transaction
+ * (see {@link ImportCheckpoints}).
+ */
+abstract class BulkLoadRowSink implements RowSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoadRowSink.class);
+
+    // Excel stores dates with millisecond precision
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSxxx");
+
+    protected final Connection connection;
+    protected final int batchSize;
+
+    private final ConnectionPool connectionPool;
+    private final int chunkSize;
+    private final ImportMetrics metrics;
+    private final ImportCheckpoints checkpoints;
+
+    protected TableDefinition tableDefinition;
+    // Write time of the sheet is recorded by the sink, which created the table, not by sinks of its chunks.
+    private boolean tableCreated;
+    private boolean chunkStarted;
+    private int rowsInChunk;
+
+    /**
+     * Connection is taken from the pool and returned to it, when the sink is closed.
+     * {@code checkpoints} may be {@code null}, if progress is not recorded.
+     */
+    protected BulkLoadRowSink(
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics,
+            final ImportCheckpoints checkpoints
+    ) throws SQLException {
+        this.connectionPool = connectionPool;
+        this.connection = connectionPool.acquire();
+        this.batchSize = options.batchSize();
+        this.chunkSize = options.batchSize() * options.commitInterval();
+        this.metrics = metrics;
+        this.checkpoints = checkpoints;
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connectionPool.release(connection);
+            throw e;
+        }
+    }
+
+    @Override
+    public void startTable(final TableDefinition tableDefinition) throws SQLException {
+        metrics.sheetWriteStarted(tableDefinition.sheetName());
+
+        final String createTableStatement = SqlDbTableImporter.generateCreateTableStatement(tableDefinition);
+        LOGGER.info("Create table statement: ");
+        LOGGER.info(createTableStatement);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(createTableStatement);
+        }
+        if (checkpoints != null) {
+            checkpoints.tableStarted(connection, tableDefinition);
+        }
+        connection.commit();
+        continueTable(tableDefinition);
+        tableCreated = true;
+    }
+
+    @Override
+    public void continueTable(final TableDefinition tableDefinition) {
+        this.tableDefinition = tableDefinition;
+        tableCreated = false;
+        rowsInChunk = 0;
+    }
+
+    @Override
+    public void row(final List<ExcelValueWrapper> values) throws SQLException {
+        if (!chunkStarted) {
+            startChunk();
+            chunkStarted = true;
+        }
+        writeRow(values);
+        ++rowsInChunk;
+        if (rowsInChunk == chunkSize) {
+            finishChunk();
+        }
+    }
+
+    @Override
+    public void endTable() throws SQLException {
+        finishChunk();
+        if (checkpoints != null) {
+            checkpoints.tableFinished(connection, tableDefinition);
+            connection.commit();
+        }
+        if (tableCreated) {
+            metrics.sheetWriteFinished(tableDefinition.sheetName());
+        }
+        tableDefinition = null;
+    }
+
+    @Override
+    public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+        // Rows loaded so far must be in the table, before its columns can be changed.
+        finishChunk();
+        try (Statement statement = connection.createStatement()) {
+            for (final String widenStatement : SqlDbTableImporter.generateWidenColumnStatements(tableDefinition, widenedDefinition)) {
+                LOGGER.info("Widen column statement: " + widenStatement);
+                statement.executeUpdate(widenStatement);
+            }
+        }
+        connection.commit();
+        tableDefinition = widenedDefinition;
+    }
+
+    @Override
+    public void abortTable() {
+        if (chunkStarted) {
+            discardChunk();
+            chunkStarted = false;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to rollback transaction after import failure.", e);
+        }
+        tableDefinition = null;
+    }
+
+    @Override
+    public void close() {
+        connectionPool.release(connection);
+    }
+
+    /** Prepares loading of the next chunk of rows into the current table. */
+    protected abstract void startChunk() throws SQLException;
+
+    /** Values are in the same order as columns of the table definition. */
+    protected abstract void writeRow(List<ExcelValueWrapper> values) throws SQLException;
+
+    /** Loads all the rows written since {@code startChunk} into the table (without commit). */
+    protected abstract void loadChunk() throws SQLException;
+
+    /** Drops all the rows written since {@code startChunk}. Must not throw. */
+    protected abstract void discardChunk();
+
+    /**
+     * Text representation of the value, which is understood by both H2 and PostgreSQL.
+     * {@code null} for empty cells (except EMPTY columns, which are filled with empty strings by convention).
+     */
+    protected String valueText(final int columnNum, final ExcelValueWrapper value) {
+        final ExcelValueWrapper.Type columnType = tableDefinition.columnTypes().get(columnNum);
+        return switch (columnType) {
+            case DOUBLE -> {
+                if (value.type() == ExcelValueWrapper.Type.EMPTY) {
+                    yield null;
+                }
+                // Ids of lookup tables are INTEGER in DB, so they must not be written with fraction part.
+                yield tableDefinition.lookupTableName(columnNum) == null
+                        ? Double.toString(value.doubleValue())
+                        : Long.toString((long) value.doubleValue());
+            }
+            case BOOLEAN -> value.type() == ExcelValueWrapper.Type.EMPTY ? null : Boolean.toString(value.booleanValue());
+            case DATE -> value.maybeDateValue() == null ? null : dateText(value.maybeDateValue());
+            case STRING -> value.maybeStringValue();
+            case EMPTY -> ""; // by convention we use empty string
+        };
+    }
+
+    private static String dateText(final LocalDateTime dateTime) {
+        // Offset is given explicitly, so that the value is the same, as the one set with
+        // PreparedStatement.setTimestamp() (i.e. local time of the JVM).
+        return DATE_FORMATTER.format(dateTime.atZone(ZoneId.systemDefault()));
+    }
+
+    private void finishChunk() throws SQLException {
+        if (!chunkStarted) {
+            return;
+        }
+        // With COPY most of the rows are sent in writeRow(), so for it the latency covers only the end of the chunk.
+        final long startNanos = System.nanoTime();
+        loadChunk();
+        metrics.batchExecuted(tableDefinition.sheetName(), rowsInChunk, System.nanoTime() - startNanos);
+        chunkStarted = false;
+        if (checkpoints != null) {
+            checkpoints.rowsCommitted(connection, tableDefinition, rowsInChunk);
+        }
+        connection.commit();
+        rowsInChunk = 0;
+    }
+}
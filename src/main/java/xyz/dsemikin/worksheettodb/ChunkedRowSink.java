@@ -0,0 +1,252 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes rows of one table over several connections in parallel (see {@link ImportOptions#insertParallelism()}).
+ *
+ * Rows are collected into chunks of {@link ImportOptions#batchSize()} * {@link ImportOptions#commitInterval()}
+ * rows, i.e. of the size, which sinks commit at once anyway. Each chunk is written by a sink of the
+ * underlying factory (see {@link RowSink#continueTable}), which keeps its own connection, and up to
+ * {@code insertParallelism} chunks are written at the same time. Results of the chunks are checked in
+ * the order of the chunks, so the failure of the earliest failed chunk is reported. Not more than
+ * {@code insertParallelism + 1} chunks of the table are kept in memory.
+ *
+ * The table is created by this sink itself, without foreign keys to lookup tables (see {@link LookupTables}).
+ * They are added after all the rows are loaded, so that DB checks them once instead of row by row.
+ * Columns are widened, when all the chunks, which are already sent, are written.
+ *
+ * Rows of different chunks get into the table in arbitrary order. Rows are kept in chunks as they are,
+ * so values must not be changed after they are passed to the sink.
+ */
+class ChunkedRowSink implements RowSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedRowSink.class);
+
+    private final ConnectionPool connectionPool;
+    private final RowSink.Factory chunkSinkFactory;
+    private final int chunkSize;
+    private final int insertParallelism;
+    private final ImportMetrics metrics;
+    private final ExecutorService executor;
+    // Oldest chunk is the first one.
+    private final Deque<Future<?>> chunksInProgress = new ArrayDeque<>();
+    // Sinks, which do not write chunks at the moment, together with their connections.
+    private final ConcurrentLinkedDeque<RowSink> idleSinks = new ConcurrentLinkedDeque<>();
+    private volatile boolean aborted;
+
+    private TableDefinition tableDefinition;
+    private List<List<ExcelValueWrapper>> chunk;
+
+    ChunkedRowSink(
+            final ConnectionPool connectionPool,
+            final RowSink.Factory chunkSinkFactory,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) {
+        this.connectionPool = connectionPool;
+        this.chunkSinkFactory = chunkSinkFactory;
+        this.chunkSize = options.batchSize() * options.commitInterval();
+        this.insertParallelism = options.insertParallelism();
+        this.metrics = metrics;
+        final AtomicInteger threadNum = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(insertParallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "chunk-writer-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void startTable(final TableDefinition tableDefinition) throws SQLException {
+        this.tableDefinition = tableDefinition;
+        aborted = false;
+        chunk = new ArrayList<>(chunkSize);
+        metrics.sheetWriteStarted(tableDefinition.sheetName());
+        final String createTableStatement = SqlDbTableImporter.generateCreateTableStatement(tableDefinition, false);
+        LOGGER.info("Create table statement: ");
+        LOGGER.info(createTableStatement);
+        executeStatements(List.of(createTableStatement));
+    }
+
+    @Override
+    public void row(final List<ExcelValueWrapper> values) throws SQLException {
+        chunk.add(values);
+        if (chunk.size() == chunkSize) {
+            submitChunk();
+        }
+    }
+
+    @Override
+    public void endTable() throws SQLException {
+        submitChunk();
+        awaitChunks();
+        final List<String> addForeignKeyStatements = SqlDbTableImporter.generateAddForeignKeyStatements(tableDefinition);
+        if (!addForeignKeyStatements.isEmpty()) {
+            for (final String addForeignKeyStatement : addForeignKeyStatements) {
+                LOGGER.info("Add foreign key statement: " + addForeignKeyStatement);
+            }
+            executeStatements(addForeignKeyStatements);
+        }
+        metrics.sheetWriteFinished(tableDefinition.sheetName());
+        tableDefinition = null;
+        chunk = null;
+    }
+
+    @Override
+    public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+        // Rows loaded so far must be in the table, before its columns can be changed.
+        submitChunk();
+        awaitChunks();
+        final List<String> widenStatements = SqlDbTableImporter.generateWidenColumnStatements(tableDefinition, widenedDefinition);
+        for (final String widenStatement : widenStatements) {
+            LOGGER.info("Widen column statement: " + widenStatement);
+        }
+        executeStatements(widenStatements);
+        tableDefinition = widenedDefinition;
+    }
+
+    @Override
+    public void abortTable() {
+        aborted = true;
+        while (!chunksInProgress.isEmpty()) {
+            try {
+                chunksInProgress.removeFirst().get();
+            } catch (ExecutionException e) {
+                // The first failure is already reported. Others are logged by the chunks themselves.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        closeIdleSinks();
+        tableDefinition = null;
+        chunk = null;
+    }
+
+    @Override
+    public void close() {
+        closeIdleSinks();
+        executor.shutdownNow();
+    }
+
+    private void submitChunk() throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        if (chunksInProgress.size() == insertParallelism) {
+            awaitOldestChunk();
+        }
+        final TableDefinition chunkDefinition = tableDefinition;
+        final List<List<ExcelValueWrapper>> chunkRows = chunk;
+        chunk = new ArrayList<>(chunkSize);
+        chunksInProgress.addLast(executor.submit(() -> {
+            writeChunk(chunkDefinition, chunkRows);
+            return null;
+        }));
+    }
+
+    /** Waits, until all the chunks, which are sent, are written. Then releases connections of the chunks. */
+    private void awaitChunks() throws SQLException {
+        while (!chunksInProgress.isEmpty()) {
+            awaitOldestChunk();
+        }
+        // Connections are returned to the pool, so that statements of the table itself always find a free one.
+        closeIdleSinks();
+    }
+
+    private void awaitOldestChunk() throws SQLException {
+        final Future<?> oldestChunk = chunksInProgress.removeFirst();
+        try {
+            oldestChunk.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new SQLException("Table " + tableDefinition.tableName() + ": Failed to write chunk of rows.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for chunk of rows to be written.", e);
+        }
+    }
+
+    /** Runs in chunk writer thread. */
+    private void writeChunk(final TableDefinition chunkDefinition, final List<List<ExcelValueWrapper>> chunkRows) throws SQLException {
+        if (aborted) {
+            return;
+        }
+        RowSink sink = idleSinks.pollFirst();
+        if (sink == null) {
+            sink = chunkSinkFactory.createSink();
+        }
+        try {
+            sink.continueTable(chunkDefinition);
+            for (final List<ExcelValueWrapper> values : chunkRows) {
+                sink.row(values);
+            }
+            sink.endTable();
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.error("Table " + chunkDefinition.tableName() + ": Failed to write chunk of " + chunkRows.size() + " rows.", e);
+            sink.abortTable();
+            // Connection may be broken, so it is not kept.
+            closeQuietly(sink);
+            throw e;
+        }
+        idleSinks.addFirst(sink);
+    }
+
+    private void executeStatements(final List<String> statements) throws SQLException {
+        final Connection connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                for (final String sql : statements) {
+                    statement.executeUpdate(sql);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    private void closeIdleSinks() {
+        RowSink sink;
+        while ((sink = idleSinks.pollFirst()) != null) {
+            closeQuietly(sink);
+        }
+    }
+
+    private static void closeQuietly(final RowSink sink) {
+        try {
+            sink.close();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to close sink of chunk.", e);
+        }
+    }
+}
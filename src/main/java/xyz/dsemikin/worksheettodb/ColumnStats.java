@@ -0,0 +1,120 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Statistics of one worksheet column, which is accumulated while rows are being read.
+ *
+ * It contains everything needed to define DB column (type and max length of the strings),
+ * so that no additional pass over the data is needed after reading.
+ */
+public class ColumnStats {
+
+    /** Distinct strings are tracked only up to this count (see {@link #distinctStrings()}). */
+    public static final int MAX_TRACKED_DISTINCT_STRINGS = 1000;
+
+    private ExcelValueWrapper.Type type = ExcelValueWrapper.Type.EMPTY;
+    private long valueCount;
+    private long emptyCount;
+    private int maxStringLength = -1;
+    private double minDouble = Double.POSITIVE_INFINITY;
+    private double maxDouble = Double.NEGATIVE_INFINITY;
+    private LocalDateTime minDate;
+    private LocalDateTime maxDate;
+    private Set<String> distinctStrings = new LinkedHashSet<>();
+
+    /** Value of the given type may be added to the column, i.e. it does not conflict with the values added earlier. */
+    public boolean accepts(final ExcelValueWrapper.Type valueType) {
+        return valueType == ExcelValueWrapper.Type.EMPTY
+                || type == ExcelValueWrapper.Type.EMPTY
+                || type == valueType;
+    }
+
+    /** Check with {@code accepts} first. */
+    public void add(final ExcelValueWrapper value) {
+        final ExcelValueWrapper.Type valueType = value.type();
+        if (!accepts(valueType)) {
+            throw new IllegalArgumentException("Value of type " + valueType + " can not be added to column of type " + type + ".");
+        }
+        switch (valueType) {
+            case EMPTY -> {
+                ++emptyCount;
+                return;
+            }
+            case STRING -> {
+                final String stringValue = value.maybeStringValue();
+                maxStringLength = Math.max(maxStringLength, stringValue.length());
+                if (distinctStrings != null && distinctStrings.add(stringValue) && distinctStrings.size() > MAX_TRACKED_DISTINCT_STRINGS) {
+                    distinctStrings = null;
+                }
+            }
+            case DOUBLE -> {
+                final double doubleValue = value.doubleValue();
+                minDouble = Math.min(minDouble, doubleValue);
+                maxDouble = Math.max(maxDouble, doubleValue);
+            }
+            case DATE -> {
+                final LocalDateTime dateValue = value.maybeDateValue();
+                if (minDate == null || dateValue.isBefore(minDate)) {
+                    minDate = dateValue;
+                }
+                if (maxDate == null || dateValue.isAfter(maxDate)) {
+                    maxDate = dateValue;
+                }
+            }
+            case BOOLEAN -> { /* nothing to track */ }
+        }
+        type = valueType;
+        ++valueCount;
+    }
+
+    /** EMPTY, if column has no non-empty values. */
+    public ExcelValueWrapper.Type type() {
+        return type;
+    }
+
+    /** Number of non-empty values. */
+    public long valueCount() {
+        return valueCount;
+    }
+
+    public long emptyCount() {
+        return emptyCount;
+    }
+
+    /** -1, if there are no string values. */
+    public int maxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * Distinct strings in the order of their first appearance or {@code null}, if there are more than
+     * {@value #MAX_TRACKED_DISTINCT_STRINGS} of them. Empty for non-string columns.
+     */
+    public Set<String> distinctStrings() {
+        return distinctStrings == null ? null : Collections.unmodifiableSet(distinctStrings);
+    }
+
+    /** Meaningful only for DOUBLE columns with at least one value. */
+    public double minDouble() {
+        return minDouble;
+    }
+
+    /** Meaningful only for DOUBLE columns with at least one value. */
+    public double maxDouble() {
+        return maxDouble;
+    }
+
+    /** {@code null}, if there are no date values. */
+    public LocalDateTime minDate() {
+        return minDate;
+    }
+
+    /** {@code null}, if there are no date values. */
+    public LocalDateTime maxDate() {
+        return maxDate;
+    }
+}
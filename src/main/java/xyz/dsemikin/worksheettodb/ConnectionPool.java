@@ -0,0 +1,123 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Very simple pool of JDBC connections with fixed maximum size.
+ *
+ * Connections are created lazily. If all connections are in use, {@code acquire} waits,
+ * until some connection is released. Idle connections are checked, before they are reused,
+ * so that connections, which were broken, while the pool was idle (e.g. in {@link ImportDaemon}),
+ * are replaced with new ones.
+ */
+class ConnectionPool implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final String connectionString;
+    private final Properties connectionProperties;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    ConnectionPool(final String connectionString, final Properties connectionProperties, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size of connection pool must be positive, but it is " + maxSize + ".");
+        }
+        this.connectionString = connectionString;
+        this.connectionProperties = connectionProperties;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for DB connection.", e);
+        }
+        try {
+            Connection idleConnection;
+            while ((idleConnection = idleConnections.pollFirst()) != null) {
+                if (isValid(idleConnection)) {
+                    return idleConnection;
+                }
+                LOGGER.warn("Idle DB connection is broken. It is closed and will not be reused.");
+                closeQuietly(idleConnection);
+            }
+            return DriverManager.getConnection(connectionString, connectionProperties);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Connections, which are closed, are not reused (broken ones are found, when they are acquired again).
+     * Connections, which are released after the pool is closed, are closed.
+     */
+    void release(final Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return;
+            }
+            if (closed) {
+                closeQuietly(connection);
+                return;
+            }
+            idleConnections.addFirst(connection);
+            // Pool may have been closed, while the connection was added, so it would not be closed by close().
+            if (closed && idleConnections.remove(connection)) {
+                closeQuietly(connection);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("DB connection is broken and will not be reused.", e);
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Closes idle connections. Connections, which are in use, are closed, when they are released. */
+    @Override
+    public void close() {
+        closed = true;
+        final List<Connection> connections = new ArrayList<>();
+        Connection connection;
+        while ((connection = idleConnections.pollFirst()) != null) {
+            connections.add(connection);
+        }
+        connections.forEach(ConnectionPool::closeQuietly);
+    }
+
+    private static boolean isValid(final Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(final Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to close DB connection.", e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Drops tables, which are created by the import, if their sheets fail.
+ *
+ * When column types are detected from samples (see {@link ImportOptions#sampleRows()}), table
+ * is created, before the whole sheet is read, so the sheet may still fail after that (e.g. a later
+ * value does not fit or DB connection drops). Without the table the same import can be simply
+ * started again, instead of failing on the existing table. Table, which existed before the import
+ * (e.g. in incremental import), is kept.
+ */
+class CreatedTables {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CreatedTables.class);
+
+    private final ConnectionPool connectionPool;
+
+    CreatedTables(final ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Sinks, which drop the table, when it is aborted, if the table did not exist before {@code startTable}.
+     * Underlying sink is created only after the check, and the table is dropped, after it is closed,
+     * so that the sink does not hold a connection, while another one is taken from the pool.
+     */
+    RowSink.Factory wrap(final RowSink.Factory sinkFactory) {
+        return () -> new DroppingRowSink(sinkFactory);
+    }
+
+    /** If it can not be checked, table is considered to exist, so that it is never dropped by mistake. */
+    private boolean tableExists(final String tableName) {
+        try {
+            final Connection connection = connectionPool.acquire();
+            try {
+                return SqlDbTableImporter.findExistingTableName(connection, tableName) != null;
+            } finally {
+                connectionPool.release(connection);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Table " + tableName + ": Failed to check, whether the table exists. It will not be dropped, if import fails.", e);
+            return true;
+        }
+    }
+
+    private void dropTable(final String tableName) {
+        try {
+            final Connection connection = connectionPool.acquire();
+            try (Statement statement = connection.createStatement()) {
+                connection.setAutoCommit(true);
+                statement.executeUpdate("DROP TABLE IF EXISTS " + tableName);
+            } finally {
+                connectionPool.release(connection);
+            }
+            LOGGER.warn("Table " + tableName + ": Import failed. The table, created by it, is dropped.");
+        } catch (SQLException e) {
+            LOGGER.warn("Table " + tableName + ": Import failed, and the table, created by it, could not be dropped. " +
+                    "Drop it, before the sheet is imported again.", e);
+        }
+    }
+
+    private class DroppingRowSink implements RowSink {
+
+        private final RowSink.Factory sinkFactory;
+        private RowSink sink;
+        // Table, which is started by this sink and did not exist before, or null.
+        private String createdTableName;
+        // Table, which is aborted and is dropped, when the sink is closed, or null.
+        private String abortedTableName;
+
+        DroppingRowSink(final RowSink.Factory sinkFactory) {
+            this.sinkFactory = sinkFactory;
+        }
+
+        @Override
+        public void startTable(final TableDefinition tableDefinition) throws SQLException {
+            // Set before the table is started, so that it is dropped, even if only part of startTable succeeded.
+            createdTableName = tableExists(tableDefinition.tableName()) ? null : tableDefinition.tableName();
+            sink().startTable(tableDefinition);
+        }
+
+        @Override
+        public void continueTable(final TableDefinition tableDefinition) throws SQLException {
+            createdTableName = null;
+            sink().continueTable(tableDefinition);
+        }
+
+        @Override
+        public void row(final List<ExcelValueWrapper> values) throws SQLException {
+            sink.row(values);
+        }
+
+        @Override
+        public void row(final SheetData sheetData, final int rowNum) throws SQLException {
+            sink.row(sheetData, rowNum);
+        }
+
+        @Override
+        public void endTable() throws SQLException {
+            sink.endTable();
+            createdTableName = null;
+        }
+
+        @Override
+        public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+            sink.widenTable(widenedDefinition);
+        }
+
+        @Override
+        public void abortTable() {
+            if (sink != null) {
+                sink.abortTable();
+            }
+            abortedTableName = createdTableName;
+            createdTableName = null;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (sink != null) {
+                    sink.close();
+                }
+            } finally {
+                if (abortedTableName != null) {
+                    dropTable(abortedTableName);
+                }
+            }
+        }
+
+        private RowSink sink() throws SQLException {
+            if (sink == null) {
+                sink = sinkFactory.createSink();
+            }
+            return sink;
+        }
+    }
+}
@@ -1,150 +1,305 @@
 package xyz.dsemikin.worksheettodb;
 
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 public class ExcelFileReader {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(ExcelFileReader.class);
-
-    // TODO: Decompose to multiple methods, so that the whole thing is more readable.
-    public static Map<String, List<Map<String, ExcelValueWrapper>>> readExcelFile(
+    /**
+     * Reads the whole Excel file into memory.
+     *
+     * Key of the returned map is sheet name. Order of the sheets is the same, as in the file.
+     * Sheets without data are not included.
+     */
+    public static Map<String, SheetData> readExcelFile(
             final Path excelFilePath
     ) throws IOException, ExcelFileStructureException {
 
-        // Notice: instead of creating dictionary from each row and thus repeating
-        // field names in each object, we could use alternative data layout:
-        // rectangular, which repeats structure of the worksheet. Name of the value
-        // (or value for the given name) can be obtained by matching indices in header
-        // row and row of interest. But I think, that work with dictionaries is simpler
-        // and performance should not be an issue in this particular application.
-
-        // Using list of maps has also another deficiency: it does not enforce, that
-        // fields of all map objects are the same. But again, we will still use it,
-        // because of convenience of doing this.
-
-        // workbook['sheetName'] - worksheet
-        // workbook['sheetName'][recordNum] - record (= row in the table)
-        // workbook['sheetName'][recordNum]['key'] - value (key = column name)
-        final Map<String, List<Map<String, ExcelValueWrapper>>> workbookData = new HashMap<>();
-
-        final Workbook workbook = WorkbookFactory.create(excelFilePath.toFile());
-        Iterator<Sheet> sheetIterator = workbook.sheetIterator();
-        while(sheetIterator.hasNext()) {
-            final Sheet sheet = sheetIterator.next();
-            final String sheetName = sheet.getSheetName();
-
-            final int lastRowNum = sheet.getLastRowNum();
-            if (lastRowNum == -1) {
-                LOGGER.info("Worksheet " + sheetName + " does not have any data. Skipping.");
-                continue;
-            } else if (lastRowNum == 0) {
-                LOGGER.info("Worksheet " + sheetName + " has only one row (header) and no data. Skipping.");
-                continue;
-            }
+        // Data is kept in rectangular layout, which repeats structure of the worksheet
+        // (see SheetData). Name of the value (or value for the given name) can be obtained
+        // by matching indices in header row and column of interest.
+
+        final Map<String, SheetData> workbookData = new LinkedHashMap<>();
+
+        readExcelFile(excelFilePath, new ExcelRowHandler() {
 
+            private SheetData sheetData;
 
-            // Read header
+            @Override
+            public void startSheet(String sheetName, List<String> columnNames) {
+                sheetData = new SheetData(sheetName, columnNames);
+                workbookData.put(sheetName, sheetData);
+            }
 
-            Row headerRow = sheet.getRow(0);
+            @Override
+            public void row(int rowNum, List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+                sheetData.appendRow(values);
+            }
 
-            short headerLastCellNumPlusOne = headerRow.getLastCellNum();
-            if (headerLastCellNumPlusOne == -1) {
-                throw new ExcelFileStructureException("Sheet " + sheetName + " : Header row of the table must define at least one column.");
-            } else if (headerLastCellNumPlusOne == 0) {
-                throw new IllegalStateException("Sheet " + sheetName + ", row num 0" +
-                        ": lastCellNumPlusOne == 0 - Apache POI docs promise, that this should never happen.");
+            @Override
+            public void endSheet(List<ColumnStats> columnStats) {
+                sheetData.setColumnStats(columnStats);
+                sheetData = null;
             }
+        });
+
+        return workbookData;
+    }
+
+    /**
+     * Same as {@link #readExcelFile(Path)}, but worksheets of xlsx files are read in parallel
+     * using up to {@code parallelism} threads.
+     */
+    public static Map<String, SheetData> readExcelFile(
+            final Path excelFilePath,
+            final int parallelism
+    ) throws IOException, ExcelFileStructureException {
+        final List<SheetData[]> sheetDataHolders = new ArrayList<>();
+        readExcelFile(excelFilePath, sheetName -> {
+            final SheetData[] sheetDataHolder = new SheetData[1];
+            sheetDataHolders.add(sheetDataHolder);
+            return new ExcelRowHandler() {
+                @Override
+                public void startSheet(String sheetName, List<String> columnNames) {
+                    sheetDataHolder[0] = new SheetData(sheetName, columnNames);
+                }
 
-            final List<String> columnNames = new ArrayList<>();
-            for (int cellNum = 0; cellNum < headerLastCellNumPlusOne; ++cellNum) {
-                Cell cell = headerRow.getCell(cellNum);
-                CellType cellType = cell.getCellType();
-                if (!cellType.equals(CellType.STRING)) {
-                    throw new ExcelFileStructureException("Sheet " + sheetName + ": All header cells must be of type 'text' or 'string'.");
+                @Override
+                public void row(int rowNum, List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+                    sheetDataHolder[0].appendRow(values);
                 }
-                final String columnName = cell.getStringCellValue();
-                if (columnName == null || columnName.isBlank()) {
-                    throw new ExcelFileStructureException("Sheet " + sheetName + ", column num " + cell.getColumnIndex() + ": Column names must be non-empty non-blank strings.");
+
+                @Override
+                public void endSheet(List<ColumnStats> columnStats) {
+                    sheetDataHolder[0].setColumnStats(columnStats);
                 }
-                columnNames.add(columnName);
+            };
+        }, parallelism);
+
+        // Handlers are created in the order of the sheets, so the order is preserved.
+        final Map<String, SheetData> workbookData = new LinkedHashMap<>();
+        for (final SheetData[] sheetDataHolder : sheetDataHolders) {
+            if (sheetDataHolder[0] != null) {
+                workbookData.put(sheetDataHolder[0].sheetName(), sheetDataHolder[0]);
             }
+        }
+        return workbookData;
+    }
 
+    /**
+     * Reads Excel file and passes content of each worksheet to its own handler. Worksheets of
+     * xlsx files are read in parallel using up to {@code parallelism} threads. Other formats
+     * are read sequentially.
+     */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism
+    ) throws IOException, ExcelFileStructureException {
+        readExcelFile(excelFilePath, handlerFactory, parallelism, sheetName -> true);
+    }
 
-            // Read data
+    /** Worksheets, which do not match {@code sheetFilter}, are skipped, and no handlers are created for them. */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        if (FileMagic.valueOf(excelFilePath.toFile()) == FileMagic.OOXML) {
+            XlsxStreamingReader.readExcelFile(excelFilePath, handlerFactory, parallelism, sheetFilter);
+        } else {
+            readNonXlsxFile(excelFilePath, demultiplex(handlerFactory), sheetFilter);
+        }
+    }
 
-            List<Map<String, ExcelValueWrapper>> sheetData = new ArrayList<>();
-            for (int rowNum = 1; rowNum <= lastRowNum; ++rowNum) {
-                Row row = sheet.getRow(rowNum);
-                short lastCellNumPlusOne = row.getLastCellNum();
-                if (lastCellNumPlusOne == -1) {
-                    LOGGER.info("Sheet " + sheetName + ", row num " + row.getRowNum() + ": Empty row. Skipping.");
-                } else if (lastCellNumPlusOne == 0) {
-                    throw new IllegalStateException("Sheet " + sheetName + ", row num " + row.getRowNum() +
-                            ": lastCellNumPlusOne == 0 - Apache POI docs promise, that this should never happen.");
-                }
+    /** Handler, which does nothing. It is used for worksheets, which must be skipped. */
+    static final ExcelRowHandler IGNORING_HANDLER = new ExcelRowHandler() {
+        @Override
+        public void startSheet(String sheetName, List<String> columnNames) {
+        }
+
+        @Override
+        public void row(int rowNum, List<ExcelValueWrapper> values) {
+        }
+
+        @Override
+        public void endSheet(List<ColumnStats> columnStats) {
+        }
+    };
+
+    /** Handler, which passes rows of each worksheet to separate handler, created by the factory. */
+    static ExcelRowHandler demultiplex(final SheetHandlerFactory handlerFactory) {
+        return new ExcelRowHandler() {
+
+            private ExcelRowHandler sheetHandler;
+
+            @Override
+            public void startSheet(String sheetName, List<String> columnNames) throws ExcelFileStructureException {
+                sheetHandler = handlerFactory.handlerFor(sheetName);
+                sheetHandler.startSheet(sheetName, columnNames);
+            }
 
-                if (lastCellNumPlusOne > headerLastCellNumPlusOne) {
-                    throw new ExcelFileStructureException("Sheet " + sheetName + ", row " + row.getRowNum() +
-                            ": Cell count in the row (" + lastCellNumPlusOne + ") is greater, than cell count in header (" +
-                            headerLastCellNumPlusOne + "). It is not allowed.");
+            @Override
+            public void row(int rowNum, List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+                sheetHandler.row(rowNum, values);
+            }
+
+            @Override
+            public void endSheet(List<ColumnStats> columnStats) throws ExcelFileStructureException {
+                sheetHandler.endSheet(columnStats);
+                sheetHandler = null;
+            }
+        };
+    }
+
+    /**
+     * Reads Excel file and passes its content row by row to the handler.
+     *
+     * xlsx and xls files are read in streaming mode (see {@link XlsxStreamingReader} and
+     * {@link XlsStreamingReader}), so memory consumption does not depend on the file size.
+     * Other formats (e.g. password protected xlsx files) are loaded completely into memory
+     * using Apache POI "user model".
+     */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler
+    ) throws IOException, ExcelFileStructureException {
+        readExcelFile(excelFilePath, handler, sheetName -> true);
+    }
+
+    /** Worksheets, which do not match {@code sheetFilter}, are skipped. For xlsx files they are not even parsed. */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        if (FileMagic.valueOf(excelFilePath.toFile()) == FileMagic.OOXML) {
+            XlsxStreamingReader.readExcelFile(excelFilePath, handler, sheetFilter);
+        } else {
+            readNonXlsxFile(excelFilePath, handler, sheetFilter);
+        }
+    }
+
+    /**
+     * Fingerprints of the worksheets (key is sheet name), which change, when the worksheet
+     * changes (see {@link XlsxStreamingReader#sheetFingerprints(Path)}). Fingerprints are
+     * supported only for xlsx files. For other formats empty map is returned.
+     */
+    public static Map<String, String> sheetFingerprints(final Path excelFilePath) throws IOException {
+        if (FileMagic.valueOf(excelFilePath.toFile()) == FileMagic.OOXML) {
+            return XlsxStreamingReader.sheetFingerprints(excelFilePath);
+        }
+        return Map.of();
+    }
+
+    /**
+     * Names of the worksheets of Excel file. Worksheets of xlsx and xls files are not read. Other formats
+     * are loaded into memory.
+     */
+    public static List<String> sheetNames(final Path excelFilePath) throws IOException, ExcelFileStructureException {
+        if (FileMagic.valueOf(excelFilePath.toFile()) == FileMagic.OOXML) {
+            return XlsxStreamingReader.sheetNames(excelFilePath);
+        }
+        final List<String> sheetNames = new ArrayList<>();
+        // Filter is asked about each worksheet before it is read, and nothing is read after the last matching one.
+        readNonXlsxFile(excelFilePath, IGNORING_HANDLER, sheetName -> {
+            sheetNames.add(sheetName);
+            return false;
+        });
+        return sheetNames;
+    }
+
+    private static void readNonXlsxFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        if (FileMagic.valueOf(excelFilePath.toFile()) == FileMagic.OLE2 && XlsStreamingReader.isXlsFile(excelFilePath)) {
+            XlsStreamingReader.readExcelFile(excelFilePath, handler, sheetFilter);
+        } else {
+            // e.g. password protected xlsx file: POI decrypts it with default password or reports, why it can not be read
+            readWorkbookInMemory(excelFilePath, handler, sheetFilter);
+        }
+    }
+
+    private static void readWorkbookInMemory(
+            final Path excelFilePath,
+            final ExcelRowHandler handler,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        try (Workbook workbook = WorkbookFactory.create(excelFilePath.toFile(), null, true)) {
+            final WorksheetRowAssembler assembler = new WorksheetRowAssembler(handler);
+            final RowCursor cells = new RowCursor();
+            Iterator<Sheet> sheetIterator = workbook.sheetIterator();
+            while (sheetIterator.hasNext()) {
+                final Sheet sheet = sheetIterator.next();
+                final String sheetName = sheet.getSheetName();
+                if (!sheetFilter.test(sheetName)) {
+                    continue;
                 }
+                assembler.startSheet(sheetName);
 
-                Map<String, ExcelValueWrapper> dataRow = new LinkedHashMap<>();
-                // We iterate up to the number of columns. If the cells at the end are empty,
-                // we fill data with "EMPTY" values
-                for (int cellNum = 0; cellNum < headerLastCellNumPlusOne; ++cellNum) {
-                    final String columnName = columnNames.get(cellNum);
-                    if (cellNum >= lastCellNumPlusOne) {
-                        dataRow.put(columnName, new ExcelValueWrapper(null));
-                    } else {
-                        Cell cell = row.getCell(cellNum);
-                        final ExcelValueWrapper dataValue =
-                            cell == null
-                                ? new ExcelValueWrapper(null)
-                                : switch (cell.getCellType()) {
-                                    case BLANK -> new ExcelValueWrapper(null);
-                                    case STRING -> new ExcelValueWrapper(cell.getStringCellValue());
-                                    case NUMERIC ->
-                                        DateUtil.isCellDateFormatted(cell)
-                                            ? new ExcelValueWrapper(cell.getLocalDateTimeCellValue())
-                                            : new ExcelValueWrapper(cell.getNumericCellValue());
-                                    case BOOLEAN -> new ExcelValueWrapper(cell.getBooleanCellValue());
-                                    default -> throw new ExcelFileStructureException(
-                                            "Sheet " + sheetName + ", row num " + rowNum + ", column " + columnName +
-                                            " (" + cellNum + ")" + ": Unsupported cell type: " + cell.getCellType()
-                                    );
-                                };
-                        dataRow.put(columnName, dataValue);
+                final int lastRowNum = sheet.getLastRowNum();
+                for (int rowNum = 0; rowNum <= lastRowNum; ++rowNum) {
+                    Row row = sheet.getRow(rowNum);
+                    if (row == null) {
+                        continue;
+                    }
+                    final short lastCellNumPlusOne = row.getLastCellNum();
+                    cells.clear(lastCellNumPlusOne);
+                    for (int cellNum = 0; cellNum < lastCellNumPlusOne; ++cellNum) {
+                        final Cell cell = row.getCell(cellNum);
+                        if (cell != null) {
+                            setCellValue(cells, sheetName, rowNum, cell);
+                        }
                     }
+                    // Missing cells at the end of the row are not reported by POI
+                    cells.ensureSize(lastCellNumPlusOne);
+                    assembler.acceptRow(rowNum, cells);
                 }
 
-                if (dataRow.values().stream().allMatch(val -> val.type() == ExcelValueWrapper.Type.EMPTY)) {
-                    LOGGER.info("Sheet " + sheetName + ", row num " + rowNum + ": All cells are empty. Skipping row.");
+                assembler.endSheet();
+            }
+        }
+    }
+
+    private static void setCellValue(
+            final RowCursor cells,
+            final String sheetName,
+            final int rowNum,
+            final Cell cell
+    ) throws ExcelFileStructureException {
+        final int columnNum = cell.getColumnIndex();
+        switch (cell.getCellType()) {
+            case BLANK -> cells.setEmpty(columnNum);
+            case STRING -> cells.setString(columnNum, cell.getStringCellValue());
+            case NUMERIC -> {
+                if (DateUtil.isCellDateFormatted(cell)) {
+                    cells.setDate(columnNum, cell.getLocalDateTimeCellValue());
                 } else {
-                    sheetData.add(dataRow);
+                    cells.setDouble(columnNum, cell.getNumericCellValue());
                 }
             }
-
-            workbookData.put(sheetName, sheetData);
+            case BOOLEAN -> cells.setBoolean(columnNum, cell.getBooleanCellValue());
+            default -> throw new ExcelFileStructureException(
+                    "Sheet " + sheetName + ", row num " + rowNum + ", column num " + columnNum +
+                    ": Unsupported cell type: " + cell.getCellType()
+            );
         }
-
-        return workbookData;
     }
 }
@@ -0,0 +1,32 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.util.List;
+
+/**
+ * Receives content of Excel file row by row, while the file is being read.
+ *
+ * For each worksheet, which contains data, calls are done in the following order:
+ * {@code startSheet}, then {@code row} for each non-empty data row, then {@code endSheet}.
+ * Worksheets without data rows (and rows, where all cells are empty) are not reported at all.
+ */
+public interface ExcelRowHandler {
+
+    /** Column names are taken from the header row (first row) of the worksheet. */
+    void startSheet(String sheetName, List<String> columnNames) throws ExcelFileStructureException;
+
+    /**
+     * Size of {@code values} is always equal to the number of columns passed to {@code startSheet}.
+     * Missing cells are represented by values of type EMPTY.
+     *
+     * Readers reuse the list and the values for the next rows, so handlers, which keep them
+     * after the call returns, must copy them (see {@link ExcelValueWrapper#copy()}). Before
+     * the readers reused them, each row got a new list of values, which could be kept as is.
+     */
+    void row(int rowNum, List<ExcelValueWrapper> values) throws ExcelFileStructureException;
+
+    /**
+     * Statistics of the columns (in the same order, as column names) are calculated by the reader
+     * over all the rows reported for the sheet.
+     */
+    void endSheet(List<ColumnStats> columnStats) throws ExcelFileStructureException;
+}
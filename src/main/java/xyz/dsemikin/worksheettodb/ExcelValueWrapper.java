@@ -2,50 +2,97 @@ package xyz.dsemikin.worksheettodb;
 
 import java.time.LocalDateTime;
 
+/**
+ * Value of one worksheet cell.
+ *
+ * Values, which are created by the constructor or by {@code of} methods, never change. Values,
+ * which readers pass to {@link ExcelRowHandler}, may be reused for the next rows (see
+ * {@link RowCursor}), so they must be copied with {@link #copy()}, if they are kept.
+ */
 public class ExcelValueWrapper {
 
-    private final Type type;
-    private final String stringValue;
-    private final Double doubleValue; // we want it to be nullable
-    private final LocalDateTime dateValue;
-    private final Boolean booleanValue;
+    public static final ExcelValueWrapper EMPTY = new ExcelValueWrapper(Type.EMPTY, null, 0, null, false, false);
+    public static final ExcelValueWrapper TRUE = new ExcelValueWrapper(Type.BOOLEAN, null, 0, null, true, false);
+    public static final ExcelValueWrapper FALSE = new ExcelValueWrapper(Type.BOOLEAN, null, 0, null, false, false);
+
+    private final boolean reusable;
+    private Type type;
+    private String stringValue;
+    private double doubleValue;
+    private LocalDateTime dateValue;
+    private boolean booleanValue;
 
     public ExcelValueWrapper(Object value) {
+        this(Type.EMPTY, null, 0, null, false, false);
         if (value == null) {
-            type = Type.EMPTY;
-            stringValue = null;
-            doubleValue = null;
-            dateValue = null;
-            booleanValue = null;
-        } else if (value instanceof String) {
-            type = Type.STRING;
-            stringValue = (String) value;
-            doubleValue = null;
-            dateValue = null;
-            booleanValue = null;
-        } else if (value instanceof Double) {
-            type = Type.DOUBLE;
-            stringValue = null;
-            doubleValue = (Double) value;
-            dateValue = null;
-            booleanValue = null;
-        } else if (value instanceof LocalDateTime) {
-            type = Type.DATE;
-            stringValue = null;
-            doubleValue = null;
-            dateValue = (LocalDateTime) value;
-            booleanValue = null;
-        } else if(value instanceof Boolean) {
-            type = Type.BOOLEAN;
-            stringValue = null;
-            doubleValue = null;
-            dateValue = null;
-            booleanValue = (Boolean) value;
+            return;
+        }
+        if (value instanceof String string) {
+            setString(string);
+        } else if (value instanceof Double doubleObject) {
+            setDouble(doubleObject);
+        } else if (value instanceof LocalDateTime date) {
+            setDate(date);
+        } else if (value instanceof Boolean booleanObject) {
+            setBoolean(booleanObject);
         } else {
             throw new IllegalArgumentException("Argument of type " + value.getClass().getName() + " is not supported");
         }
     }
 
+    private ExcelValueWrapper(
+            final Type type,
+            final String stringValue,
+            final double doubleValue,
+            final LocalDateTime dateValue,
+            final boolean booleanValue,
+            final boolean reusable
+    ) {
+        this.type = type;
+        this.stringValue = stringValue;
+        this.doubleValue = doubleValue;
+        this.dateValue = dateValue;
+        this.booleanValue = booleanValue;
+        this.reusable = reusable;
+    }
+
+    /** EMPTY for {@code null}. */
+    public static ExcelValueWrapper of(final String value) {
+        return value == null ? EMPTY : new ExcelValueWrapper(Type.STRING, value, 0, null, false, false);
+    }
+
+    public static ExcelValueWrapper of(final double value) {
+        return new ExcelValueWrapper(Type.DOUBLE, null, value, null, false, false);
+    }
+
+    /** EMPTY for {@code null}. */
+    public static ExcelValueWrapper of(final LocalDateTime value) {
+        return value == null ? EMPTY : new ExcelValueWrapper(Type.DATE, null, 0, value, false, false);
+    }
+
+    public static ExcelValueWrapper of(final boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /** Value, which is changed by setters. Only {@link RowCursor} creates such values. */
+    static ExcelValueWrapper reusable() {
+        return new ExcelValueWrapper(Type.EMPTY, null, 0, null, false, true);
+    }
+
+    /** Value, which does not change, when the row cursor moves further. Values, which never change, are returned as is. */
+    public ExcelValueWrapper copy() {
+        if (!reusable) {
+            return this;
+        }
+        return switch (type) {
+            case STRING -> of(stringValue);
+            case DOUBLE -> of(doubleValue);
+            case DATE -> of(dateValue);
+            case BOOLEAN -> of(booleanValue);
+            case EMPTY -> EMPTY;
+        };
+    }
+
     public ExcelValueWrapper.Type type() {
         return type;
     }
@@ -57,7 +104,7 @@ public class ExcelValueWrapper {
 
     /** Returned value maybe null. Check type first, before using value */
     public Double maybeDoubleValue() {
-        return doubleValue;
+        return type == Type.DOUBLE ? doubleValue : null;
     }
 
     /** Returned value maybe null. Check type first, before using value */
@@ -67,9 +114,45 @@ public class ExcelValueWrapper {
 
     /** Returned value maybe null. Check type first, before using value */
     public Boolean maybeBooleanValue() {
+        return type == Type.BOOLEAN ? booleanValue : null;
+    }
+
+    /** Same as {@link #maybeDoubleValue()}, but without boxing. Meaningful only for DOUBLE values. */
+    public double doubleValue() {
+        return doubleValue;
+    }
+
+    /** Same as {@link #maybeBooleanValue()}, but without boxing. Meaningful only for BOOLEAN values. */
+    public boolean booleanValue() {
         return booleanValue;
     }
 
+    void setString(final String value) {
+        type = Type.STRING;
+        stringValue = value;
+        dateValue = null;
+    }
+
+    void setDouble(final double value) {
+        type = Type.DOUBLE;
+        doubleValue = value;
+        stringValue = null;
+        dateValue = null;
+    }
+
+    void setDate(final LocalDateTime value) {
+        type = Type.DATE;
+        dateValue = value;
+        stringValue = null;
+    }
+
+    void setBoolean(final boolean value) {
+        type = Type.BOOLEAN;
+        booleanValue = value;
+        stringValue = null;
+        dateValue = null;
+    }
+
     public enum Type {
         STRING,
         DOUBLE, // for all numbers, - also integral
@@ -0,0 +1,27 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Import of one or more files of the batch failed (see {@link BatchImporter}). Other files may
+ * have been imported successfully. Original exceptions are available per file and also as
+ * suppressed exceptions.
+ */
+public class FileImportException extends Exception {
+
+    private final Map<Path, Exception> failures;
+
+    public FileImportException(final Map<Path, Exception> failures) {
+        super("Import of " + failures.size() + " file(s) failed: " + failures.keySet());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        failures.values().forEach(this::addSuppressed);
+    }
+
+    /** Key is path of the file, value is the reason of the failure. */
+    public Map<Path, Exception> failures() {
+        return failures;
+    }
+}
@@ -0,0 +1,126 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads rows into H2 with {@code INSERT ... SELECT * FROM CSVREAD(...)}.
+ *
+ * Rows of each chunk are written into temporary CSV file, which is then read by the database
+ * itself. Because of this, the sink can be used only with embedded databases (including
+ * in-memory ones), where the database sees the same file system, as the application.
+ */
+class H2CsvRowSink extends BulkLoadRowSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(H2CsvRowSink.class);
+
+    private Path csvFile;
+    private Writer csvWriter;
+
+    H2CsvRowSink(
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics,
+            final ImportCheckpoints checkpoints
+    ) throws SQLException {
+        super(connectionPool, options, metrics, checkpoints);
+    }
+
+    /** Server mode connections (tcp, ssl) may point to other machine, which does not see our temporary files. */
+    static boolean supports(final String connectionString) {
+        final String lowerCaseConnectionString = connectionString.toLowerCase(Locale.ROOT);
+        return lowerCaseConnectionString.startsWith("jdbc:h2:")
+                && !lowerCaseConnectionString.startsWith("jdbc:h2:tcp:")
+                && !lowerCaseConnectionString.startsWith("jdbc:h2:ssl:");
+    }
+
+    @Override
+    protected void startChunk() throws SQLException {
+        try {
+            csvFile = Files.createTempFile("worksheet-to-db-", ".csv");
+            csvWriter = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            discardChunk();
+            throw new SQLException("Table " + tableDefinition.tableName() + ": Failed to create temporary CSV file.", e);
+        }
+    }
+
+    @Override
+    protected void writeRow(final List<ExcelValueWrapper> values) throws SQLException {
+        final StringBuilder line = new StringBuilder();
+        for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+            if (columnNum != 0) {
+                line.append(',');
+            }
+            final String text = valueText(columnNum, values.get(columnNum));
+            // Unquoted empty field is read as NULL, and quoted one - as empty string.
+            if (text != null) {
+                line.append('"').append(text.replace("\"", "\"\"")).append('"');
+            }
+        }
+        line.append('\n');
+        try {
+            csvWriter.write(line.toString());
+        } catch (IOException e) {
+            throw new SQLException("Table " + tableDefinition.tableName() + ": Failed to write temporary CSV file " + csvFile + ".", e);
+        }
+    }
+
+    @Override
+    protected void loadChunk() throws SQLException {
+        try {
+            csvWriter.close();
+        } catch (IOException e) {
+            throw new SQLException("Table " + tableDefinition.tableName() + ": Failed to write temporary CSV file " + csvFile + ".", e);
+        }
+        final String loadStatement = generateLoadStatement();
+        LOGGER.debug("Load data statement: " + loadStatement);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(loadStatement);
+        }
+        discardChunk();
+    }
+
+    @Override
+    protected void discardChunk() {
+        if (csvWriter != null) {
+            try {
+                csvWriter.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close temporary CSV file " + csvFile + ".", e);
+            }
+            csvWriter = null;
+        }
+        if (csvFile != null) {
+            try {
+                Files.deleteIfExists(csvFile);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete temporary CSV file " + csvFile + ".", e);
+            }
+            csvFile = null;
+        }
+    }
+
+    private String generateLoadStatement() {
+        final String columns = String.join(", ", tableDefinition.columnNames());
+        // Column list is passed to CSVREAD, so that the first line of the file is not treated as header.
+        final String csvColumns = String.join(",", tableDefinition.columnNames());
+        return "INSERT INTO " + tableDefinition.tableName() + " ( " + columns + " ) " +
+                "SELECT * FROM CSVREAD(" + sqlString(csvFile.toAbsolutePath().toString()) + ", " +
+                sqlString(csvColumns) + ", 'charset=UTF-8 fieldSeparator=,')";
+    }
+
+    private static String sqlString(final String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,347 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Progress of resumable import (see {@link ImportOptions#resumable()}), which is kept in DB table
+ * {@value #PROGRESS_TABLE}: number of rows of each table, which are committed, and whether the table
+ * is finished. Sinks update it in the same transaction, in which they commit the rows, so it always
+ * matches the content of the table.
+ *
+ * If the import fails (e.g. connection to DB is lost), the next resumable import of the same file skips
+ * the sheets, which are finished, and continues unfinished tables: rows, which are already committed,
+ * are skipped, as they are read, and the rest is added to the existing table. Progress of the tables
+ * is deleted, when all sheets of the import succeed.
+ *
+ * Progress is recorded together with the hash of the identity of the source (see
+ * {@link RowSource#contentIdentity()}), and only progress of the same source is resumed, so that rows,
+ * which are not in the DB, are never skipped. Progress of other sources (e.g. of other files of the
+ * same batch) is left as it is.
+ */
+class ImportCheckpoints {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportCheckpoints.class);
+
+    static final String PROGRESS_TABLE = "worksheet_to_db_import_progress";
+
+    private static final String COLUMN_NAMES_SEPARATOR = ",";
+
+    /** Progress of the table of one sheet. */
+    private record TableProgress(String tableName, String columnNames, long rowsCommitted, boolean finished) {}
+
+    private final ConnectionPool connectionPool;
+    private final ImportMetrics metrics;
+    // Hash of the identity of the source. Empty, if the source can not be identified.
+    private final String sourceHash;
+    // Progress of the previous import, which was interrupted. Key is sheet name.
+    private final Map<String, TableProgress> storedProgress = new HashMap<>();
+    // Tables of this import, whose progress is recorded. Sinks add them from several threads.
+    private final Set<String> startedTables = new HashSet<>();
+
+    ImportCheckpoints(final ConnectionPool connectionPool, final ImportMetrics metrics, final String sourceIdentity) {
+        this.connectionPool = connectionPool;
+        this.metrics = metrics;
+        this.sourceHash = sourceIdentity == null ? "" : sourceHash(sourceIdentity);
+    }
+
+    /** Creates progress table, if it does not exist, and reads progress of the previous import of the same source. */
+    void load() throws SQLException {
+        final Connection connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(true);
+            if (SqlDbTableImporter.findExistingTableName(connection, PROGRESS_TABLE) == null) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE " + PROGRESS_TABLE + " (" +
+                            "source_hash VARCHAR(64) NOT NULL, " +
+                            "table_name VARCHAR(255) NOT NULL, " +
+                            "sheet_name VARCHAR(255) NOT NULL, " +
+                            "column_names TEXT NOT NULL, " +
+                            "rows_committed BIGINT NOT NULL, " +
+                            "finished BOOLEAN NOT NULL, " +
+                            "PRIMARY KEY (source_hash, table_name))");
+                }
+                return;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM " + PROGRESS_TABLE + " WHERE source_hash <> ?")) {
+                statement.setString(1, sourceHash);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next() && resultSet.getLong(1) > 0) {
+                        LOGGER.info(resultSet.getLong(1) + " table(s) in " + PROGRESS_TABLE + " belong to interrupted imports " +
+                                "of other files (or of this file, before it changed). They are not resumed by this import.");
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT sheet_name, table_name, column_names, rows_committed, finished FROM " + PROGRESS_TABLE + " WHERE source_hash = ?")) {
+                statement.setString(1, sourceHash);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    readStoredProgress(resultSet);
+                }
+            }
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    private void readStoredProgress(final ResultSet resultSet) throws SQLException {
+        while (resultSet.next()) {
+            final TableProgress progress = new TableProgress(
+                    resultSet.getString(2), resultSet.getString(3), resultSet.getLong(4), resultSet.getBoolean(5));
+            storedProgress.put(resultSet.getString(1), progress);
+            if (progress.finished()) {
+                LOGGER.info("Sheet " + resultSet.getString(1) + ": Table " + progress.tableName() +
+                        " is already imported by interrupted import. Skipping.");
+            } else {
+                LOGGER.info("Sheet " + resultSet.getString(1) + ": Import is resumed after " + progress.rowsCommitted() +
+                        " rows, which are already in table " + progress.tableName() + ".");
+            }
+        }
+    }
+
+    /** Tables of the previous import. Key is sheet name. Other sheets must not take these names. */
+    Map<String, String> storedTableNames() {
+        final Map<String, String> tableNames = new HashMap<>();
+        for (final Map.Entry<String, TableProgress> entry : storedProgress.entrySet()) {
+            tableNames.put(entry.getKey(), entry.getValue().tableName());
+        }
+        return tableNames;
+    }
+
+    /** Source without the sheets, which are finished, where rows, which are already committed, are skipped. */
+    RowSource unfinishedRows(final RowSource source) {
+        final RowSource unfinishedSheets = source.withSheetFilter(sheetName -> {
+            final TableProgress progress = storedProgress.get(sheetName);
+            return progress == null || !progress.finished();
+        });
+        return new RowSource() {
+            @Override
+            public void readRows(final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+                unfinishedSheets.readRows(ExcelFileReader.demultiplex(sheetName -> skippingHandler(sheetName, handler)));
+            }
+
+            @Override
+            public void readRowsInParallel(
+                    final SheetHandlerFactory handlerFactory,
+                    final int parallelism
+            ) throws IOException, ExcelFileStructureException {
+                unfinishedSheets.readRowsInParallel(
+                        sheetName -> skippingHandler(sheetName, handlerFactory.handlerFor(sheetName)),
+                        parallelism);
+            }
+
+            @Override
+            public long sizeInBytes() throws IOException {
+                return unfinishedSheets.sizeInBytes();
+            }
+        };
+    }
+
+    /** Sinks, which continue unfinished tables of the previous import instead of creating them. */
+    RowSink.Factory wrap(final RowSink.Factory sinkFactory) {
+        if (storedProgress.isEmpty()) {
+            return sinkFactory;
+        }
+        return () -> new ResumingRowSink(sinkFactory.createSink());
+    }
+
+    /**
+     * Called by sinks, when the table is created, before the transaction is committed. Progress of the table
+     * with the same name, which was recorded for any source, is stale then: the table did not exist.
+     */
+    void tableStarted(final Connection connection, final TableDefinition tableDefinition) throws SQLException {
+        try (
+                PreparedStatement deleteStatement = connection.prepareStatement(
+                        "DELETE FROM " + PROGRESS_TABLE + " WHERE table_name = ?");
+                PreparedStatement insertStatement = connection.prepareStatement(
+                        "INSERT INTO " + PROGRESS_TABLE + " (source_hash, table_name, sheet_name, column_names, rows_committed, finished) VALUES (?, ?, ?, ?, 0, FALSE)")
+        ) {
+            deleteStatement.setString(1, tableDefinition.tableName());
+            deleteStatement.executeUpdate();
+            insertStatement.setString(1, sourceHash);
+            insertStatement.setString(2, tableDefinition.tableName());
+            insertStatement.setString(3, tableDefinition.sheetName());
+            insertStatement.setString(4, String.join(COLUMN_NAMES_SEPARATOR, tableDefinition.columnNames()));
+            insertStatement.executeUpdate();
+        }
+        synchronized (startedTables) {
+            startedTables.add(tableDefinition.tableName());
+        }
+    }
+
+    /** Called by sinks before each commit with the number of rows, which were written since the previous commit. */
+    void rowsCommitted(final Connection connection, final TableDefinition tableDefinition, final int rowsCount) throws SQLException {
+        if (rowsCount == 0) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE " + PROGRESS_TABLE + " SET rows_committed = rows_committed + ? WHERE source_hash = ? AND table_name = ?")) {
+            statement.setLong(1, rowsCount);
+            statement.setString(2, sourceHash);
+            statement.setString(3, tableDefinition.tableName());
+            statement.executeUpdate();
+        }
+    }
+
+    /** Called by sinks, when all rows of the table are written, before the last commit. */
+    void tableFinished(final Connection connection, final TableDefinition tableDefinition) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE " + PROGRESS_TABLE + " SET finished = TRUE WHERE source_hash = ? AND table_name = ?")) {
+            statement.setString(1, sourceHash);
+            statement.setString(2, tableDefinition.tableName());
+            statement.executeUpdate();
+        }
+    }
+
+    /** Deletes progress of all tables of this import (and of the previous one of the same source, which it resumed). */
+    void clear() {
+        final Set<String> tableNames = new HashSet<>();
+        synchronized (startedTables) {
+            tableNames.addAll(startedTables);
+        }
+        for (final TableProgress progress : storedProgress.values()) {
+            tableNames.add(progress.tableName());
+        }
+        if (tableNames.isEmpty()) {
+            return;
+        }
+        try {
+            final Connection connection = connectionPool.acquire();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM " + PROGRESS_TABLE + " WHERE source_hash = ? AND table_name = ?")) {
+                connection.setAutoCommit(false);
+                for (final String tableName : tableNames) {
+                    statement.setString(1, sourceHash);
+                    statement.setString(2, tableName);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } finally {
+                connectionPool.release(connection);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to delete import progress. Next resumable import of the same sheets will skip them.", e);
+        }
+    }
+
+    /** Identity of xlsx file consists of fingerprints of all its sheets, so it is stored as hash. */
+    private static String sourceHash(final String sourceIdentity) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(sourceIdentity.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM.", e);
+        }
+    }
+
+    private ExcelRowHandler skippingHandler(final String sheetName, final ExcelRowHandler handler) {
+        final TableProgress progress = storedProgress.get(sheetName);
+        if (progress == null || progress.rowsCommitted() == 0) {
+            return handler;
+        }
+        return new ExcelRowHandler() {
+
+            private long rowsToSkip = progress.rowsCommitted();
+
+            @Override
+            public void startSheet(final String sheetName, final List<String> columnNames) throws ExcelFileStructureException {
+                handler.startSheet(sheetName, columnNames);
+            }
+
+            @Override
+            public void row(final int rowNum, final List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+                if (rowsToSkip > 0) {
+                    --rowsToSkip;
+                    return;
+                }
+                handler.row(rowNum, values);
+            }
+
+            @Override
+            public void endSheet(final List<ColumnStats> columnStats) throws ExcelFileStructureException {
+                // Statistics still cover all rows, so column types are the same, as in the previous import.
+                handler.endSheet(columnStats);
+            }
+        };
+    }
+
+    private class ResumingRowSink implements RowSink {
+
+        private final RowSink sink;
+        // Sheet name of the continued table, which write time is recorded here instead of the sink.
+        private String continuedSheetName;
+
+        ResumingRowSink(final RowSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startTable(final TableDefinition tableDefinition) throws SQLException {
+            final TableProgress progress = storedProgress.get(tableDefinition.sheetName());
+            continuedSheetName = null;
+            if (progress == null || !progress.tableName().equals(tableDefinition.tableName())) {
+                sink.startTable(tableDefinition);
+                return;
+            }
+            if (!progress.columnNames().equals(String.join(COLUMN_NAMES_SEPARATOR, tableDefinition.columnNames()))) {
+                throw new IllegalStateException("Table " + tableDefinition.tableName() + ": Columns of the sheet changed since " +
+                        "the interrupted import. Drop the table and delete its row from " + PROGRESS_TABLE + " to import it again.");
+            }
+            LOGGER.info("Table " + tableDefinition.tableName() + ": Continuing after " + progress.rowsCommitted() + " rows.");
+            metrics.sheetWriteStarted(tableDefinition.sheetName());
+            sink.continueTable(tableDefinition);
+            continuedSheetName = tableDefinition.sheetName();
+        }
+
+        @Override
+        public void row(final List<ExcelValueWrapper> values) throws SQLException {
+            sink.row(values);
+        }
+
+        @Override
+        public void row(final SheetData sheetData, final int rowNum) throws SQLException {
+            sink.row(sheetData, rowNum);
+        }
+
+        @Override
+        public void endTable() throws SQLException {
+            sink.endTable();
+            if (continuedSheetName != null) {
+                metrics.sheetWriteFinished(continuedSheetName);
+            }
+        }
+
+        @Override
+        public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+            sink.widenTable(widenedDefinition);
+        }
+
+        @Override
+        public void abortTable() {
+            sink.abortTable();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            sink.close();
+        }
+    }
+}
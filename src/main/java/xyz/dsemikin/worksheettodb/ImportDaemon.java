@@ -0,0 +1,224 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Imports Excel files, which appear in the inbox directory, until it is closed.
+ *
+ * Connection pool stays open between imports, so connections, and also loaded classes and
+ * compiled code, are reused by the next files. Imported files are moved to subdirectory
+ * {@code done} of the inbox, files, which failed, - to {@code failed} (together with file
+ * {@code <name>.error.txt}, which contains the reason). Files are imported one at a time,
+ * in the order they appear.
+ *
+ * Files, which are already in the inbox, when the daemon starts, are imported first. Files,
+ * which can not be moved away after import, stay in the inbox and are not imported again,
+ * until the daemon is restarted.
+ */
+class ImportDaemon implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportDaemon.class);
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS", Locale.ROOT);
+
+    /** File is considered completely written, when its size and modification time do not change during this time. */
+    private static final long SETTLE_MILLIS = 500;
+    /** File, which is still changing after so many checks, is skipped until the next change in the inbox. */
+    private static final int MAX_SETTLE_CHECKS = 20;
+
+    private final Path inbox;
+    private final Path doneDirectory;
+    private final Path failedDirectory;
+    private final String connectionString;
+    private final ImportOptions options;
+    private final ImportMetrics metrics;
+    private final ConnectionPool connectionPool;
+    private final WatchService watchService;
+    // Files, which were imported (or failed), but could not be moved away from the inbox.
+    private final Set<Path> unmovableFiles = new HashSet<>();
+    private volatile boolean stopped;
+
+    ImportDaemon(
+            final Path inbox,
+            final String connectionString,
+            final Properties connectionProperties,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws IOException {
+        if (!Files.isDirectory(inbox)) {
+            throw new IllegalArgumentException("Inbox " + inbox + " is not a directory.");
+        }
+        this.inbox = inbox;
+        this.doneDirectory = Files.createDirectories(inbox.resolve("done"));
+        this.failedDirectory = Files.createDirectories(inbox.resolve("failed"));
+        this.connectionString = connectionString;
+        this.options = options;
+        this.metrics = metrics;
+        this.watchService = inbox.getFileSystem().newWatchService();
+        // Registered before the first scan, so that files, which appear during the scan, are not missed.
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.connectionPool = new ConnectionPool(connectionString, connectionProperties, SqlDbTableImporter.connectionPoolSize(options));
+    }
+
+    /** Returns, when the daemon is stopped (e.g. from shutdown hook) or the thread is interrupted. */
+    void run() throws IOException {
+        LOGGER.info("Watching " + inbox + " for Excel files.");
+        try {
+            importWaitingFiles();
+            while (!stopped) {
+                final WatchKey key = watchService.take();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOGGER.warn("Some file events of " + inbox + " were lost. Inbox will be scanned.");
+                    }
+                }
+                // Events only tell, that something changed. Inbox is scanned, because files are moved away
+                // after import and event may refer to a file, which is not completely written yet.
+                importWaitingFiles();
+                if (!key.reset()) {
+                    LOGGER.error("Inbox " + inbox + " is not accessible anymore. Stopping.");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped while waiting for events
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.info("Import daemon is interrupted.");
+            return;
+        }
+        LOGGER.info("Import daemon is stopped.");
+    }
+
+    /** Import of the current file is finished, but no further files are imported. May be called from any thread. */
+    void stop() throws IOException {
+        stopped = true;
+        watchService.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        connectionPool.close();
+    }
+
+    /** Scans the inbox again after each pass, in which some files were imported, since new files may appear meanwhile. */
+    private void importWaitingFiles() throws IOException, InterruptedException {
+        boolean imported = true;
+        while (imported && !stopped) {
+            imported = false;
+            final List<Path> files;
+            try (Stream<Path> children = Files.list(inbox)) {
+                files = children
+                        .filter(BatchImporter::isExcelFile)
+                        .filter(file -> !unmovableFiles.contains(file))
+                        .sorted()
+                        .toList();
+            }
+            for (final Path file : files) {
+                if (stopped) {
+                    return;
+                }
+                if (!waitUntilWritten(file)) {
+                    continue;
+                }
+                importFile(file);
+                imported = true;
+            }
+        }
+    }
+
+    /** Returns false, if the file disappeared or is still being written. */
+    private static boolean waitUntilWritten(final Path file) throws InterruptedException {
+        try {
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            for (int checkNum = 0; checkNum < MAX_SETTLE_CHECKS; ++checkNum) {
+                Thread.sleep(SETTLE_MILLIS);
+                final long newSize = Files.size(file);
+                final long newModified = Files.getLastModifiedTime(file).toMillis();
+                if (newSize == size && newModified == modified) {
+                    return true;
+                }
+                size = newSize;
+                modified = newModified;
+            }
+            LOGGER.warn("File " + file + " is still changing after " + MAX_SETTLE_CHECKS * SETTLE_MILLIS +
+                    " ms. It will be imported after the next change in the inbox.");
+            return false;
+        } catch (IOException e) {
+            LOGGER.info("File " + file + " disappeared before import.");
+            return false;
+        }
+    }
+
+    private void importFile(final Path file) {
+        LOGGER.info("File " + file + ": Import started.");
+        final long startNanos = System.nanoTime();
+        try {
+            SqlDbTableImporter.importTables(connectionString, connectionPool, RowSource.fromExcelFile(file), options, metrics.forFile(file.getFileName().toString()));
+        } catch (Exception e) {
+            LOGGER.error("File " + file + ": Import failed.", e);
+            final Path failedFile = moveAway(file, failedDirectory);
+            if (failedFile == null) {
+                return;
+            }
+            final Path errorFile = failedFile.resolveSibling(failedFile.getFileName() + ".error.txt");
+            final StringWriter stackTrace = new StringWriter();
+            e.printStackTrace(new PrintWriter(stackTrace));
+            try {
+                Files.writeString(errorFile, stackTrace.toString());
+            } catch (IOException writeException) {
+                LOGGER.error("File " + file + ": Failed to write reason of the failure to " + errorFile + ".", writeException);
+            }
+            return;
+        }
+        if (moveAway(file, doneDirectory) != null) {
+            LOGGER.info("File " + file + ": Import finished in " + (System.nanoTime() - startNanos) / 1_000_000 + " ms.");
+        }
+    }
+
+    /**
+     * Moves the file to the directory. If it fails, the file stays in the inbox, but is not imported
+     * again, and {@code null} is returned.
+     */
+    private Path moveAway(final Path file, final Path directory) {
+        try {
+            return moveTo(file, directory);
+        } catch (IOException e) {
+            LOGGER.error("File " + file + ": Failed to move it to " + directory + ". It stays in the inbox and " +
+                    "will not be imported again, until the daemon is restarted.", e);
+            unmovableFiles.add(file);
+            return null;
+        }
+    }
+
+    /** File with the same name, which is already in the directory, is not overwritten: timestamp is added to the name. */
+    private static Path moveTo(final Path file, final Path directory) throws IOException {
+        Path target = directory.resolve(file.getFileName());
+        if (Files.exists(target)) {
+            target = directory.resolve(LocalDateTime.now().format(TIMESTAMP_FORMATTER) + "-" + file.getFileName());
+        }
+        return Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,336 @@
+package xyz.dsemikin.worksheettodb;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one import: rows parsed and written, bytes read, latency of DB batches,
+ * timings per sheet and heap high-water mark.
+ *
+ * Counters are updated by reader and writer threads concurrently and can be read at any
+ * moment: over JMX (see {@link #registerMBean()}), by {@link ProgressReporter}, or as JSON
+ * report at the end ({@link #toJson(String)}).
+ */
+public class ImportMetrics implements ImportMetricsMXBean {
+
+    public static final String MBEAN_NAME = "xyz.dsemikin.worksheettodb:type=ImportMetrics";
+
+    private static final long[] BATCH_LATENCY_BUCKET_BOUNDS_MILLIS =
+            {1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000};
+
+    private final Instant startTime;
+    private final long startNanos;
+    private final LongAdder rowsParsed;
+    private final LongAdder rowsWritten;
+    private final LongAdder bytesRead;
+    private final LongAdder batchCount;
+    private final LongAdder batchNanos;
+    private final AtomicLongArray batchLatencyHistogram;
+    private final AtomicLong heapHighWaterMark;
+    private final LongAdder schemaDetectionNanos;
+    private final Map<SheetKey, SheetMetrics> sheets;
+    // File, which sheets are counted by this instance, or {@code null}, if only one file is imported.
+    private final String fileName;
+
+    private ObjectName registeredName;
+
+    public ImportMetrics() {
+        startTime = Instant.now();
+        startNanos = System.nanoTime();
+        rowsParsed = new LongAdder();
+        rowsWritten = new LongAdder();
+        bytesRead = new LongAdder();
+        batchCount = new LongAdder();
+        batchNanos = new LongAdder();
+        batchLatencyHistogram = new AtomicLongArray(BATCH_LATENCY_BUCKET_BOUNDS_MILLIS.length + 1);
+        heapHighWaterMark = new AtomicLong();
+        schemaDetectionNanos = new LongAdder();
+        sheets = new ConcurrentHashMap<>();
+        fileName = null;
+    }
+
+    private ImportMetrics(final ImportMetrics importMetrics, final String fileName) {
+        startTime = importMetrics.startTime;
+        startNanos = importMetrics.startNanos;
+        rowsParsed = importMetrics.rowsParsed;
+        rowsWritten = importMetrics.rowsWritten;
+        bytesRead = importMetrics.bytesRead;
+        batchCount = importMetrics.batchCount;
+        batchNanos = importMetrics.batchNanos;
+        batchLatencyHistogram = importMetrics.batchLatencyHistogram;
+        heapHighWaterMark = importMetrics.heapHighWaterMark;
+        schemaDetectionNanos = importMetrics.schemaDetectionNanos;
+        sheets = importMetrics.sheets;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Metrics of one of several files, which are imported together (see {@link BatchImporter}).
+     * Counters are shared with this instance, but sheets are counted separately for each file,
+     * so that sheets with the same name in different files are reported separately.
+     */
+    public ImportMetrics forFile(final String fileName) {
+        return new ImportMetrics(this, fileName);
+    }
+
+    public void rowParsed(final String sheetName) {
+        rowsParsed.increment();
+        sheet(sheetName).rowsParsed.increment();
+    }
+
+    public void sheetParseStarted(final String sheetName) {
+        sheet(sheetName).parseStartNanos = System.nanoTime();
+    }
+
+    public void sheetParseFinished(final String sheetName) {
+        sheet(sheetName).parseEndNanos = System.nanoTime();
+        sampleHeap();
+    }
+
+    public void sheetWriteStarted(final String sheetName) {
+        sheet(sheetName).writeStartNanos = System.nanoTime();
+    }
+
+    public void sheetWriteFinished(final String sheetName) {
+        sheet(sheetName).writeEndNanos = System.nanoTime();
+        sampleHeap();
+    }
+
+    /** Batch (or bulk load chunk) of {@code rowsCount} rows was sent to DB in {@code nanos}. */
+    public void batchExecuted(final String sheetName, final int rowsCount, final long nanos) {
+        rowsWritten.add(rowsCount);
+        sheet(sheetName).rowsWritten.add(rowsCount);
+        batchCount.increment();
+        batchNanos.add(nanos);
+        final long millis = nanos / 1_000_000;
+        int bucket = 0;
+        while (bucket < BATCH_LATENCY_BUCKET_BOUNDS_MILLIS.length && millis > BATCH_LATENCY_BUCKET_BOUNDS_MILLIS[bucket]) {
+            ++bucket;
+        }
+        batchLatencyHistogram.incrementAndGet(bucket);
+    }
+
+    public void bytesRead(final long bytesCount) {
+        bytesRead.add(bytesCount);
+    }
+
+    /** Time of the first pass over the source, which only detects column types. */
+    public void schemaDetectionFinished(final long nanos) {
+        schemaDetectionNanos.add(nanos);
+    }
+
+    /**
+     * Takes peak heap usage into account for the high-water mark. Peaks are tracked by the JVM
+     * for each heap memory pool, so short spikes between GCs are not missed. They are summed up,
+     * so the value is an upper bound: pools may reach their peaks at different moments.
+     */
+    public void sampleHeap() {
+        long peakHeap = 0;
+        for (final MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+                peakHeap += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        heapHighWaterMark.accumulateAndGet(peakHeap, Math::max);
+    }
+
+    /**
+     * Registers the metrics in platform MBean server as {@value #MBEAN_NAME}. Peak usage of heap
+     * memory pools is reset, so that the high-water mark does not include usage before the import.
+     */
+    public void registerMBean() throws JMException {
+        for (final MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+                memoryPool.resetPeakUsage();
+            }
+        }
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(MBEAN_NAME);
+        if (mBeanServer.isRegistered(name)) {
+            // Metrics of the previous import in the same JVM
+            mBeanServer.unregisterMBean(name);
+        }
+        mBeanServer.registerMBean(this, name);
+        registeredName = name;
+    }
+
+    public void unregisterMBean() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public long getRowsParsed() {
+        return rowsParsed.sum();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    @Override
+    public double getRowsParsedPerSecond() {
+        return perSecond(getRowsParsed());
+    }
+
+    @Override
+    public double getRowsWrittenPerSecond() {
+        return perSecond(getRowsWritten());
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    @Override
+    public double getAverageBatchMillis() {
+        final long count = batchCount.sum();
+        return count == 0 ? 0 : batchNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public long[] getBatchLatencyBucketBoundsMillis() {
+        return BATCH_LATENCY_BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    @Override
+    public long[] getBatchLatencyHistogram() {
+        final long[] histogram = new long[batchLatencyHistogram.length()];
+        for (int bucket = 0; bucket < histogram.length; ++bucket) {
+            histogram[bucket] = batchLatencyHistogram.get(bucket);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getHeapHighWaterMarkBytes() {
+        sampleHeap();
+        return heapHighWaterMark.get();
+    }
+
+    /** Report of the whole import. {@code status} is free text, e.g. "succeeded" or "failed". */
+    public String toJson(final String status) {
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"status\": ").append(jsonString(status)).append(",\n");
+        json.append("  \"startTime\": ").append(jsonString(startTime.toString())).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(getElapsedMillis()).append(",\n");
+        json.append("  \"schemaDetectionMillis\": ").append(schemaDetectionNanos.sum() / 1_000_000).append(",\n");
+        json.append("  \"rowsParsed\": ").append(getRowsParsed()).append(",\n");
+        json.append("  \"rowsWritten\": ").append(getRowsWritten()).append(",\n");
+        json.append("  \"rowsParsedPerSecond\": ").append(Math.round(getRowsParsedPerSecond())).append(",\n");
+        json.append("  \"rowsWrittenPerSecond\": ").append(Math.round(getRowsWrittenPerSecond())).append(",\n");
+        json.append("  \"bytesRead\": ").append(getBytesRead()).append(",\n");
+        json.append("  \"batchCount\": ").append(getBatchCount()).append(",\n");
+        json.append("  \"averageBatchMillis\": ").append(String.format(java.util.Locale.ROOT, "%.3f", getAverageBatchMillis())).append(",\n");
+        json.append("  \"batchLatencyHistogram\": [");
+        final long[] histogram = getBatchLatencyHistogram();
+        for (int bucket = 0; bucket < histogram.length; ++bucket) {
+            json.append(bucket == 0 ? "\n" : ",\n");
+            json.append("    { \"upToMillis\": ")
+                    .append(bucket < BATCH_LATENCY_BUCKET_BOUNDS_MILLIS.length ? String.valueOf(BATCH_LATENCY_BUCKET_BOUNDS_MILLIS[bucket]) : "null")
+                    .append(", \"count\": ").append(histogram[bucket]).append(" }");
+        }
+        json.append("\n  ],\n");
+        json.append("  \"heapHighWaterMarkBytes\": ").append(getHeapHighWaterMarkBytes()).append(",\n");
+        json.append("  \"sheets\": [");
+        final List<Map.Entry<SheetKey, SheetMetrics>> sheetEntries = new ArrayList<>(sheets.entrySet());
+        sheetEntries.sort(Map.Entry.comparingByKey(SheetKey.ORDER));
+        for (int sheetNum = 0; sheetNum < sheetEntries.size(); ++sheetNum) {
+            final SheetKey sheetKey = sheetEntries.get(sheetNum).getKey();
+            final SheetMetrics sheet = sheetEntries.get(sheetNum).getValue();
+            json.append(sheetNum == 0 ? "\n" : ",\n");
+            json.append("    { ");
+            if (sheetKey.fileName() != null) {
+                json.append("\"file\": ").append(jsonString(sheetKey.fileName())).append(", ");
+            }
+            json.append("\"name\": ").append(jsonString(sheetKey.sheetName()))
+                    .append(", \"rowsParsed\": ").append(sheet.rowsParsed.sum())
+                    .append(", \"rowsWritten\": ").append(sheet.rowsWritten.sum())
+                    .append(", \"parseMillis\": ").append(durationMillis(sheet.parseStartNanos, sheet.parseEndNanos))
+                    .append(", \"writeMillis\": ").append(durationMillis(sheet.writeStartNanos, sheet.writeEndNanos))
+                    .append(" }");
+        }
+        json.append("\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private SheetMetrics sheet(final String sheetName) {
+        return sheets.computeIfAbsent(new SheetKey(fileName, sheetName), key -> new SheetMetrics());
+    }
+
+    private double perSecond(final long count) {
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+    }
+
+    /** {@code null}, if the phase did not finish. */
+    private static String durationMillis(final long startNanos, final long endNanos) {
+        return startNanos == 0 || endNanos == 0 ? "null" : String.valueOf((endNanos - startNanos) / 1_000_000);
+    }
+
+    private static String jsonString(final String value) {
+        final StringBuilder json = new StringBuilder("\"");
+        for (int charNum = 0; charNum < value.length(); ++charNum) {
+            final char c = value.charAt(charNum);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private record SheetKey(String fileName, String sheetName) {
+        private static final Comparator<SheetKey> ORDER =
+                Comparator.comparing(SheetKey::fileName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(SheetKey::sheetName);
+    }
+
+    private static class SheetMetrics {
+        private final LongAdder rowsParsed = new LongAdder();
+        private final LongAdder rowsWritten = new LongAdder();
+        private volatile long parseStartNanos;
+        private volatile long parseEndNanos;
+        private volatile long writeStartNanos;
+        private volatile long writeEndNanos;
+    }
+}
@@ -0,0 +1,30 @@
+package xyz.dsemikin.worksheettodb;
+
+/** Metrics of the running import, which are exposed over JMX (see {@link ImportMetrics}). */
+public interface ImportMetricsMXBean {
+
+    long getElapsedMillis();
+
+    long getRowsParsed();
+
+    long getRowsWritten();
+
+    double getRowsParsedPerSecond();
+
+    double getRowsWrittenPerSecond();
+
+    long getBytesRead();
+
+    long getBatchCount();
+
+    double getAverageBatchMillis();
+
+    /** Upper bounds (inclusive) of the buckets of {@link #getBatchLatencyHistogram()} in milliseconds. */
+    long[] getBatchLatencyBucketBoundsMillis();
+
+    /** Number of batches per latency bucket. The last bucket has no upper bound. */
+    long[] getBatchLatencyHistogram();
+
+    /** Sum of peak usage of heap memory pools (upper bound of the real peak). */
+    long getHeapHighWaterMarkBytes();
+}
@@ -0,0 +1,296 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.util.List;
+
+/** Settings of the import, which do not influence the result, but influence how it is done. */
+public class ImportOptions {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_COMMIT_INTERVAL = 10;
+    public static final int DEFAULT_PARALLELISM = 1;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+    private int queueCapacity = RowPipeline.DEFAULT_QUEUE_CAPACITY;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int sampleRows = 0;
+    private boolean bulkLoad = true;
+    private boolean incremental = false;
+    private String keyColumn = null;
+    private boolean deleteMissing = false;
+    private boolean skipUnchanged = false;
+    private int lookupTableMaxValues = 0;
+    private int insertParallelism = 1;
+    private boolean spillRows = false;
+    private boolean importPlans = false;
+    private boolean resumable = false;
+    private boolean idColumn = false;
+    private List<String> indexHints = List.of();
+
+    /** Number of rows, which are sent to DB in one JDBC batch. */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public ImportOptions setBatchSize(final int batchSize) {
+        requirePositive("batchSize", batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /** Transaction is committed after each {@code commitInterval} batches (and at the end of each table). */
+    public int commitInterval() {
+        return commitInterval;
+    }
+
+    public ImportOptions setCommitInterval(final int commitInterval) {
+        requirePositive("commitInterval", commitInterval);
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    /** Maximum number of rows, which are read from the file, but not yet written to DB. */
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    public ImportOptions setQueueCapacity(final int queueCapacity) {
+        requirePositive("queueCapacity", queueCapacity);
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /** Number of sheets, which are written to DB in parallel, each over its own connection(s) (see {@link #insertParallelism()}). */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public ImportOptions setParallelism(final int parallelism) {
+        requirePositive("parallelism", parallelism);
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * If positive, column types are detected from the first {@code sampleRows} rows of each sheet
+     * (instead of all rows), so that the file is read only once and import of each table starts
+     * immediately. If later rows do not fit, columns are widened with ALTER TABLE. 0 means exact
+     * detection (default). Since tables are created before their sheets are read completely, table
+     * of a sheet, which fails, is dropped (unless it existed before the import), so that the import
+     * can be started again (see {@link CreatedTables}).
+     */
+    public int sampleRows() {
+        return sampleRows;
+    }
+
+    public ImportOptions setSampleRows(final int sampleRows) {
+        if (sampleRows < 0) {
+            throw new IllegalArgumentException("sampleRows must not be negative, but it is " + sampleRows + ".");
+        }
+        this.sampleRows = sampleRows;
+        return this;
+    }
+
+    /**
+     * If set, rows are loaded with native bulk loader of the database, when it is supported
+     * for the connection (CSVREAD for embedded H2, COPY for PostgreSQL). Otherwise (and for other
+     * databases) rows are inserted with JDBC batches.
+     */
+    public boolean bulkLoad() {
+        return bulkLoad;
+    }
+
+    public ImportOptions setBulkLoad(final boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+        return this;
+    }
+
+    /**
+     * If set, existing tables are updated instead of being created: only new rows are inserted and
+     * changed rows are updated (see {@link IncrementalRowSink}). Tables, which do not exist yet,
+     * are created as usual.
+     */
+    public boolean incremental() {
+        return incremental;
+    }
+
+    public ImportOptions setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Name of the column (as in header row), which identifies rows in incremental mode. Sheets, which
+     * do not have such column (or if it is {@code null}), are matched by row content, i.e. changed
+     * row is treated as new one.
+     */
+    public String keyColumn() {
+        return keyColumn;
+    }
+
+    public ImportOptions setKeyColumn(final String keyColumn) {
+        if (keyColumn != null && keyColumn.isBlank()) {
+            throw new IllegalArgumentException("keyColumn must not be blank.");
+        }
+        this.keyColumn = keyColumn;
+        return this;
+    }
+
+    /** In incremental mode: delete rows, which are not in the sheet anymore. Requires key column. */
+    public boolean deleteMissing() {
+        return deleteMissing;
+    }
+
+    public ImportOptions setDeleteMissing(final boolean deleteMissing) {
+        this.deleteMissing = deleteMissing;
+        return this;
+    }
+
+    /**
+     * If set, worksheets, which did not change since the last successful import, are skipped
+     * (see {@link SheetFingerprintStore}). Supported for xlsx files only. Requires incremental mode,
+     * because tables of the sheets, which changed, already exist.
+     */
+    public boolean skipUnchanged() {
+        return skipUnchanged;
+    }
+
+    public ImportOptions setSkipUnchanged(final boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    /**
+     * String columns with not more than this number of distinct values (and with repeated values) are
+     * moved to separate lookup tables, and the table of the sheet keeps only integer ids of the values.
+     * 0 (default) switches lookup tables off. Not supported in incremental mode and with sampling.
+     */
+    public int lookupTableMaxValues() {
+        return lookupTableMaxValues;
+    }
+
+    public ImportOptions setLookupTableMaxValues(final int lookupTableMaxValues) {
+        if (lookupTableMaxValues < 0 || lookupTableMaxValues > ColumnStats.MAX_TRACKED_DISTINCT_STRINGS) {
+            throw new IllegalArgumentException("lookupTableMaxValues must be in range [0, " +
+                    ColumnStats.MAX_TRACKED_DISTINCT_STRINGS + "], but it is " + lookupTableMaxValues + ".");
+        }
+        this.lookupTableMaxValues = lookupTableMaxValues;
+        return this;
+    }
+
+    /**
+     * Number of connections, over which rows of one sheet are written in parallel. Rows are split
+     * into chunks of {@code batchSize * commitInterval} rows, and each chunk is written in its own
+     * transaction (see {@link ChunkedRowSink}). Order of rows in the table is not preserved then.
+     * 1 (default) means, that each sheet is written over one connection. Not supported in incremental mode.
+     */
+    public int insertParallelism() {
+        return insertParallelism;
+    }
+
+    public ImportOptions setInsertParallelism(final int insertParallelism) {
+        requirePositive("insertParallelism", insertParallelism);
+        this.insertParallelism = insertParallelism;
+        return this;
+    }
+
+    /**
+     * If set, rows, which are read to detect column types, are also written to temporary files in
+     * compact binary form, and are read from there to be written to DB, so the source file is parsed
+     * only once (see {@link RowSpill}). Needs free disk space comparable to the size of unpacked data.
+     * Has no effect, when column types are detected from samples.
+     */
+    public boolean spillRows() {
+        return spillRows;
+    }
+
+    public ImportOptions setSpillRows(final boolean spillRows) {
+        this.spillRows = spillRows;
+        return this;
+    }
+
+    /**
+     * If set, definitions of the tables (column names, types and lengths) are stored in DB after import
+     * (see {@link ImportPlans}), and sheets, whose names and header rows did not change, are loaded with
+     * them next time, during the first read of the source, without detection of column types. Lookup
+     * tables are not created in this mode.
+     */
+    public boolean importPlans() {
+        return importPlans;
+    }
+
+    public ImportOptions setImportPlans(final boolean importPlans) {
+        this.importPlans = importPlans;
+        return this;
+    }
+
+    /**
+     * If set, number of committed rows of each table is recorded in DB in the same transaction as the
+     * rows, and the next resumable import after failure skips finished sheets and continues unfinished
+     * tables after their committed rows (see {@link ImportCheckpoints}). File must not change between
+     * the imports. Column types are detected from all rows then, and lookup tables and parallel insert
+     * of one sheet are not supported. Has no effect in incremental import and for data in memory.
+     */
+    public boolean resumable() {
+        return resumable;
+    }
+
+    public ImportOptions setResumable(final boolean resumable) {
+        this.resumable = resumable;
+        return this;
+    }
+
+    /**
+     * If set, each created table gets synthetic identity column {@code id} (primary key), which is filled
+     * by DB. If the sheet has column with the same name, suffix is added to the name of the id column.
+     */
+    public boolean idColumn() {
+        return idColumn;
+    }
+
+    public ImportOptions setIdColumn(final boolean idColumn) {
+        this.idColumn = idColumn;
+        return this;
+    }
+
+    /**
+     * Indexes, which are created after all tables are loaded, each in the form {@code TABLE.COLUMN} or
+     * {@code TABLE.COLUMN1+COLUMN2} (composite index). Sheet and column names may be given as they are
+     * in the workbook or as they are in DB (names with dots only as in DB, where dots are replaced).
+     * {@code *} as table means all tables, which have the columns.
+     * Loaded tables are analyzed after indexes are created, so that DB has statistics for the queries
+     * (see {@link TableIndexes}).
+     */
+    public List<String> indexHints() {
+        return indexHints;
+    }
+
+    public ImportOptions setIndexHints(final List<String> indexHints) {
+        for (final String indexHint : indexHints) {
+            final int separatorIndex = indexHint.indexOf('.');
+            if (separatorIndex <= 0 || separatorIndex == indexHint.length() - 1 || indexHint.contains("++") ||
+                    indexHint.startsWith("+", separatorIndex + 1) || indexHint.endsWith("+")) {
+                throw new IllegalArgumentException("Index hint must have form TABLE.COLUMN or TABLE.COLUMN1+COLUMN2, but it is " + indexHint + ".");
+            }
+        }
+        this.indexHints = List.copyOf(indexHints);
+        return this;
+    }
+
+    /**
+     * Checks options, which depend on each other, so they can not be checked by the setters.
+     * Importer checks them before the import; applications may call it to fail up front,
+     * before any file is read.
+     */
+    public void validate() {
+        if (skipUnchanged && !incremental) {
+            throw new IllegalArgumentException("skipUnchanged requires incremental import, because tables of changed sheets already exist.");
+        }
+    }
+
+    private static void requirePositive(final String name, final int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive, but it is " + value + ".");
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Import plans of the sheets (see {@link ImportOptions#importPlans()}), which are kept in DB table
+ * {@value #IMPORT_PLANS_TABLE}: names of the columns in DB, their types and string lengths, as they
+ * were after the last successful import of the sheet.
+ *
+ * Plan is used only if the sheet still has the same layout: the hash of its name and header row
+ * is stored with the plan. Plan of the sheet is replaced after each successful import (so columns,
+ * which were widened, are created wide next time) and is deleted, if import of the sheet fails.
+ * If values of a column have another type now, the table, which was created with the plan, is
+ * dropped, and the sheet is loaded again with detected types in the same import (see
+ * {@link RowPipeline#runWithPlans}).
+ */
+class ImportPlans {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImportPlans.class);
+
+    static final String IMPORT_PLANS_TABLE = "worksheet_to_db_import_plans";
+
+    private static final String LIST_SEPARATOR = ",";
+
+    private record StoredPlan(
+            String layoutHash,
+            List<String> columnNames,
+            List<ExcelValueWrapper.Type> columnTypes,
+            List<Integer> stringColumnLengths
+    ) {}
+
+    private final ConnectionPool connectionPool;
+    // Key is sheet name.
+    private final Map<String, StoredPlan> storedPlans = new HashMap<>();
+    // Sheets of this import. They are found and finished from several threads.
+    private final Map<String, String> layoutHashes = new HashMap<>();
+    private final Map<String, StoredPlan> finishedPlans = new LinkedHashMap<>();
+    private final Set<String> failedSheets = new HashSet<>();
+    // Sheets, whose planned tables existed before the import (incremental import), so they must not be dropped.
+    private final Set<String> preexistingTableSheets = new HashSet<>();
+
+    ImportPlans(final ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /** Reads stored plans. If it fails, all sheets are imported without plans. */
+    void load() {
+        final Connection connection;
+        try {
+            connection = connectionPool.acquire();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to get connection. Import plans will not be used.", e);
+            return;
+        }
+        try {
+            if (SqlDbTableImporter.findExistingTableName(connection, IMPORT_PLANS_TABLE) == null) {
+                return;
+            }
+            try (
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(
+                            "SELECT sheet_name, layout_hash, column_names, column_types, string_column_lengths FROM " + IMPORT_PLANS_TABLE)
+            ) {
+                while (resultSet.next()) {
+                    storedPlans.put(resultSet.getString(1), parsePlan(
+                            resultSet.getString(2), resultSet.getString(3), resultSet.getString(4), resultSet.getString(5)));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.warn("Failed to load import plans. Column types of all sheets will be detected.", e);
+            storedPlans.clear();
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Table definition from the plan of the sheet or {@code null}, if there is no plan for the
+     * current layout of the sheet. Must be called for each sheet, which is imported, when the sheet starts.
+     */
+    TableDefinition find(final String sheetName, final String tableName, final List<String> columnNames) {
+        final String layoutHash = layoutHash(sheetName, columnNames);
+        synchronized (this) {
+            layoutHashes.put(sheetName, layoutHash);
+        }
+        final StoredPlan plan = storedPlans.get(sheetName);
+        if (plan == null || !plan.layoutHash().equals(layoutHash)) {
+            LOGGER.info("Sheet " + sheetName + ": There is no import plan for the current layout of the sheet. Column types will be detected.");
+            return null;
+        }
+        LOGGER.info("Sheet " + sheetName + ": Table definition is taken from the import plan. Column types are not detected.");
+        if (tableExists(sheetName, tableName)) {
+            synchronized (this) {
+                preexistingTableSheets.add(sheetName);
+            }
+        }
+        return new TableDefinition(sheetName, tableName, plan.columnNames(), plan.columnTypes(), plan.stringColumnLengths());
+    }
+
+    /**
+     * Drops the table, which was created with the plan of the sheet, after values did not fit into it, so
+     * that the sheet can be loaded again with detected types. Sink must have aborted the table already.
+     * Table, which existed before the import, is kept: rows, which were committed into it, are matched again
+     * by incremental import.
+     */
+    void dropPlannedTable(final TableDefinition tableDefinition, final String reason) throws SQLException {
+        final boolean preexisting;
+        synchronized (this) {
+            failedSheets.add(tableDefinition.sheetName());
+            preexisting = preexistingTableSheets.contains(tableDefinition.sheetName());
+        }
+        if (preexisting) {
+            LOGGER.warn("Sheet " + tableDefinition.sheetName() + ": Rows do not fit into the table from the import plan (" +
+                    reason + "). Column types will be detected, and the sheet will be loaded again.");
+            return;
+        }
+        LOGGER.warn("Sheet " + tableDefinition.sheetName() + ": Rows do not fit into the table from the import plan (" +
+                reason + "). Table " + tableDefinition.tableName() + " is dropped, column types will be detected, " +
+                "and the sheet will be loaded again.");
+        final Connection connection = connectionPool.acquire();
+        try (Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+            statement.executeUpdate("DROP TABLE IF EXISTS " + tableDefinition.tableName());
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /** Sinks, which remember the final definitions of the tables, which are loaded, and the sheets, which failed. */
+    RowSink.Factory wrap(final RowSink.Factory sinkFactory) {
+        return () -> new PlanRecordingRowSink(sinkFactory.createSink());
+    }
+
+    /** Stores plans of the sheets, which were loaded, and deletes plans of the sheets, which failed. */
+    void save() {
+        final Map<String, StoredPlan> plans;
+        final Set<String> failed;
+        synchronized (this) {
+            plans = new LinkedHashMap<>(finishedPlans);
+            failed = new HashSet<>(failedSheets);
+        }
+        if (plans.isEmpty() && failed.isEmpty()) {
+            return;
+        }
+        try {
+            store(plans, failed);
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to save import plans. Column types will be detected next time.", e);
+        }
+    }
+
+    private void store(final Map<String, StoredPlan> plans, final Set<String> failed) throws SQLException {
+        final Connection connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(false);
+            if (SqlDbTableImporter.findExistingTableName(connection, IMPORT_PLANS_TABLE) == null) {
+                if (plans.isEmpty()) {
+                    return;
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE " + IMPORT_PLANS_TABLE + " (" +
+                            "sheet_name VARCHAR(255) NOT NULL PRIMARY KEY, " +
+                            "layout_hash VARCHAR(64) NOT NULL, " +
+                            "column_names TEXT NOT NULL, " +
+                            "column_types TEXT NOT NULL, " +
+                            "string_column_lengths TEXT NOT NULL)");
+                }
+            }
+            try (
+                    PreparedStatement deleteStatement = connection.prepareStatement(
+                            "DELETE FROM " + IMPORT_PLANS_TABLE + " WHERE sheet_name = ?");
+                    PreparedStatement insertStatement = connection.prepareStatement(
+                            "INSERT INTO " + IMPORT_PLANS_TABLE +
+                            " (sheet_name, layout_hash, column_names, column_types, string_column_lengths) VALUES (?, ?, ?, ?, ?)")
+            ) {
+                for (final String sheetName : failed) {
+                    deleteStatement.setString(1, sheetName);
+                    deleteStatement.addBatch();
+                }
+                for (final Map.Entry<String, StoredPlan> entry : plans.entrySet()) {
+                    final StoredPlan plan = entry.getValue();
+                    deleteStatement.setString(1, entry.getKey());
+                    deleteStatement.addBatch();
+                    insertStatement.setString(1, entry.getKey());
+                    insertStatement.setString(2, plan.layoutHash());
+                    insertStatement.setString(3, String.join(LIST_SEPARATOR, plan.columnNames()));
+                    insertStatement.setString(4, joinValues(plan.columnTypes()));
+                    insertStatement.setString(5, joinValues(plan.stringColumnLengths()));
+                    insertStatement.addBatch();
+                }
+                deleteStatement.executeBatch();
+                if (!plans.isEmpty()) {
+                    insertStatement.executeBatch();
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /** If it can not be checked, table is considered to exist, so that it is never dropped by mistake. */
+    private boolean tableExists(final String sheetName, final String tableName) {
+        try {
+            final Connection connection = connectionPool.acquire();
+            try {
+                return SqlDbTableImporter.findExistingTableName(connection, tableName) != null;
+            } finally {
+                connectionPool.release(connection);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Sheet " + sheetName + ": Failed to check, whether table " + tableName + " exists.", e);
+            return true;
+        }
+    }
+
+    /** Hash of the sheet name and the header row. Names are prefixed with their lengths, so that they can not be mixed up. */
+    static String layoutHash(final String sheetName, final List<String> columnNames) {
+        final StringBuilder layout = new StringBuilder();
+        layout.append(sheetName.length()).append(':').append(sheetName);
+        for (final String columnName : columnNames) {
+            layout.append(columnName.length()).append(':').append(columnName);
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(layout.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM.", e);
+        }
+    }
+
+    private static StoredPlan parsePlan(
+            final String layoutHash,
+            final String columnNames,
+            final String columnTypes,
+            final String stringColumnLengths
+    ) {
+        final List<ExcelValueWrapper.Type> types = new ArrayList<>();
+        for (final String columnType : columnTypes.split(LIST_SEPARATOR)) {
+            types.add(ExcelValueWrapper.Type.valueOf(columnType));
+        }
+        final List<Integer> lengths = new ArrayList<>();
+        for (final String length : stringColumnLengths.split(LIST_SEPARATOR)) {
+            lengths.add(Integer.parseInt(length));
+        }
+        final List<String> names = List.of(columnNames.split(LIST_SEPARATOR));
+        if (names.size() != types.size() || names.size() != lengths.size()) {
+            throw new IllegalStateException("Import plan with layout hash " + layoutHash + " is corrupted.");
+        }
+        return new StoredPlan(layoutHash, names, types, lengths);
+    }
+
+    private static String joinValues(final List<?> values) {
+        final List<String> strings = new ArrayList<>(values.size());
+        for (final Object value : values) {
+            strings.add(value.toString());
+        }
+        return String.join(LIST_SEPARATOR, strings);
+    }
+
+    private class PlanRecordingRowSink implements RowSink {
+
+        private final RowSink sink;
+        private TableDefinition tableDefinition;
+
+        PlanRecordingRowSink(final RowSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startTable(final TableDefinition tableDefinition) throws SQLException {
+            this.tableDefinition = tableDefinition;
+            sink.startTable(tableDefinition);
+        }
+
+        @Override
+        public void row(final List<ExcelValueWrapper> values) throws SQLException {
+            sink.row(values);
+        }
+
+        @Override
+        public void row(final SheetData sheetData, final int rowNum) throws SQLException {
+            sink.row(sheetData, rowNum);
+        }
+
+        @Override
+        public void endTable() throws SQLException {
+            sink.endTable();
+            synchronized (ImportPlans.this) {
+                final String layoutHash = layoutHashes.get(tableDefinition.sheetName());
+                if (layoutHash != null) {
+                    finishedPlans.put(tableDefinition.sheetName(), new StoredPlan(layoutHash,
+                            tableDefinition.columnNames(), tableDefinition.columnTypes(), tableDefinition.stringColumnLengths()));
+                }
+            }
+            tableDefinition = null;
+        }
+
+        @Override
+        public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+            tableDefinition = widenedDefinition;
+            sink.widenTable(widenedDefinition);
+        }
+
+        @Override
+        public void abortTable() {
+            sink.abortTable();
+            if (tableDefinition != null) {
+                synchronized (ImportPlans.this) {
+                    failedSheets.add(tableDefinition.sheetName());
+                }
+            }
+            tableDefinition = null;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            sink.close();
+        }
+    }
+}
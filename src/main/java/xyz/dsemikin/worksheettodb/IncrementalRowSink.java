@@ -0,0 +1,633 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Updates existing tables instead of creating them, so that re-import of the same (growing)
+ * workbook writes only the difference to DB.
+ *
+ * Content hash of each imported row is stored in sidecar table {@value #ROW_HASHES_TABLE} together
+ * with the key of the row. On re-import rows with new keys are inserted, rows with changed hashes
+ * are updated and (if {@link ImportOptions#deleteMissing()} is set) rows, which are not in the
+ * sheet anymore, are deleted. Unchanged rows are not touched.
+ *
+ * Key of the row is the value of the key column (see {@link ImportOptions#keyColumn()}). If the
+ * sheet does not have it, the key is the content hash itself (plus occurrence number for duplicate
+ * rows), i.e. changed row is inserted as new one, and old one can not be deleted.
+ *
+ * Plain INSERT/UPDATE/DELETE statements are used instead of MERGE: which rows exist is known from
+ * the sidecar table, and these statements work the same way on all databases.
+ *
+ * If the table already exists, its columns must match columns of the sheet. String columns are
+ * made longer, if needed. Columns, which were empty in previous imports, may get other types.
+ * If the table has rows, but there are no stored hashes for it (e.g. it was created by normal
+ * import), hashes and keys are calculated from the rows of the table first, so that the rows,
+ * which are already there, are not inserted again.
+ */
+class IncrementalRowSink implements RowSink {
+
+    static final String ROW_HASHES_TABLE = "worksheet_to_db_row_hashes";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalRowSink.class);
+
+    private static final int MAX_KEY_LENGTH = 1000;
+    // Sinks of different sheets may try to create the sidecar table at the same time.
+    private static final Object ROW_HASHES_TABLE_CREATION_LOCK = new Object();
+
+    private final ConnectionPool connectionPool;
+    private final Connection connection;
+    private final int batchSize;
+    private final int commitInterval;
+    private final String keyColumn;
+    private final boolean deleteMissing;
+    private final MessageDigest digest;
+    private final ImportMetrics metrics;
+
+    private TableDefinition tableDefinition;
+    private int keyColumnNum;
+    private Map<String, String> storedHashes;
+    private Set<String> seenKeys;
+    private Map<String, Integer> hashOccurrences;
+
+    private PreparedStatement insertStatement;
+    private PreparedStatement updateStatement;
+    private PreparedStatement insertHashStatement;
+    private PreparedStatement updateHashStatement;
+    private int rowsInBatch;
+    private int uncommittedBatches;
+
+    private int insertedCount;
+    private int updatedCount;
+    private int unchangedCount;
+
+    /** Connection is taken from the pool and returned to it, when the sink is closed. */
+    IncrementalRowSink(
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws SQLException {
+        this.connectionPool = connectionPool;
+        this.metrics = metrics;
+        this.batchSize = options.batchSize();
+        this.commitInterval = options.commitInterval();
+        this.keyColumn = options.keyColumn();
+        this.deleteMissing = options.deleteMissing();
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM.", e);
+        }
+        this.connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connectionPool.release(connection);
+            throw e;
+        }
+    }
+
+    @Override
+    public void startTable(final TableDefinition sheetDefinition) throws SQLException {
+        metrics.sheetWriteStarted(sheetDefinition.sheetName());
+        ensureRowHashesTableExists();
+
+        final String tableName = sheetDefinition.tableName();
+        final String existingTableName = SqlDbTableImporter.findExistingTableName(connection, tableName);
+        if (existingTableName == null) {
+            final String createTableStatement = SqlDbTableImporter.generateCreateTableStatement(sheetDefinition);
+            LOGGER.info("Create table statement: ");
+            LOGGER.info(createTableStatement);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(createTableStatement);
+            }
+            // Hashes of the table, which was dropped since previous import
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + ROW_HASHES_TABLE + " WHERE table_name = ?")) {
+                statement.setString(1, tableName);
+                statement.executeUpdate();
+            }
+            tableDefinition = sheetDefinition;
+            keyColumnNum = findKeyColumn(sheetDefinition);
+            storedHashes = new HashMap<>();
+        } else {
+            LOGGER.info("Table " + tableName + " already exists. Only changed rows will be written.");
+            final TableDefinition existingDefinition = readExistingDefinition(existingTableName, sheetDefinition);
+            tableDefinition = adjustTable(existingDefinition, sheetDefinition);
+            keyColumnNum = findKeyColumn(sheetDefinition);
+            storedHashes = loadStoredHashes(tableName);
+            if (storedHashes.isEmpty()) {
+                storedHashes = seedStoredHashes();
+            }
+        }
+        connection.commit();
+
+        seenKeys = new HashSet<>();
+        hashOccurrences = new HashMap<>();
+        rowsInBatch = 0;
+        uncommittedBatches = 0;
+        insertedCount = 0;
+        updatedCount = 0;
+        unchangedCount = 0;
+        prepareStatements();
+    }
+
+    @Override
+    public void row(final List<ExcelValueWrapper> values) throws SQLException {
+        final String hash = rowHash(values);
+        final String key;
+        if (keyColumnNum >= 0) {
+            key = keyText(values.get(keyColumnNum));
+            if (!seenKeys.add(key)) {
+                throw new IllegalStateException("Sheet " + tableDefinition.sheetName() + ": Key column " +
+                        tableDefinition.columnNames().get(keyColumnNum) + " has duplicate value " + key + ".");
+            }
+        } else {
+            key = hash + "#" + hashOccurrences.merge(hash, 1, Integer::sum);
+        }
+
+        final String storedHash = storedHashes.remove(key);
+        if (storedHash == null) {
+            setRowParameters(insertStatement, values);
+            insertStatement.addBatch();
+            insertHashStatement.setString(1, tableDefinition.tableName());
+            insertHashStatement.setString(2, key);
+            insertHashStatement.setString(3, hash);
+            insertHashStatement.addBatch();
+            ++insertedCount;
+        } else if (!storedHash.equals(hash)) {
+            setRowParameters(updateStatement, values);
+            JdbcRowSink.setParameter(updateStatement, tableDefinition.columnsCount() + 1,
+                    tableDefinition.columnTypes().get(keyColumnNum), values.get(keyColumnNum));
+            updateStatement.addBatch();
+            updateHashStatement.setString(1, hash);
+            updateHashStatement.setString(2, tableDefinition.tableName());
+            updateHashStatement.setString(3, key);
+            updateHashStatement.addBatch();
+            ++updatedCount;
+        } else {
+            ++unchangedCount;
+            return;
+        }
+
+        ++rowsInBatch;
+        if (rowsInBatch == batchSize) {
+            executeBatches();
+        }
+    }
+
+    @Override
+    public void endTable() throws SQLException {
+        if (rowsInBatch > 0) {
+            executeBatches();
+        }
+        final int deletedCount = deleteMissingRows();
+        connection.commit();
+        LOGGER.info("Table " + tableDefinition.tableName() + ": " + insertedCount + " rows inserted, " +
+                updatedCount + " rows updated, " + deletedCount + " rows deleted, " + unchangedCount + " rows unchanged.");
+        metrics.sheetWriteFinished(tableDefinition.sheetName());
+        closeStatements();
+        tableDefinition = null;
+        storedHashes = null;
+        seenKeys = null;
+        hashOccurrences = null;
+    }
+
+    @Override
+    public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+        if (rowsInBatch > 0) {
+            executeBatches();
+        }
+        closeStatements();
+        tableDefinition = adjustTable(tableDefinition, widenedDefinition);
+        connection.commit();
+        uncommittedBatches = 0;
+        prepareStatements();
+    }
+
+    @Override
+    public void abortTable() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to rollback transaction after import failure.", e);
+        }
+        closeStatements();
+        tableDefinition = null;
+        storedHashes = null;
+        seenKeys = null;
+        hashOccurrences = null;
+    }
+
+    @Override
+    public void close() {
+        connectionPool.release(connection);
+    }
+
+    private void ensureRowHashesTableExists() throws SQLException {
+        synchronized (ROW_HASHES_TABLE_CREATION_LOCK) {
+            if (SqlDbTableImporter.findExistingTableName(connection, ROW_HASHES_TABLE) != null) {
+                return;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE " + ROW_HASHES_TABLE + " (" +
+                        "table_name VARCHAR(255) NOT NULL, " +
+                        "row_key VARCHAR(" + MAX_KEY_LENGTH + ") NOT NULL, " +
+                        "row_hash VARCHAR(64) NOT NULL, " +
+                        "PRIMARY KEY (table_name, row_key))");
+            }
+            connection.commit();
+        }
+    }
+
+    /**
+     * Definition of the existing table according to DB metadata. Since EMPTY columns are stored as
+     * strings, they are reported as STRING columns. Identity columns are not included.
+     */
+    private TableDefinition readExistingDefinition(
+            final String existingTableName,
+            final TableDefinition sheetDefinition
+    ) throws SQLException {
+        final Map<String, ExcelValueWrapper.Type> existingTypes = new HashMap<>();
+        final Map<String, Integer> existingLengths = new HashMap<>();
+        try (ResultSet columns = connection.getMetaData().getColumns(null, connection.getSchema(), existingTableName, null)) {
+            while (columns.next()) {
+                final String columnName = columns.getString("COLUMN_NAME").toLowerCase(Locale.ROOT);
+                if ("YES".equals(columns.getString("IS_AUTOINCREMENT"))) {
+                    // Id column (see ImportOptions.idColumn()) is filled by DB and is not compared with the sheet.
+                    continue;
+                }
+                final int dataType = columns.getInt("DATA_TYPE");
+                final ExcelValueWrapper.Type type = switch (dataType) {
+                    case Types.DOUBLE, Types.FLOAT, Types.REAL -> ExcelValueWrapper.Type.DOUBLE;
+                    case Types.BOOLEAN, Types.BIT -> ExcelValueWrapper.Type.BOOLEAN;
+                    case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> ExcelValueWrapper.Type.DATE;
+                    case Types.VARCHAR, Types.CHAR, Types.LONGVARCHAR, Types.NVARCHAR -> ExcelValueWrapper.Type.STRING;
+                    default -> throw new IllegalStateException("Table " + sheetDefinition.tableName() + ", column " +
+                            columnName + ": Column has type " + columns.getString("TYPE_NAME") +
+                            ", which is not created by this program.");
+                };
+                existingTypes.put(columnName, type);
+                // Columns are created 3 characters longer, than needed (see SqlDbTableImporter.columnSqlType()).
+                existingLengths.put(columnName, columns.getInt("COLUMN_SIZE") - 3);
+            }
+        }
+
+        final List<ExcelValueWrapper.Type> columnTypes = new ArrayList<>();
+        final List<Integer> stringColumnLengths = new ArrayList<>();
+        for (final String columnName : sheetDefinition.columnNames()) {
+            final ExcelValueWrapper.Type type = existingTypes.get(columnName.toLowerCase(Locale.ROOT));
+            if (type == null) {
+                throw new IllegalStateException("Table " + sheetDefinition.tableName() + ": Column " + columnName +
+                        " of the sheet does not exist in the table. Incremental import is not possible, " +
+                        "when columns of the sheet change.");
+            }
+            columnTypes.add(type);
+            stringColumnLengths.add(existingLengths.get(columnName.toLowerCase(Locale.ROOT)));
+        }
+        return new TableDefinition(
+                sheetDefinition.sheetName(),
+                sheetDefinition.tableName(),
+                sheetDefinition.columnNames(),
+                columnTypes,
+                stringColumnLengths
+        );
+    }
+
+    /**
+     * Changes columns of the table, so that values of {@code sheetDefinition} fit into it, and
+     * returns resulting definition. Columns, which are EMPTY in the sheet, keep their types.
+     */
+    private TableDefinition adjustTable(
+            final TableDefinition currentDefinition,
+            final TableDefinition sheetDefinition
+    ) throws SQLException {
+        TableDefinition oldDefinition = currentDefinition;
+        TableDefinition newDefinition = currentDefinition;
+        for (int columnNum = 0; columnNum < sheetDefinition.columnsCount(); ++columnNum) {
+            final ExcelValueWrapper.Type currentType = currentDefinition.columnTypes().get(columnNum);
+            final int currentLength = currentDefinition.stringColumnLengths().get(columnNum);
+            final ExcelValueWrapper.Type sheetType = sheetDefinition.columnTypes().get(columnNum);
+            final int sheetLength = sheetDefinition.stringColumnLengths().get(columnNum);
+            if (sheetType == ExcelValueWrapper.Type.EMPTY) {
+                continue;
+            }
+            if (currentType == sheetType) {
+                if (sheetType == ExcelValueWrapper.Type.STRING && sheetLength > currentLength) {
+                    newDefinition = newDefinition.withColumnType(columnNum, sheetType, sheetLength);
+                }
+            } else if (currentType == ExcelValueWrapper.Type.EMPTY) {
+                newDefinition = newDefinition.withColumnType(columnNum, sheetType, sheetLength);
+            } else if (currentType == ExcelValueWrapper.Type.STRING && !columnHasValues(currentDefinition, columnNum)) {
+                // Column was EMPTY in previous imports.
+                oldDefinition = oldDefinition.withColumnType(columnNum, ExcelValueWrapper.Type.EMPTY, currentLength);
+                newDefinition = newDefinition.withColumnType(columnNum, sheetType, sheetLength);
+            } else {
+                throw new IllegalStateException("Table " + currentDefinition.tableName() + ", column " +
+                        currentDefinition.columnNames().get(columnNum) + ": Column in DB has type " + currentType +
+                        ", but sheet has values of type " + sheetType + ".");
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            for (final String widenStatement : SqlDbTableImporter.generateWidenColumnStatements(oldDefinition, newDefinition)) {
+                LOGGER.info("Widen column statement: " + widenStatement);
+                statement.executeUpdate(widenStatement);
+            }
+        }
+        return newDefinition;
+    }
+
+    private boolean columnHasValues(final TableDefinition definition, final int columnNum) throws SQLException {
+        final String columnName = definition.columnNames().get(columnNum);
+        try (
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + definition.tableName() +
+                        " WHERE " + columnName + " IS NOT NULL AND " + columnName + " <> ''")
+        ) {
+            resultSet.next();
+            return resultSet.getLong(1) > 0;
+        }
+    }
+
+    private Map<String, String> loadStoredHashes(final String tableName) throws SQLException {
+        final Map<String, String> hashes = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT row_key, row_hash FROM " + ROW_HASHES_TABLE + " WHERE table_name = ?")) {
+            statement.setString(1, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    hashes.put(resultSet.getString(1), resultSet.getString(2));
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Calculates keys and hashes of the rows, which are already in the table, in the same way, as for
+     * rows of the sheet, and stores them (without commit). Empty strings are read as empty cells,
+     * since EMPTY columns are filled with them.
+     */
+    private Map<String, String> seedStoredHashes() throws SQLException {
+        final Map<String, String> hashes = new HashMap<>();
+        final Set<String> seededKeys = new HashSet<>();
+        final Map<String, Integer> seededOccurrences = new HashMap<>();
+        final int columnsCount = tableDefinition.columnsCount();
+        try (
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(
+                        "SELECT " + String.join(", ", tableDefinition.columnNames()) + " FROM " + tableDefinition.tableName());
+                PreparedStatement insertHashStatement = connection.prepareStatement(
+                        "INSERT INTO " + ROW_HASHES_TABLE + " (table_name, row_key, row_hash) VALUES (?, ?, ?)")
+        ) {
+            final List<ExcelValueWrapper> values = new ArrayList<>(columnsCount);
+            int rowsInHashBatch = 0;
+            while (resultSet.next()) {
+                values.clear();
+                for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+                    values.add(readValue(resultSet, columnNum + 1, tableDefinition.columnTypes().get(columnNum)));
+                }
+                final String hash = rowHash(values);
+                final String key;
+                if (keyColumnNum >= 0) {
+                    key = keyText(values.get(keyColumnNum));
+                    if (!seededKeys.add(key)) {
+                        throw new IllegalStateException("Table " + tableDefinition.tableName() + ": Key column " +
+                                tableDefinition.columnNames().get(keyColumnNum) + " has duplicate value " + key +
+                                " in DB. Rows of the table can not be matched with rows of the sheet.");
+                    }
+                } else {
+                    key = hash + "#" + seededOccurrences.merge(hash, 1, Integer::sum);
+                }
+                hashes.put(key, hash);
+                insertHashStatement.setString(1, tableDefinition.tableName());
+                insertHashStatement.setString(2, key);
+                insertHashStatement.setString(3, hash);
+                insertHashStatement.addBatch();
+                ++rowsInHashBatch;
+                if (rowsInHashBatch == batchSize) {
+                    insertHashStatement.executeBatch();
+                    rowsInHashBatch = 0;
+                }
+            }
+            if (rowsInHashBatch > 0) {
+                insertHashStatement.executeBatch();
+            }
+        }
+        if (!hashes.isEmpty()) {
+            LOGGER.info("Table " + tableDefinition.tableName() + ": There are no stored row hashes for the table. They are " +
+                    "calculated from " + hashes.size() + " existing rows, which are matched with rows of the sheet.");
+        }
+        return hashes;
+    }
+
+    /** Value of the column as it would be read from the sheet. */
+    private static ExcelValueWrapper readValue(
+            final ResultSet resultSet,
+            final int columnIndex,
+            final ExcelValueWrapper.Type columnType
+    ) throws SQLException {
+        switch (columnType) {
+            case DOUBLE -> {
+                final double value = resultSet.getDouble(columnIndex);
+                return resultSet.wasNull() ? ExcelValueWrapper.EMPTY : ExcelValueWrapper.of(value);
+            }
+            case BOOLEAN -> {
+                final boolean value = resultSet.getBoolean(columnIndex);
+                return resultSet.wasNull() ? ExcelValueWrapper.EMPTY : ExcelValueWrapper.of(value);
+            }
+            case DATE -> {
+                final Timestamp value = resultSet.getTimestamp(columnIndex);
+                return value == null ? ExcelValueWrapper.EMPTY : ExcelValueWrapper.of(value.toLocalDateTime());
+            }
+            default -> {
+                final String value = resultSet.getString(columnIndex);
+                return value == null || value.isEmpty() ? ExcelValueWrapper.EMPTY : ExcelValueWrapper.of(value);
+            }
+        }
+    }
+
+    /** -1, if there is no key column in the sheet. */
+    private int findKeyColumn(final TableDefinition sheetDefinition) {
+        if (keyColumn == null) {
+            return -1;
+        }
+        final int columnNum = sheetDefinition.columnNames().indexOf(SqlDbTableImporter.simplifyStringForDbName(keyColumn));
+        if (columnNum == -1) {
+            LOGGER.info("Sheet " + sheetDefinition.sheetName() + ": There is no key column " + keyColumn +
+                    ". Rows are matched by content.");
+        }
+        return columnNum;
+    }
+
+    private void prepareStatements() throws SQLException {
+        final String tableName = tableDefinition.tableName();
+        insertStatement = connection.prepareStatement(SqlDbTableImporter.generateInsertStatement(tableDefinition));
+        insertHashStatement = connection.prepareStatement(
+                "INSERT INTO " + ROW_HASHES_TABLE + " (table_name, row_key, row_hash) VALUES (?, ?, ?)");
+        if (keyColumnNum >= 0) {
+            final StringBuilder updateSql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+            for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+                if (columnNum != 0) {
+                    updateSql.append(", ");
+                }
+                updateSql.append(tableDefinition.columnNames().get(columnNum)).append(" = ?");
+            }
+            updateSql.append(" WHERE ").append(tableDefinition.columnNames().get(keyColumnNum)).append(" = ?");
+            updateStatement = connection.prepareStatement(updateSql.toString());
+            updateHashStatement = connection.prepareStatement(
+                    "UPDATE " + ROW_HASHES_TABLE + " SET row_hash = ? WHERE table_name = ? AND row_key = ?");
+        }
+    }
+
+    private void setRowParameters(final PreparedStatement statement, final List<ExcelValueWrapper> values) throws SQLException {
+        for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+            final int parameterIndex = columnNum + 1; // parameterIndex is 1-based
+            JdbcRowSink.setParameter(statement, parameterIndex, tableDefinition.columnTypes().get(columnNum), values.get(columnNum));
+        }
+    }
+
+    /** Only inserted and updated rows are counted as written (unchanged rows are not sent to DB). */
+    private void executeBatches() throws SQLException {
+        final long startNanos = System.nanoTime();
+        insertStatement.executeBatch();
+        insertHashStatement.executeBatch();
+        if (updateStatement != null) {
+            updateStatement.executeBatch();
+            updateHashStatement.executeBatch();
+        }
+        metrics.batchExecuted(tableDefinition.sheetName(), rowsInBatch, System.nanoTime() - startNanos);
+        rowsInBatch = 0;
+        ++uncommittedBatches;
+        if (uncommittedBatches == commitInterval) {
+            connection.commit();
+            uncommittedBatches = 0;
+        }
+    }
+
+    /** Rows, which are left in {@code storedHashes}, were not found in the sheet. */
+    private int deleteMissingRows() throws SQLException {
+        if (!deleteMissing || storedHashes.isEmpty()) {
+            return 0;
+        }
+        if (keyColumnNum < 0) {
+            LOGGER.warn("Table " + tableDefinition.tableName() + ": " + storedHashes.size() + " rows are not in the sheet " +
+                    "anymore, but they can not be deleted without key column.");
+            return 0;
+        }
+        final String tableName = tableDefinition.tableName();
+        final ExcelValueWrapper.Type keyType = tableDefinition.columnTypes().get(keyColumnNum);
+        try (
+                PreparedStatement deleteStatement = connection.prepareStatement("DELETE FROM " + tableName +
+                        " WHERE " + tableDefinition.columnNames().get(keyColumnNum) + " = ?");
+                PreparedStatement deleteHashStatement = connection.prepareStatement(
+                        "DELETE FROM " + ROW_HASHES_TABLE + " WHERE table_name = ? AND row_key = ?")
+        ) {
+            int rowsInDeleteBatch = 0;
+            for (final String key : storedHashes.keySet()) {
+                JdbcRowSink.setParameter(deleteStatement, 1, keyType, keyValue(key, keyType));
+                deleteStatement.addBatch();
+                deleteHashStatement.setString(1, tableName);
+                deleteHashStatement.setString(2, key);
+                deleteHashStatement.addBatch();
+                ++rowsInDeleteBatch;
+                if (rowsInDeleteBatch == batchSize) {
+                    deleteStatement.executeBatch();
+                    deleteHashStatement.executeBatch();
+                    rowsInDeleteBatch = 0;
+                }
+            }
+            if (rowsInDeleteBatch > 0) {
+                deleteStatement.executeBatch();
+                deleteHashStatement.executeBatch();
+            }
+        }
+        return storedHashes.size();
+    }
+
+    private String rowHash(final List<ExcelValueWrapper> values) {
+        final StringBuilder content = new StringBuilder();
+        for (final ExcelValueWrapper value : values) {
+            final String text = valueText(value);
+            if (text == null) {
+                content.append("-;");
+            } else {
+                // Length prefix makes the representation unambiguous for any string content.
+                content.append(value.type().name().charAt(0)).append(text.length()).append(':').append(text).append(';');
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String keyText(final ExcelValueWrapper value) {
+        final String text = valueText(value);
+        if (text == null || text.isEmpty()) {
+            throw new IllegalStateException("Sheet " + tableDefinition.sheetName() + ": Key column " +
+                    tableDefinition.columnNames().get(keyColumnNum) + " must not have empty cells.");
+        }
+        if (text.length() > MAX_KEY_LENGTH) {
+            throw new IllegalStateException("Sheet " + tableDefinition.sheetName() + ": Values of key column " +
+                    tableDefinition.columnNames().get(keyColumnNum) + " must not be longer, than " + MAX_KEY_LENGTH + " characters.");
+        }
+        return text;
+    }
+
+    /** Reverse of {@code valueText}. */
+    private static ExcelValueWrapper keyValue(final String text, final ExcelValueWrapper.Type type) {
+        return switch (type) {
+            case DOUBLE -> ExcelValueWrapper.of(Double.parseDouble(text));
+            case BOOLEAN -> ExcelValueWrapper.of(Boolean.parseBoolean(text));
+            case DATE -> ExcelValueWrapper.of(LocalDateTime.parse(text));
+            case STRING -> ExcelValueWrapper.of(text);
+            case EMPTY -> ExcelValueWrapper.EMPTY;
+        };
+    }
+
+    /** {@code null} for empty cells. */
+    private static String valueText(final ExcelValueWrapper value) {
+        return switch (value.type()) {
+            case DOUBLE -> Double.toString(value.doubleValue());
+            case BOOLEAN -> Boolean.toString(value.booleanValue());
+            case DATE -> value.maybeDateValue().toString();
+            case STRING -> value.maybeStringValue();
+            case EMPTY -> null;
+        };
+    }
+
+    private void closeStatements() {
+        for (final PreparedStatement statement : new PreparedStatement[] {
+                insertStatement, insertHashStatement, updateStatement, updateHashStatement}) {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    LOGGER.warn("Failed to close statement.", e);
+                }
+            }
+        }
+        insertStatement = null;
+        insertHashStatement = null;
+        updateStatement = null;
+        updateHashStatement = null;
+    }
+}
@@ -0,0 +1,261 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Creates DB table for each worksheet and inserts rows into it.
+ *
+ * Rows are sent to DB in JDBC batches of {@link ImportOptions#batchSize()} rows. Autocommit
+ * is switched off, and transaction is committed after each {@link ImportOptions#commitInterval()}
+ * batches and at the end of each table. If {@code checkpoints} are given, number of committed rows
+ * is recorded in the same transaction (see {@link ImportCheckpoints}).
+ */
+class JdbcRowSink implements RowSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcRowSink.class);
+
+    private final ConnectionPool connectionPool;
+    private final Connection connection;
+    private final int batchSize;
+    private final int commitInterval;
+    private final ImportMetrics metrics;
+    private final ImportCheckpoints checkpoints;
+
+    private TableDefinition tableDefinition;
+    // Write time of the sheet is recorded by the sink, which created the table, not by sinks of its chunks.
+    private boolean tableCreated;
+    private PreparedStatement insertStatement;
+    private int rowsInBatch;
+    private int uncommittedBatches;
+    private int uncommittedRows;
+
+    /**
+     * Connection is taken from the pool and returned to it, when the sink is closed.
+     * {@code checkpoints} may be {@code null}, if progress is not recorded.
+     */
+    JdbcRowSink(
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics,
+            final ImportCheckpoints checkpoints
+    ) throws SQLException {
+        this.connectionPool = connectionPool;
+        this.connection = connectionPool.acquire();
+        this.batchSize = options.batchSize();
+        this.commitInterval = options.commitInterval();
+        this.metrics = metrics;
+        this.checkpoints = checkpoints;
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connectionPool.release(connection);
+            throw e;
+        }
+    }
+
+    @Override
+    public void startTable(final TableDefinition tableDefinition) throws SQLException {
+        metrics.sheetWriteStarted(tableDefinition.sheetName());
+
+        final String createTableStatement = SqlDbTableImporter.generateCreateTableStatement(tableDefinition);
+        LOGGER.info("Create table statement: ");
+        LOGGER.info(createTableStatement);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(createTableStatement);
+        }
+        if (checkpoints != null) {
+            checkpoints.tableStarted(connection, tableDefinition);
+        }
+        connection.commit();
+
+        LOGGER.info("Inset data statement: ");
+        LOGGER.info(SqlDbTableImporter.generateInsertStatement(tableDefinition));
+        continueTable(tableDefinition);
+        tableCreated = true;
+    }
+
+    @Override
+    public void continueTable(final TableDefinition tableDefinition) throws SQLException {
+        this.tableDefinition = tableDefinition;
+        tableCreated = false;
+        rowsInBatch = 0;
+        uncommittedBatches = 0;
+        uncommittedRows = 0;
+        insertStatement = connection.prepareStatement(SqlDbTableImporter.generateInsertStatement(tableDefinition));
+    }
+
+    @Override
+    public void row(final List<ExcelValueWrapper> values) throws SQLException {
+        final int columnsCount = tableDefinition.columnsCount();
+        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+            final int parameterIndex = columnNum + 1; // parameterIndex is 1-based
+            setParameter(insertStatement, parameterIndex, tableDefinition.columnTypes().get(columnNum), values.get(columnNum));
+        }
+        addRowToBatch();
+    }
+
+    @Override
+    public void row(final SheetData sheetData, final int rowNum) throws SQLException {
+        final int columnsCount = tableDefinition.columnsCount();
+        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+            final ExcelValueWrapper.Type columnType = tableDefinition.columnTypes().get(columnNum);
+            final boolean isEmpty = sheetData.isEmpty(columnNum, rowNum);
+            final int parameterIndex = columnNum + 1; // parameterIndex is 1-based
+            switch (columnType) {
+                case DOUBLE  -> {
+                    if (isEmpty) {
+                        insertStatement.setNull(parameterIndex, Types.DOUBLE);
+                    } else {
+                        insertStatement.setDouble(parameterIndex, sheetData.doubleValue(columnNum, rowNum));
+                    }
+                }
+                case DATE    -> insertStatement.setTimestamp(parameterIndex, isEmpty ? null : Timestamp.valueOf(sheetData.dateValue(columnNum, rowNum)));
+                case BOOLEAN -> {
+                    if (isEmpty) {
+                        insertStatement.setNull(parameterIndex, Types.BOOLEAN);
+                    } else {
+                        insertStatement.setBoolean(parameterIndex, sheetData.booleanValue(columnNum, rowNum));
+                    }
+                }
+                case STRING  -> insertStatement.setString(parameterIndex, sheetData.stringValue(columnNum, rowNum));
+                case EMPTY   -> insertStatement.setString(parameterIndex, ""); // by convention we use empty string
+                default -> throw unknownColumnType(columnNum, columnType);
+            }
+        }
+        addRowToBatch();
+    }
+
+    @Override
+    public void endTable() throws SQLException {
+        if (rowsInBatch > 0) {
+            executeBatch();
+        }
+        if (checkpoints != null) {
+            checkpoints.tableFinished(connection, tableDefinition);
+        }
+        commit();
+        if (tableCreated) {
+            metrics.sheetWriteFinished(tableDefinition.sheetName());
+        }
+        insertStatement.close();
+        insertStatement = null;
+        tableDefinition = null;
+    }
+
+    @Override
+    public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+        if (rowsInBatch > 0) {
+            executeBatch();
+        }
+        insertStatement.close();
+        try (Statement statement = connection.createStatement()) {
+            for (final String widenStatement : SqlDbTableImporter.generateWidenColumnStatements(tableDefinition, widenedDefinition)) {
+                LOGGER.info("Widen column statement: " + widenStatement);
+                statement.executeUpdate(widenStatement);
+            }
+        }
+        commit();
+        uncommittedBatches = 0;
+        tableDefinition = widenedDefinition;
+        insertStatement = connection.prepareStatement(SqlDbTableImporter.generateInsertStatement(tableDefinition));
+    }
+
+    @Override
+    public void abortTable() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to rollback transaction after import failure.", e);
+        }
+        if (insertStatement != null) {
+            try {
+                insertStatement.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Failed to close insert statement.", e);
+            }
+        }
+        insertStatement = null;
+        tableDefinition = null;
+    }
+
+    @Override
+    public void close() {
+        connectionPool.release(connection);
+    }
+
+    /** Sets value of the cell as statement parameter according to the type of the column. */
+    static void setParameter(
+            final PreparedStatement statement,
+            final int parameterIndex,
+            final ExcelValueWrapper.Type columnType,
+            final ExcelValueWrapper value
+    ) throws SQLException {
+        switch (columnType) {
+            case DOUBLE  -> {
+                if (value.type() == ExcelValueWrapper.Type.EMPTY) {
+                    statement.setNull(parameterIndex, Types.DOUBLE);
+                } else {
+                    statement.setDouble(parameterIndex, value.doubleValue());
+                }
+            }
+            case DATE    -> statement.setTimestamp(parameterIndex, value.maybeDateValue() == null ? null : Timestamp.valueOf(value.maybeDateValue()));
+            case BOOLEAN -> {
+                if (value.type() == ExcelValueWrapper.Type.EMPTY) {
+                    statement.setNull(parameterIndex, Types.BOOLEAN);
+                } else {
+                    statement.setBoolean(parameterIndex, value.booleanValue());
+                }
+            }
+            case STRING  -> statement.setString(parameterIndex, value.maybeStringValue());
+            case EMPTY   -> statement.setString(parameterIndex, ""); // by convention we use empty string
+            default -> throw new IllegalStateException("Unknown column type: " + columnType);
+        }
+    }
+
+    private void addRowToBatch() throws SQLException {
+        insertStatement.addBatch();
+        ++rowsInBatch;
+        if (rowsInBatch == batchSize) {
+            executeBatch();
+        }
+    }
+
+    private IllegalStateException unknownColumnType(final int columnNum, final ExcelValueWrapper.Type columnType) {
+        return new IllegalStateException(
+                "Sheet: " + tableDefinition.sheetName() + ", column " +
+                        tableDefinition.columnNames().get(columnNum) +
+                        "Unknown column type: " + columnType
+        );
+    }
+
+    private void executeBatch() throws SQLException {
+        final long startNanos = System.nanoTime();
+        insertStatement.executeBatch();
+        metrics.batchExecuted(tableDefinition.sheetName(), rowsInBatch, System.nanoTime() - startNanos);
+        uncommittedRows += rowsInBatch;
+        rowsInBatch = 0;
+        ++uncommittedBatches;
+        if (uncommittedBatches == commitInterval) {
+            commit();
+            uncommittedBatches = 0;
+        }
+    }
+
+    /** Commits rows together with the checkpoint of the table. */
+    private void commit() throws SQLException {
+        if (checkpoints != null) {
+            checkpoints.rowsCommitted(connection, tableDefinition, uncommittedRows);
+        }
+        connection.commit();
+        uncommittedRows = 0;
+    }
+}
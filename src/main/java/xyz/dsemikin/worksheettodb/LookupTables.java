@@ -0,0 +1,223 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lookup tables for string columns with few distinct values (see {@link ImportOptions#lookupTableMaxValues()}).
+ *
+ * Lookup table has columns {@code id} (INTEGER, primary key) and {@code text_value}. Table of the sheet
+ * keeps ids, which reference the lookup table, instead of strings. This way each distinct string is
+ * sent to DB and stored only once.
+ *
+ * Distinct values are known from column statistics of the first pass (see {@link ColumnStats#distinctStrings()}),
+ * so lookup tables are created and filled completely, before rows of the sheet are loaded.
+ */
+class LookupTables {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LookupTables.class);
+
+    /** Lookup tables of one sheet. Entries of the lists are {@code null} for other columns. */
+    private record SheetLookups(TableDefinition tableDefinition, List<List<String>> values, List<Map<String, Integer>> ids) {}
+
+    private final ConnectionPool connectionPool;
+    private final int batchSize;
+    // Key is sheet name. Sheets without lookup tables are not included.
+    private final Map<String, SheetLookups> sheetLookups = new HashMap<>();
+
+    /**
+     * Chooses columns for lookup tables. Names of lookup tables are allocated by {@code collector},
+     * so that they do not clash with the tables of the sheets.
+     */
+    LookupTables(
+            final TableDefinitionsCollector collector,
+            final ConnectionPool connectionPool,
+            final ImportOptions options
+    ) {
+        this.connectionPool = connectionPool;
+        this.batchSize = options.batchSize();
+        final Map<String, List<ColumnStats>> columnStats = collector.columnStats();
+        for (final TableDefinition tableDefinition : collector.tableDefinitions().values()) {
+            final List<ColumnStats> sheetColumnStats = columnStats.get(tableDefinition.sheetName());
+            TableDefinition lookupDefinition = tableDefinition;
+            final List<List<String>> values = new ArrayList<>();
+            final List<Map<String, Integer>> ids = new ArrayList<>();
+            for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+                final ColumnStats stats = sheetColumnStats.get(columnNum);
+                final Set<String> distinctStrings = stats.distinctStrings();
+                if (
+                        stats.type() != ExcelValueWrapper.Type.STRING ||
+                        distinctStrings == null ||
+                        distinctStrings.size() > options.lookupTableMaxValues() ||
+                        stats.valueCount() == distinctStrings.size() // no repeated values, nothing to gain
+                ) {
+                    values.add(null);
+                    ids.add(null);
+                    continue;
+                }
+                final String lookupTableName = collector.allocateAuxiliaryTableName(
+                        tableDefinition.tableName() + "_" + tableDefinition.columnNames().get(columnNum));
+                lookupDefinition = lookupDefinition.withLookupTable(columnNum, lookupTableName);
+                final Map<String, Integer> columnIds = new HashMap<>();
+                for (final String value : distinctStrings) {
+                    columnIds.put(value, columnIds.size() + 1);
+                }
+                values.add(List.copyOf(distinctStrings));
+                ids.add(columnIds);
+            }
+            if (lookupDefinition != tableDefinition) {
+                sheetLookups.put(tableDefinition.sheetName(), new SheetLookups(lookupDefinition, values, ids));
+            }
+        }
+    }
+
+    /**
+     * Sinks, which create lookup tables of the sheet, when the table of the sheet is started,
+     * and then replace strings by ids. Sheets without lookup tables are passed to the sink as is.
+     */
+    RowSink.Factory wrap(final RowSink.Factory sinkFactory) {
+        if (sheetLookups.isEmpty()) {
+            return sinkFactory;
+        }
+        return () -> new LookupRowSink(sinkFactory);
+    }
+
+    private void createLookupTables(final SheetLookups lookups) throws SQLException {
+        final TableDefinition tableDefinition = lookups.tableDefinition();
+        final Connection connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(false);
+            for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+                final String lookupTableName = tableDefinition.lookupTableName(columnNum);
+                if (lookupTableName == null) {
+                    continue;
+                }
+                final String createTableStatement = "CREATE TABLE " + lookupTableName + " (" +
+                        "id INTEGER NOT NULL PRIMARY KEY, " +
+                        "text_value " + SqlDbTableImporter.columnSqlType(ExcelValueWrapper.Type.STRING,
+                                tableDefinition.stringColumnLengths().get(columnNum)) + " NOT NULL)";
+                LOGGER.info("Create lookup table statement: ");
+                LOGGER.info(createTableStatement);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(createTableStatement);
+                }
+                try (PreparedStatement insertStatement = connection.prepareStatement(
+                        "INSERT INTO " + lookupTableName + " (id, text_value) VALUES (?, ?)")) {
+                    final List<String> values = lookups.values().get(columnNum);
+                    for (int valueNum = 0; valueNum < values.size(); ++valueNum) {
+                        insertStatement.setInt(1, valueNum + 1);
+                        insertStatement.setString(2, values.get(valueNum));
+                        insertStatement.addBatch();
+                        if ((valueNum + 1) % batchSize == 0) {
+                            insertStatement.executeBatch();
+                        }
+                    }
+                    insertStatement.executeBatch();
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Connection of the underlying sink is acquired only after lookup tables are created, so that
+     * one sheet never holds two connections of the pool at the same time.
+     */
+    private class LookupRowSink implements RowSink {
+
+        private final RowSink.Factory sinkFactory;
+        private RowSink sink;
+        private SheetLookups lookups;
+
+        LookupRowSink(final RowSink.Factory sinkFactory) {
+            this.sinkFactory = sinkFactory;
+        }
+
+        @Override
+        public void startTable(final TableDefinition tableDefinition) throws SQLException {
+            lookups = sheetLookups.get(tableDefinition.sheetName());
+            if (lookups != null) {
+                createLookupTables(lookups);
+            }
+            if (sink == null) {
+                sink = sinkFactory.createSink();
+            }
+            sink.startTable(lookups == null ? tableDefinition : lookups.tableDefinition());
+        }
+
+        @Override
+        public void row(final List<ExcelValueWrapper> values) throws SQLException {
+            if (lookups == null) {
+                sink.row(values);
+                return;
+            }
+            final List<ExcelValueWrapper> lookupValues = new ArrayList<>(values);
+            for (int columnNum = 0; columnNum < lookupValues.size(); ++columnNum) {
+                final Map<String, Integer> ids = lookups.ids().get(columnNum);
+                final ExcelValueWrapper value = lookupValues.get(columnNum);
+                if (ids == null || value.type() == ExcelValueWrapper.Type.EMPTY) {
+                    continue;
+                }
+                final Integer id = ids.get(value.maybeStringValue());
+                if (id == null) {
+                    throw new IllegalStateException("Sheet " + lookups.tableDefinition().sheetName() + ", column " +
+                            lookups.tableDefinition().columnNames().get(columnNum) + ": Value " + value.maybeStringValue() +
+                            " is not in lookup table. Was the file changed during import?");
+                }
+                lookupValues.set(columnNum, ExcelValueWrapper.of(id.doubleValue()));
+            }
+            sink.row(lookupValues);
+        }
+
+        @Override
+        public void row(final SheetData sheetData, final int rowNum) throws SQLException {
+            if (lookups == null) {
+                sink.row(sheetData, rowNum);
+            } else {
+                RowSink.super.row(sheetData, rowNum);
+            }
+        }
+
+        @Override
+        public void endTable() throws SQLException {
+            sink.endTable();
+            lookups = null;
+        }
+
+        @Override
+        public void widenTable(final TableDefinition widenedDefinition) {
+            // Lookup tables are used only, when table definitions are known in advance.
+            throw new IllegalStateException("Table " + widenedDefinition.tableName() + ": Table with lookup tables can not be widened.");
+        }
+
+        @Override
+        public void abortTable() {
+            if (sink != null) {
+                sink.abortTable();
+            }
+            lookups = null;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+}
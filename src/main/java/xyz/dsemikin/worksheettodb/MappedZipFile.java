@@ -0,0 +1,380 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Zip file (e.g. xlsx), which is mapped into memory.
+ *
+ * Central directory is read directly from the mapped file, and entries are inflated straight
+ * from it into the buffers of the reader, without intermediate copies or temporary files.
+ * Entries may be read by several threads at the same time.
+ *
+ * Only what is needed for xlsx files is supported: files up to 2 GB without zip64 extensions,
+ * and entries, which are stored or deflated and not encrypted. For other files {@code open}
+ * throws {@link UnsupportedZipException}.
+ *
+ * Mapping is released, when the file is closed and all the streams of its entries are closed too
+ * (reading mapping, which is released, would crash the JVM). If the JVM does not allow to release
+ * it explicitly, it is released, when the buffer is garbage collected.
+ */
+class MappedZipFile implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedZipFile.class);
+
+    // Unsafe.invokeCleaner(ByteBuffer) or null, if it is not accessible.
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    // Same protection against zip bombs as in POI (see ZipSecureFile).
+    private static final double MIN_INFLATE_RATIO = 0.01;
+    private static final long GRACE_ENTRY_SIZE = 100 * 1024;
+
+    /** File can not be read by this class, but it may still be a valid zip file. */
+    static class UnsupportedZipException extends ZipException {
+        UnsupportedZipException(final String message) {
+            super(message);
+        }
+    }
+
+    record Entry(String name, int method, int flags, long crc, long compressedSize, long size, long localHeaderOffset) {}
+
+    private final Path path;
+    private final MappedByteBuffer mappedBuffer;
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+    // Guarded by this.
+    private int openStreamsCount;
+    private boolean closed;
+
+    private MappedZipFile(
+            final Path path,
+            final MappedByteBuffer mappedBuffer,
+            final ByteBuffer buffer,
+            final Map<String, Entry> entries
+    ) {
+        this.path = path;
+        this.mappedBuffer = mappedBuffer;
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    static MappedZipFile open(final Path path) throws IOException {
+        final MappedByteBuffer mappedBuffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new UnsupportedZipException("File " + path + " is too big to be mapped (" + size + " bytes).");
+            }
+            // Mapping stays valid after the channel is closed.
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        final ByteBuffer buffer = mappedBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return new MappedZipFile(path, mappedBuffer, buffer, readCentralDirectory(path, buffer));
+        } catch (IOException | RuntimeException e) {
+            unmap(mappedBuffer);
+            throw e;
+        }
+    }
+
+    /** Mapping is released now or, if some streams of entries are still open, when the last of them is closed. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (openStreamsCount == 0) {
+            unmap(mappedBuffer);
+        }
+    }
+
+    /** {@code null}, if there is no such entry. */
+    Entry entry(final String name) {
+        return entries.get(name);
+    }
+
+    /** {@code null}, if there is no such entry. */
+    InputStream openEntry(final String name) throws IOException {
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if ((entry.flags() & FLAG_ENCRYPTED) != 0) {
+            throw new UnsupportedZipException("Entry " + name + " of " + path + " is encrypted.");
+        }
+        // Stream is counted before the mapping is touched, so that it is not released meanwhile.
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Zip file " + path + " is closed.");
+            }
+            ++openStreamsCount;
+        }
+        try {
+            final int headerOffset = checkedOffset(entry.localHeaderOffset(), LOCAL_HEADER_SIZE, name);
+            if (buffer.getInt(headerOffset) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header of entry " + name + " in " + path + ".");
+            }
+            final int dataOffset = headerOffset + LOCAL_HEADER_SIZE
+                    + Short.toUnsignedInt(buffer.getShort(headerOffset + 26))
+                    + Short.toUnsignedInt(buffer.getShort(headerOffset + 28));
+            checkedOffset(dataOffset, entry.compressedSize(), name);
+            if (entry.method() != METHOD_STORED && entry.method() != METHOD_DEFLATED) {
+                throw new UnsupportedZipException(
+                        "Compression method " + entry.method() + " of entry " + name + " in " + path + " is not supported.");
+            }
+            final ByteBuffer data = buffer.slice(dataOffset, (int) entry.compressedSize());
+            return entry.method() == METHOD_STORED
+                    ? new ByteBufferInputStream(data, entry)
+                    : new InflatingInputStream(data, entry);
+        } catch (IOException | RuntimeException e) {
+            streamClosed();
+            throw e;
+        }
+    }
+
+    private synchronized void streamClosed() {
+        --openStreamsCount;
+        if (closed && openStreamsCount == 0) {
+            unmap(mappedBuffer);
+        }
+    }
+
+    private static void unmap(final MappedByteBuffer mappedBuffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) mappedBuffer);
+        } catch (Throwable e) {
+            LOGGER.debug("Failed to release mapped file. It will be released, when the buffer is garbage collected.", e);
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafeField.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Mapped files can not be released explicitly. They will be released, when buffers are garbage collected.", e);
+            return null;
+        }
+    }
+
+    private int checkedOffset(final long offset, final long length, final String name) throws ZipException {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new ZipException("Entry " + name + " is outside of " + path + ".");
+        }
+        return (int) offset;
+    }
+
+    private static Map<String, Entry> readCentralDirectory(final Path path, final ByteBuffer buffer) throws ZipException {
+        final int endOffset = findEndOfCentralDirectory(buffer);
+        if (endOffset == -1) {
+            throw new UnsupportedZipException("End of central directory is not found in " + path + ".");
+        }
+        final int entriesCount = Short.toUnsignedInt(buffer.getShort(endOffset + 10));
+        final long directoryOffset = Integer.toUnsignedLong(buffer.getInt(endOffset + 16));
+        if (entriesCount == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new UnsupportedZipException("Zip64 file " + path + " is not supported.");
+        }
+        final Map<String, Entry> entries = new HashMap<>(2 * entriesCount);
+        int offset = (int) directoryOffset;
+        for (int entryNum = 0; entryNum < entriesCount; ++entryNum) {
+            if (offset + 46 > endOffset || buffer.getInt(offset) != CENTRAL_DIRECTORY_ENTRY_SIGNATURE) {
+                throw new ZipException("Invalid central directory in " + path + ".");
+            }
+            final int flags = Short.toUnsignedInt(buffer.getShort(offset + 8));
+            final int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+            final int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+            final int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+            final byte[] nameBytes = new byte[nameLength];
+            buffer.get(offset + 46, nameBytes);
+            final Charset nameCharset = (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+            final String name = new String(nameBytes, nameCharset);
+            entries.put(name, new Entry(
+                    name,
+                    Short.toUnsignedInt(buffer.getShort(offset + 10)),
+                    flags,
+                    Integer.toUnsignedLong(buffer.getInt(offset + 16)),
+                    Integer.toUnsignedLong(buffer.getInt(offset + 20)),
+                    Integer.toUnsignedLong(buffer.getInt(offset + 24)),
+                    Integer.toUnsignedLong(buffer.getInt(offset + 42))));
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /** Offset of the record or -1. The record is at the end of the file, followed only by the comment. */
+    private static int findEndOfCentralDirectory(final ByteBuffer buffer) {
+        final int lastPossibleOffset = buffer.capacity() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        final int firstPossibleOffset = Math.max(0, lastPossibleOffset - MAX_COMMENT_SIZE);
+        for (int offset = lastPossibleOffset; offset >= firstPossibleOffset; --offset) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer data;
+        private final Entry entry;
+        private boolean closed;
+
+        ByteBufferInputStream(final ByteBuffer data, final Entry entry) {
+            this.data = data;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkNotClosed();
+            return data.hasRemaining() ? Byte.toUnsignedInt(data.get()) : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            checkNotClosed();
+            if (length == 0) {
+                return 0;
+            }
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            final int bytesCount = Math.min(length, data.remaining());
+            data.get(bytes, offset, bytesCount);
+            return bytesCount;
+        }
+
+        @Override
+        public int available() throws IOException {
+            checkNotClosed();
+            return data.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                streamClosed();
+            }
+        }
+
+        private void checkNotClosed() throws IOException {
+            if (closed) {
+                throw new IOException("Stream of entry " + entry.name() + " is closed.");
+            }
+        }
+    }
+
+    /** Inflates the entry directly from the mapped file into the buffer of the caller. */
+    private class InflatingInputStream extends InputStream {
+
+        private final Inflater inflater = new Inflater(true);
+        private final Entry entry;
+        private final byte[] singleByte = new byte[1];
+        private boolean dummyByteSupplied;
+        private boolean closed;
+
+        InflatingInputStream(final ByteBuffer data, final Entry entry) {
+            this.entry = entry;
+            inflater.setInput(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(singleByte, 0, 1) == -1 ? -1 : Byte.toUnsignedInt(singleByte[0]);
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream of entry " + entry.name() + " is closed.");
+            }
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                final int bytesCount;
+                try {
+                    bytesCount = inflater.inflate(bytes, offset, length);
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid data of entry " + entry.name() + " in " + path + ": " + e.getMessage());
+                }
+                if (bytesCount > 0) {
+                    checkInflatedSize();
+                    return bytesCount;
+                }
+                if (inflater.finished() || inflater.needsDictionary()) {
+                    return -1;
+                }
+                if (inflater.needsInput()) {
+                    if (dummyByteSupplied) {
+                        throw new EOFException("Unexpected end of entry " + entry.name() + " in " + path + ".");
+                    }
+                    // "nowrap" inflater may need one extra byte after the compressed data (see Inflater).
+                    inflater.setInput(new byte[1]);
+                    dummyByteSupplied = true;
+                }
+            }
+        }
+
+        private void checkInflatedSize() throws ZipException {
+            final long inflatedSize = inflater.getBytesWritten();
+            if (inflatedSize > entry.size()) {
+                throw new ZipException("Entry " + entry.name() + " in " + path + " is larger, than declared (" + entry.size() + " bytes).");
+            }
+            if (inflatedSize > GRACE_ENTRY_SIZE && (double) inflater.getBytesRead() / inflatedSize < MIN_INFLATE_RATIO) {
+                throw new ZipException("Entry " + entry.name() + " in " + path + " is suspiciously highly compressed (possible zip bomb).");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                inflater.end();
+                streamClosed();
+            }
+        }
+    }
+}
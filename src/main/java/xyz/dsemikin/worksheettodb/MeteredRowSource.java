@@ -0,0 +1,75 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Source, which counts rows and measures parsing time of each sheet (see {@link ImportMetrics}),
+ * while passing the rows further unchanged.
+ */
+class MeteredRowSource implements RowSource {
+
+    private final RowSource source;
+    private final ImportMetrics metrics;
+
+    MeteredRowSource(final RowSource source, final ImportMetrics metrics) {
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void readRows(final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+        countBytesRead();
+        source.readRows(new MeteredHandler(handler));
+    }
+
+    @Override
+    public void readRowsInParallel(
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism
+    ) throws IOException, ExcelFileStructureException {
+        countBytesRead();
+        source.readRowsInParallel(sheetName -> new MeteredHandler(handlerFactory.handlerFor(sheetName)), parallelism);
+    }
+
+    @Override
+    public long sizeInBytes() throws IOException {
+        return source.sizeInBytes();
+    }
+
+    private void countBytesRead() throws IOException {
+        final long sizeInBytes = source.sizeInBytes();
+        if (sizeInBytes > 0) {
+            metrics.bytesRead(sizeInBytes);
+        }
+    }
+
+    private class MeteredHandler implements ExcelRowHandler {
+
+        private final ExcelRowHandler handler;
+        private String sheetName;
+
+        private MeteredHandler(final ExcelRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startSheet(final String sheetName, final List<String> columnNames) throws ExcelFileStructureException {
+            this.sheetName = sheetName;
+            metrics.sheetParseStarted(sheetName);
+            handler.startSheet(sheetName, columnNames);
+        }
+
+        @Override
+        public void row(final int rowNum, final List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+            metrics.rowParsed(sheetName);
+            handler.row(rowNum, values);
+        }
+
+        @Override
+        public void endSheet(final List<ColumnStats> columnStats) throws ExcelFileStructureException {
+            metrics.sheetParseFinished(sheetName);
+            handler.endSheet(columnStats);
+        }
+    }
+}
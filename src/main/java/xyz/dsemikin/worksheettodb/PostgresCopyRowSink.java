@@ -0,0 +1,119 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads rows into PostgreSQL with {@code COPY ... FROM STDIN} (text format).
+ *
+ * Rows are sent to the server directly, while they come, in portions of {@link ImportOptions#batchSize()}
+ * rows. Nothing is written to disk.
+ */
+class PostgresCopyRowSink extends BulkLoadRowSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostgresCopyRowSink.class);
+
+    private final CopyManager copyManager;
+    private final StringBuilder buffer = new StringBuilder();
+    private int rowsInBuffer;
+    private CopyIn copyIn;
+
+    PostgresCopyRowSink(
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics,
+            final ImportCheckpoints checkpoints
+    ) throws SQLException {
+        super(connectionPool, options, metrics, checkpoints);
+        try {
+            this.copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    static boolean supports(final String connectionString) {
+        return connectionString.toLowerCase(Locale.ROOT).startsWith("jdbc:postgresql:");
+    }
+
+    @Override
+    protected void startChunk() throws SQLException {
+        final String copyStatement = "COPY " + tableDefinition.tableName() +
+                " ( " + String.join(", ", tableDefinition.columnNames()) + " ) FROM STDIN";
+        LOGGER.debug("Copy data statement: " + copyStatement);
+        copyIn = copyManager.copyIn(copyStatement);
+    }
+
+    @Override
+    protected void writeRow(final List<ExcelValueWrapper> values) throws SQLException {
+        for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+            if (columnNum != 0) {
+                buffer.append('\t');
+            }
+            appendEscaped(buffer, valueText(columnNum, values.get(columnNum)));
+        }
+        buffer.append('\n');
+        ++rowsInBuffer;
+        if (rowsInBuffer == batchSize) {
+            flushBuffer();
+        }
+    }
+
+    @Override
+    protected void loadChunk() throws SQLException {
+        flushBuffer();
+        copyIn.endCopy();
+        copyIn = null;
+    }
+
+    @Override
+    protected void discardChunk() {
+        buffer.setLength(0);
+        rowsInBuffer = 0;
+        if (copyIn != null && copyIn.isActive()) {
+            try {
+                copyIn.cancelCopy();
+            } catch (SQLException e) {
+                LOGGER.warn("Failed to cancel COPY after import failure.", e);
+            }
+        }
+        copyIn = null;
+    }
+
+    private void flushBuffer() throws SQLException {
+        if (rowsInBuffer == 0) {
+            return;
+        }
+        final byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8); // JDBC driver always uses UTF-8
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+        rowsInBuffer = 0;
+    }
+
+    /** See "Text Format" in documentation of COPY. {@code null} is written as \N, so text "\N" gets its backslash escaped. */
+    static void appendEscaped(final StringBuilder buffer, final String text) {
+        if (text == null) {
+            buffer.append("\\N");
+            return;
+        }
+        for (int charNum = 0; charNum < text.length(); ++charNum) {
+            final char c = text.charAt(charNum);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+    }
+}
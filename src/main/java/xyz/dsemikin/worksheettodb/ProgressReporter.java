@@ -0,0 +1,59 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs one line with the progress of the import (see {@link ImportMetrics}) periodically,
+ * until it is closed. Rates in the line are calculated over the last interval.
+ */
+class ProgressReporter implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProgressReporter.class);
+
+    private final ImportMetrics metrics;
+    private final ScheduledExecutorService executor;
+
+    private long previousRowsParsed;
+    private long previousRowsWritten;
+    private long previousNanos = System.nanoTime();
+
+    ProgressReporter(final ImportMetrics metrics, final int intervalSeconds) {
+        if (intervalSeconds < 1) {
+            throw new IllegalArgumentException("Progress interval must be positive, but got: " + intervalSeconds);
+        }
+        this.metrics = metrics;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void report() {
+        final long nanos = System.nanoTime();
+        final long rowsParsed = metrics.getRowsParsed();
+        final long rowsWritten = metrics.getRowsWritten();
+        final double seconds = (nanos - previousNanos) / 1e9;
+        LOGGER.info(String.format(Locale.ROOT,
+                "Progress: %d rows parsed (%.0f rows/s), %d rows written (%.0f rows/s), %d batches (avg %.1f ms), heap high-water mark %d MB.",
+                rowsParsed, (rowsParsed - previousRowsParsed) / seconds,
+                rowsWritten, (rowsWritten - previousRowsWritten) / seconds,
+                metrics.getBatchCount(), metrics.getAverageBatchMillis(),
+                metrics.getHeapHighWaterMarkBytes() / (1024 * 1024)));
+        previousRowsParsed = rowsParsed;
+        previousRowsWritten = rowsWritten;
+        previousNanos = nanos;
+    }
+}
@@ -0,0 +1,128 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Cells of the current row, which are reused for every next row, so that reading a worksheet
+ * does not allocate objects per cell (except the values themselves, like strings and dates).
+ *
+ * Each column has its own reusable value, which is changed by typed setters. Empty and boolean
+ * cells refer to shared constants. Cells, which are not set, are {@code null}.
+ */
+class RowCursor extends AbstractList<ExcelValueWrapper> implements RandomAccess {
+
+    private ExcelValueWrapper[] reusableValues = new ExcelValueWrapper[0];
+    private ExcelValueWrapper[] values = new ExcelValueWrapper[0];
+    private int size;
+
+    /** Starts next row. */
+    void clear(final int expectedSize) {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        ensureCapacity(expectedSize);
+    }
+
+    void setEmpty(final int columnNum) {
+        setShared(columnNum, ExcelValueWrapper.EMPTY);
+    }
+
+    void setBoolean(final int columnNum, final boolean value) {
+        setShared(columnNum, ExcelValueWrapper.of(value));
+    }
+
+    void setString(final int columnNum, final String value) {
+        if (value == null) {
+            setEmpty(columnNum);
+            return;
+        }
+        reusableValue(columnNum).setString(value);
+    }
+
+    void setDouble(final int columnNum, final double value) {
+        reusableValue(columnNum).setDouble(value);
+    }
+
+    void setDate(final int columnNum, final LocalDateTime value) {
+        if (value == null) {
+            setEmpty(columnNum);
+            return;
+        }
+        reusableValue(columnNum).setDate(value);
+    }
+
+    /** Row has at least {@code minSize} cells. Cells, which are not set, stay missing ({@code null}). */
+    void ensureSize(final int minSize) {
+        ensureCapacity(minSize);
+        size = Math.max(size, minSize);
+    }
+
+    /** Cells after the last set cell up to {@code newSize} and the ones, which are not set, become EMPTY. */
+    void fillEmpty(final int newSize) {
+        ensureCapacity(newSize);
+        size = Math.max(size, newSize);
+        for (int columnNum = 0; columnNum < size; ++columnNum) {
+            if (values[columnNum] == null) {
+                values[columnNum] = ExcelValueWrapper.EMPTY;
+            }
+        }
+    }
+
+    /**
+     * Values, which do not change, when the cursor moves to the next row. Row is copied into a new list
+     * with new values (except shared constants), so handlers, which keep rows (like {@link RowPipeline},
+     * which passes them to another thread), allocate about as much per row, as before the cursor was reused.
+     * Only handlers, which consume the row during the call, save the allocations.
+     */
+    static List<ExcelValueWrapper> copyOf(final List<ExcelValueWrapper> row) {
+        final List<ExcelValueWrapper> copy = new ArrayList<>(row.size());
+        for (int columnNum = 0; columnNum < row.size(); ++columnNum) {
+            final ExcelValueWrapper value = row.get(columnNum);
+            copy.add(value == null ? null : value.copy());
+        }
+        return copy;
+    }
+
+    @Override
+    public ExcelValueWrapper get(final int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for row of size " + size + ".");
+        }
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void setShared(final int columnNum, final ExcelValueWrapper value) {
+        ensureCapacity(columnNum + 1);
+        values[columnNum] = value;
+        size = Math.max(size, columnNum + 1);
+    }
+
+    private ExcelValueWrapper reusableValue(final int columnNum) {
+        ensureCapacity(columnNum + 1);
+        ExcelValueWrapper value = reusableValues[columnNum];
+        if (value == null) {
+            value = ExcelValueWrapper.reusable();
+            reusableValues[columnNum] = value;
+        }
+        values[columnNum] = value;
+        size = Math.max(size, columnNum + 1);
+        return value;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > values.length) {
+            final int newCapacity = Math.max(capacity, 2 * values.length);
+            values = Arrays.copyOf(values, newCapacity);
+            reusableValues = Arrays.copyOf(reusableValues, newCapacity);
+        }
+    }
+}
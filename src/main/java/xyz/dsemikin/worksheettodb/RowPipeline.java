@@ -0,0 +1,423 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves rows from {@link RowSource} to {@link RowSink}s.
+ *
+ * Rows of each sheet are put into separate bounded queue, which is consumed by writer task
+ * of this sheet (see {@link SheetTaskRunner}), so that reading of the file and writing to DB
+ * overlap, and up to {@link ImportOptions#parallelism()} sheets are written in parallel. If the
+ * source supports it, up to the same number of sheets are also read in parallel (see
+ * {@link RowSource#readRowsInParallel}). Not more than {@link ImportOptions#queueCapacity()}
+ * rows per sheet are kept in memory at any moment.
+ */
+public class RowPipeline {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private static final Object END_OF_SHEET = new Object();
+
+    /** Table definitions (key is sheet name) must be calculated in advance. */
+    public static void run(
+            final RowSource source,
+            final Map<String, TableDefinition> tableDefinitions,
+            final RowSink.Factory sinkFactory,
+            final ImportOptions options
+    ) throws IOException, ExcelFileStructureException, SheetImportException {
+        run(source, options, sheetName -> (columnNames, channel) -> {
+            final TableDefinition tableDefinition = tableDefinitions.get(sheetName);
+            if (tableDefinition == null) {
+                throw new IllegalStateException("Sheet " + sheetName + ": There is no table definition for the sheet. " +
+                        "Probably row source returned different data on different reads.");
+            }
+            return () -> writeSheet(tableDefinition, channel, sinkFactory, false);
+        });
+    }
+
+    /**
+     * Table definitions are detected from the first {@link ImportOptions#sampleRows()} rows of
+     * each sheet. If later rows do not fit into the table, it is widened (see {@link RowSink#widenTable}).
+     */
+    public static void runWithSampling(
+            final RowSource source,
+            final RowSink.Factory sinkFactory,
+            final ImportOptions options
+    ) throws IOException, ExcelFileStructureException, SheetImportException {
+        runWithSampling(source, new TableDefinitionsCollector(), sinkFactory, options);
+    }
+
+    /** Table names are allocated with {@code tableNames}. */
+    static void runWithSampling(
+            final RowSource source,
+            final TableDefinitionsCollector tableNames,
+            final RowSink.Factory sinkFactory,
+            final ImportOptions options
+    ) throws IOException, ExcelFileStructureException, SheetImportException {
+        run(source, options, sheetName -> {
+            // Sheets are prepared in the order of the sheets, so table names do not depend on timing.
+            final String tableName = tableNames.allocateTableName(sheetName);
+            return (columnNames, channel) ->
+                    () -> writeSheetWithSampling(sheetName, tableName, columnNames, channel, sinkFactory, options.sampleRows());
+        });
+    }
+
+    /**
+     * Sheets, for which {@code plans} have table definitions, are written with them during this read
+     * of the source (table is widened, if rows do not fit into it), so their types are not detected
+     * at all. Types of other sheets are detected from samples, if {@link ImportOptions#sampleRows()}
+     * is set. Otherwise they are detected from all rows of the sheets, and their definitions are
+     * returned (key is sheet name), so that the sheets can be written by the next read.
+     * If values of a planned sheet have another type, than its column in the plan, its table is
+     * dropped (see {@link ImportPlans#dropPlannedTable}), and its detected definition is returned too.
+     * Table names are allocated with {@code tableNames}.
+     */
+    static Map<String, TableDefinition> runWithPlans(
+            final RowSource source,
+            final TableDefinitionsCollector tableNames,
+            final ImportPlans plans,
+            final RowSink.Factory sinkFactory,
+            final ImportOptions options
+    ) throws IOException, ExcelFileStructureException, SheetImportException {
+        final Map<String, TableDefinition> detectedDefinitions = new ConcurrentHashMap<>();
+        // Definitions of all planned sheets are detected too, because their plans may turn out to be wrong.
+        final Map<String, TableDefinition> plannedSheetsDefinitions = new ConcurrentHashMap<>();
+        final Set<String> mismatchedSheets = ConcurrentHashMap.newKeySet();
+        run(source, options, sheetName -> {
+            final String tableName = tableNames.allocateTableName(sheetName);
+            return new SheetWriter() {
+
+                private List<String> detectedColumnNames;
+                private boolean planned;
+
+                @Override
+                public SheetTaskRunner.SheetTask create(final List<String> columnNames, final SheetChannel channel) {
+                    detectedColumnNames = columnNames;
+                    final TableDefinition plannedDefinition = plans.find(sheetName, tableName, columnNames);
+                    if (plannedDefinition != null) {
+                        planned = true;
+                        return () -> {
+                            try {
+                                writeSheet(plannedDefinition, channel, sinkFactory, true);
+                            } catch (PlanMismatchException e) {
+                                plans.dropPlannedTable(plannedDefinition, e.getMessage());
+                                mismatchedSheets.add(sheetName);
+                            }
+                        };
+                    } else if (options.sampleRows() > 0) {
+                        detectedColumnNames = null;
+                        return () -> writeSheetWithSampling(sheetName, tableName, columnNames, channel, sinkFactory, options.sampleRows());
+                    }
+                    return null;
+                }
+
+                @Override
+                public void sheetRead(final List<ColumnStats> columnStats) {
+                    if (detectedColumnNames != null) {
+                        final TableDefinition definition = TableDefinitionsCollector.createTableDefinition(
+                                sheetName, tableName, detectedColumnNames, columnStats);
+                        (planned ? plannedSheetsDefinitions : detectedDefinitions).put(sheetName, definition);
+                    }
+                }
+            };
+        });
+        for (final String sheetName : mismatchedSheets) {
+            detectedDefinitions.put(sheetName, plannedSheetsDefinitions.get(sheetName));
+        }
+        return detectedDefinitions;
+    }
+
+    private static void run(
+            final RowSource source,
+            final ImportOptions options,
+            final SheetWriterFactory sheetWriterFactory
+    ) throws IOException, ExcelFileStructureException, SheetImportException {
+
+        try (SheetTaskRunner taskRunner = new SheetTaskRunner(options.parallelism())) {
+            final Set<SheetChannel> openChannels = ConcurrentHashMap.newKeySet();
+            try {
+                source.readRowsInParallel(
+                        sheetName -> new DispatchingHandler(
+                                sheetWriterFactory.prepare(sheetName), taskRunner, options.queueCapacity(), openChannels),
+                        options.parallelism()
+                );
+            } catch (IOException | ExcelFileStructureException | RuntimeException e) {
+                for (final SheetChannel channel : openChannels) {
+                    channel.put(new ReaderFailure(e));
+                }
+                try {
+                    taskRunner.awaitAll();
+                } catch (SheetImportException sheetImportException) {
+                    e.addSuppressed(sheetImportException);
+                }
+                throw e;
+            }
+            taskRunner.awaitAll();
+        }
+    }
+
+    private interface SheetWriterFactory {
+        /** Called in the order of the sheets, before the sheet is read. */
+        SheetWriter prepare(String sheetName);
+    }
+
+    private interface SheetWriter {
+        /**
+         * Creates writer task for the sheet or returns {@code null}, if the sheet is not written
+         * during this read. Called in the reader thread, when sheet starts.
+         */
+        SheetTaskRunner.SheetTask create(List<String> columnNames, SheetChannel channel);
+
+        /** Called in the reader thread, when all rows of the sheet are read. */
+        default void sheetRead(final List<ColumnStats> columnStats) {
+        }
+    }
+
+    /** Rows of one sheet on their way from reader to writer. */
+    private static class SheetChannel {
+
+        private final BlockingQueue<Object> queue;
+        private volatile boolean consumingStopped;
+
+        SheetChannel(final int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        void put(final Object message) {
+            if (consumingStopped) {
+                return; // nobody reads it anymore
+            }
+            try {
+                queue.put(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Reading of rows was cancelled.");
+            }
+        }
+
+        Object take() {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Writing of rows was interrupted.");
+            }
+        }
+
+        /** Unblocks reader, if it waits for free space in the queue (e.g. when writer failed). */
+        void stopConsuming() {
+            consumingStopped = true;
+            queue.clear();
+        }
+    }
+
+    private record ReaderFailure(Exception exception) {}
+
+    /** Value does not fit into the column of planned table definition, because it has another type. */
+    private static class PlanMismatchException extends IllegalStateException {
+        PlanMismatchException(final String message) {
+            super(message);
+        }
+    }
+
+    /** Puts rows of one sheet into its channel. */
+    private static class DispatchingHandler implements ExcelRowHandler {
+
+        private final SheetWriter sheetWriter;
+        private final SheetTaskRunner taskRunner;
+        private final int queueCapacity;
+        private final Set<SheetChannel> openChannels;
+
+        private SheetChannel channel;
+
+        DispatchingHandler(
+                final SheetWriter sheetWriter,
+                final SheetTaskRunner taskRunner,
+                final int queueCapacity,
+                final Set<SheetChannel> openChannels
+        ) {
+            this.sheetWriter = sheetWriter;
+            this.taskRunner = taskRunner;
+            this.queueCapacity = queueCapacity;
+            this.openChannels = openChannels;
+        }
+
+        @Override
+        public void startSheet(final String sheetName, final List<String> columnNames) {
+            channel = new SheetChannel(queueCapacity);
+            final SheetTaskRunner.SheetTask task = sheetWriter.create(columnNames, channel);
+            if (task == null) {
+                channel = null; // rows are not needed
+                return;
+            }
+            openChannels.add(channel);
+            taskRunner.submit(sheetName, task);
+        }
+
+        @Override
+        public void row(final int rowNum, final List<ExcelValueWrapper> values) {
+            if (channel != null) {
+                // Reader reuses values for the next row, while this one waits in the queue. So rows, which
+                // are written to DB, are still allocated per row; only the reading itself does not allocate.
+                channel.put(RowCursor.copyOf(values));
+            }
+        }
+
+        @Override
+        public void endSheet(final List<ColumnStats> columnStats) {
+            if (channel != null) {
+                channel.put(END_OF_SHEET);
+                openChannels.remove(channel);
+            }
+            sheetWriter.sheetRead(columnStats);
+        }
+    }
+
+    /** If {@code widen} is set, table is widened, when rows do not fit into it. */
+    private static void writeSheet(
+            final TableDefinition tableDefinition,
+            final SheetChannel channel,
+            final RowSink.Factory sinkFactory,
+            final boolean widen
+    ) throws Exception {
+        try (RowSink sink = sinkFactory.createSink()) {
+            try {
+                sink.startTable(tableDefinition);
+                writeRemainingRows(channel, sink, widen ? tableDefinition : null);
+            } catch (Exception e) {
+                sink.abortTable();
+                throw e;
+            }
+        } finally {
+            // Does nothing, if sheet was completely consumed
+            channel.stopConsuming();
+        }
+    }
+
+    private static void writeSheetWithSampling(
+            final String sheetName,
+            final String tableName,
+            final List<String> columnNames,
+            final SheetChannel channel,
+            final RowSink.Factory sinkFactory,
+            final int sampleRows
+    ) throws Exception {
+        try {
+            final List<List<ExcelValueWrapper>> sample = new ArrayList<>();
+            final List<ColumnStats> sampleStats = new ArrayList<>(columnNames.size());
+            for (int columnNum = 0; columnNum < columnNames.size(); ++columnNum) {
+                sampleStats.add(new ColumnStats());
+            }
+
+            Object message = null;
+            while (sample.size() < sampleRows) {
+                message = channel.take();
+                if (message == END_OF_SHEET || message instanceof ReaderFailure) {
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                final List<ExcelValueWrapper> values = (List<ExcelValueWrapper>) message;
+                for (int columnNum = 0; columnNum < values.size(); ++columnNum) {
+                    // Types are already checked by the reader, so they are always compatible.
+                    sampleStats.get(columnNum).add(values.get(columnNum));
+                }
+                sample.add(values);
+                message = null;
+            }
+            if (message instanceof ReaderFailure readerFailure) {
+                throw readerFailure.exception();
+            }
+
+            final TableDefinition tableDefinition =
+                    TableDefinitionsCollector.createTableDefinition(sheetName, tableName, columnNames, sampleStats);
+
+            try (RowSink sink = sinkFactory.createSink()) {
+                try {
+                    sink.startTable(tableDefinition);
+                    for (final List<ExcelValueWrapper> values : sample) {
+                        sink.row(values);
+                    }
+                    sample.clear();
+                    if (message == END_OF_SHEET) {
+                        sink.endTable();
+                        return;
+                    }
+                    writeRemainingRows(channel, sink, tableDefinition);
+                } catch (Exception e) {
+                    sink.abortTable();
+                    throw e;
+                }
+            }
+        } finally {
+            // Does nothing, if sheet was completely consumed
+            channel.stopConsuming();
+        }
+    }
+
+    /**
+     * Writes rows until the end of the sheet and ends the table.
+     * If {@code tableDefinition} is not null, table is widened, when rows do not fit into it.
+     */
+    private static void writeRemainingRows(
+            final SheetChannel channel,
+            final RowSink sink,
+            TableDefinition tableDefinition
+    ) throws Exception {
+        while (true) {
+            final Object message = channel.take();
+            if (message == END_OF_SHEET) {
+                sink.endTable();
+                return;
+            } else if (message instanceof ReaderFailure readerFailure) {
+                throw readerFailure.exception();
+            } else {
+                @SuppressWarnings("unchecked")
+                final List<ExcelValueWrapper> values = (List<ExcelValueWrapper>) message;
+                if (tableDefinition != null) {
+                    final TableDefinition widenedDefinition = widenToFit(tableDefinition, values);
+                    if (widenedDefinition != tableDefinition) {
+                        sink.widenTable(widenedDefinition);
+                        tableDefinition = widenedDefinition;
+                    }
+                }
+                sink.row(values);
+            }
+        }
+    }
+
+    /** Returns the same object, if the row fits into the table. */
+    private static TableDefinition widenToFit(final TableDefinition tableDefinition, final List<ExcelValueWrapper> values) {
+        TableDefinition result = tableDefinition;
+        for (int columnNum = 0; columnNum < values.size(); ++columnNum) {
+            final ExcelValueWrapper value = values.get(columnNum);
+            final ExcelValueWrapper.Type valueType = value.type();
+            if (valueType == ExcelValueWrapper.Type.EMPTY) {
+                continue;
+            }
+            final ExcelValueWrapper.Type columnType = result.columnTypes().get(columnNum);
+            final int columnLength = result.stringColumnLengths().get(columnNum);
+            if (columnType != ExcelValueWrapper.Type.EMPTY && columnType != valueType) {
+                // Reader checks types within the sheet, but planned definition may come from another import.
+                throw new PlanMismatchException("Table " + result.tableName() + ": Column " + result.columnNames().get(columnNum) +
+                        " has type " + columnType + ", but value has type " + valueType + ".");
+            }
+            if (columnType == ExcelValueWrapper.Type.EMPTY) {
+                final int length = valueType == ExcelValueWrapper.Type.STRING ? value.maybeStringValue().length() : columnLength;
+                result = result.withColumnType(columnNum, valueType, length);
+            } else if (valueType == ExcelValueWrapper.Type.STRING && value.maybeStringValue().length() > columnLength) {
+                // Grow with reserve, so that column is not altered for every next longer value.
+                final int length = Math.max(value.maybeStringValue().length(), 2 * columnLength);
+                result = result.withColumnType(columnNum, valueType, length);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receiver of the rows, which are already assigned to the tables (usually DB).
+ *
+ * For each table calls are done in the order: {@code startTable} (or {@code continueTable}),
+ * {@code row} (for each row), and then {@code endTable} or (if import of the table failed) {@code abortTable}.
+ * Sink is used by one thread at a time.
+ */
+public interface RowSink extends AutoCloseable {
+
+    void startTable(TableDefinition tableDefinition) throws SQLException;
+
+    /**
+     * Same as {@code startTable}, but the table is already created, and the rows are added to it.
+     * It is used to write rows of one table over several sinks in parallel (see {@link ChunkedRowSink}).
+     */
+    default void continueTable(final TableDefinition tableDefinition) throws SQLException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can not continue table, which is created by other sink.");
+    }
+
+    /** Values are in the same order as columns of the table definition. */
+    void row(List<ExcelValueWrapper> values) throws SQLException;
+
+    /**
+     * Same as {@code row(List)}, but takes values directly from columns of the sheet data.
+     * Sinks, which can use the columns without creating value wrappers, should override it.
+     */
+    default void row(final SheetData sheetData, final int rowNum) throws SQLException {
+        final List<ExcelValueWrapper> values = new ArrayList<>(sheetData.columnsCount());
+        for (int columnNum = 0; columnNum < sheetData.columnsCount(); ++columnNum) {
+            values.add(sheetData.value(columnNum, rowNum));
+        }
+        row(values);
+    }
+
+    void endTable() throws SQLException;
+
+    /**
+     * Changes column types of the current table, when a row does not fit into it.
+     * Only EMPTY columns may get other types and STRING columns may get greater lengths.
+     */
+    void widenTable(TableDefinition widenedDefinition) throws SQLException;
+
+    /** Discards, what was not yet finished for the current table. Must not throw. */
+    void abortTable();
+
+    /** Releases resources of the sink (e.g. DB connection). */
+    @Override
+    void close() throws SQLException;
+
+    /** Sinks are created per table, so that tables can be written in parallel. */
+    @FunctionalInterface
+    interface Factory {
+        RowSink createSink() throws SQLException;
+    }
+}
@@ -0,0 +1,135 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Something, what can produce worksheet rows (usually Excel file).
+ *
+ * Source may be read more than once (e.g. first time to detect column types and
+ * second time to import data), so each call to {@code readRows} must produce the same rows.
+ */
+@FunctionalInterface
+public interface RowSource {
+
+    void readRows(ExcelRowHandler handler) throws IOException, ExcelFileStructureException;
+
+    /**
+     * Reads rows of different worksheets in parallel, if the source supports it. By default
+     * worksheets are read sequentially.
+     */
+    default void readRowsInParallel(
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism
+    ) throws IOException, ExcelFileStructureException {
+        readRows(ExcelFileReader.demultiplex(handlerFactory));
+    }
+
+    /**
+     * Source, which contains only worksheets matching {@code sheetFilter}. By default rows of other
+     * worksheets are still read, but are not passed further.
+     */
+    default RowSource withSheetFilter(final Predicate<String> sheetFilter) {
+        final RowSource unfiltered = this;
+        return new RowSource() {
+            @Override
+            public void readRows(final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+                unfiltered.readRows(ExcelFileReader.demultiplex(sheetName ->
+                        sheetFilter.test(sheetName) ? handler : ExcelFileReader.IGNORING_HANDLER));
+            }
+
+            @Override
+            public void readRowsInParallel(
+                    final SheetHandlerFactory handlerFactory,
+                    final int parallelism
+            ) throws IOException, ExcelFileStructureException {
+                unfiltered.readRowsInParallel(sheetName ->
+                        sheetFilter.test(sheetName) ? handlerFactory.handlerFor(sheetName) : ExcelFileReader.IGNORING_HANDLER,
+                        parallelism);
+            }
+
+            @Override
+            public long sizeInBytes() throws IOException {
+                return unfiltered.sizeInBytes();
+            }
+
+            @Override
+            public String contentIdentity() throws IOException {
+                return unfiltered.contentIdentity();
+            }
+        };
+    }
+
+    /**
+     * Fingerprint of each worksheet (key is sheet name), which changes, when content of the
+     * worksheet changes. Empty map, if the source does not support fingerprints.
+     */
+    default Map<String, String> sheetFingerprints() throws IOException {
+        return Map.of();
+    }
+
+    /**
+     * Text, which changes, when content of the source changes, or {@code null}, if the source can not
+     * tell it. It is used to check, that interrupted import is resumed with the same source (see
+     * {@link ImportCheckpoints}).
+     */
+    default String contentIdentity() throws IOException {
+        return null;
+    }
+
+    /** Number of bytes read from storage by each {@code readRows} call or -1, if it is not known. */
+    default long sizeInBytes() throws IOException {
+        return -1;
+    }
+
+    static RowSource fromExcelFile(final Path excelFilePath) {
+        return fromExcelFile(excelFilePath, sheetName -> true);
+    }
+
+    /** Worksheets, which do not match {@code sheetFilter}, are skipped. For xlsx files they are not even parsed. */
+    static RowSource fromExcelFile(final Path excelFilePath, final Predicate<String> sheetFilter) {
+        return new RowSource() {
+            @Override
+            public void readRows(final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+                ExcelFileReader.readExcelFile(excelFilePath, handler, sheetFilter);
+            }
+
+            @Override
+            public void readRowsInParallel(
+                    final SheetHandlerFactory handlerFactory,
+                    final int parallelism
+            ) throws IOException, ExcelFileStructureException {
+                ExcelFileReader.readExcelFile(excelFilePath, handlerFactory, parallelism, sheetFilter);
+            }
+
+            @Override
+            public RowSource withSheetFilter(final Predicate<String> additionalSheetFilter) {
+                return fromExcelFile(excelFilePath, sheetFilter.and(additionalSheetFilter));
+            }
+
+            @Override
+            public Map<String, String> sheetFingerprints() throws IOException {
+                return ExcelFileReader.sheetFingerprints(excelFilePath);
+            }
+
+            /** Sheet fingerprints for xlsx files (so the file may be moved or copied), size and modification time otherwise. */
+            @Override
+            public String contentIdentity() throws IOException {
+                final Map<String, String> fingerprints = sheetFingerprints();
+                if (!fingerprints.isEmpty()) {
+                    return "sheets=" + fingerprints;
+                }
+                return "size=" + Files.size(excelFilePath) + ";modified=" + Files.getLastModifiedTime(excelFilePath).toMillis();
+            }
+
+            @Override
+            public long sizeInBytes() throws IOException {
+                return Files.size(excelFilePath);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,428 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rows of a source, which are written to temporary files, while the source is read for the first time,
+ * so that the second read does not parse the source again (see {@link ImportOptions#spillRows()}).
+ *
+ * Each worksheet is written into its own file in compact binary format: for each row its number, and
+ * then for each column a type tag followed by the value (strings are length-prefixed UTF-8). Files are
+ * written and read through NIO channels with large buffers, so heap usage does not depend on the size
+ * of the worksheets. Worksheets can be read back in parallel.
+ *
+ * Files are deleted, when the spill is closed.
+ */
+class RowSpill implements RowSource, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final byte EMPTY_TAG = 0;
+    private static final byte STRING_TAG = 1;
+    private static final byte DOUBLE_TAG = 2;
+    private static final byte DATE_TAG = 3;
+    private static final byte TRUE_TAG = 4;
+    private static final byte FALSE_TAG = 5;
+
+    private record SpilledSheet(String sheetName, List<String> columnNames, List<ColumnStats> columnStats, Path file, long sizeInBytes) {}
+
+    private final List<SpilledSheet> sheets = new ArrayList<>();
+    private final List<Path> files = new ArrayList<>();
+
+    /**
+     * Reads the source, passes its rows to {@code handler} and writes them to the spill. Rows, which
+     * were recorded before (e.g. by previous call), are discarded.
+     */
+    void record(final RowSource source, final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+        sheets.clear();
+        final RecordingHandler recordingHandler = new RecordingHandler(handler);
+        try {
+            source.readRows(recordingHandler);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            recordingHandler.closeWriter();
+        }
+    }
+
+    @Override
+    public void readRows(final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+        for (final SpilledSheet sheet : sheets) {
+            replaySheet(sheet, handler);
+        }
+    }
+
+    /** Handlers are created in the order of the sheets, then sheets are read by up to {@code parallelism} threads. */
+    @Override
+    public void readRowsInParallel(
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism
+    ) throws IOException, ExcelFileStructureException {
+        final List<ExcelRowHandler> handlers = new ArrayList<>(sheets.size());
+        for (final SpilledSheet sheet : sheets) {
+            handlers.add(handlerFactory.handlerFor(sheet.sheetName()));
+        }
+        if (parallelism == 1 || sheets.size() <= 1) {
+            for (int sheetNum = 0; sheetNum < sheets.size(); ++sheetNum) {
+                replaySheet(sheets.get(sheetNum), handlers.get(sheetNum));
+            }
+            return;
+        }
+
+        final AtomicInteger threadNum = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sheets.size()), runnable -> {
+            final Thread thread = new Thread(runnable, "spill-reader-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(sheets.size());
+            for (int sheetNum = 0; sheetNum < sheets.size(); ++sheetNum) {
+                final SpilledSheet sheet = sheets.get(sheetNum);
+                final ExcelRowHandler handler = handlers.get(sheetNum);
+                futures.add(executor.submit(() -> {
+                    replaySheet(sheet, handler);
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Size of the spill files. */
+    @Override
+    public long sizeInBytes() {
+        long sizeInBytes = 0;
+        for (final SpilledSheet sheet : sheets) {
+            sizeInBytes += sheet.sizeInBytes();
+        }
+        return sizeInBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException firstFailure = null;
+        for (final Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                } else {
+                    firstFailure.addSuppressed(e);
+                }
+            }
+        }
+        files.clear();
+        sheets.clear();
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    private static void replaySheet(final SpilledSheet sheet, final ExcelRowHandler handler) throws IOException, ExcelFileStructureException {
+        handler.startSheet(sheet.sheetName(), sheet.columnNames());
+        final int columnsCount = sheet.columnNames().size();
+        final RowCursor cells = new RowCursor();
+        try (SpillReader reader = new SpillReader(sheet.file())) {
+            while (reader.hasMore()) {
+                final int rowNum = reader.readInt();
+                cells.clear(columnsCount);
+                for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+                    final byte tag = reader.readByte();
+                    switch (tag) {
+                        case EMPTY_TAG -> cells.setEmpty(columnNum);
+                        case STRING_TAG -> cells.setString(columnNum, reader.readString());
+                        case DOUBLE_TAG -> cells.setDouble(columnNum, reader.readDouble());
+                        case DATE_TAG -> {
+                            final long epochSecond = reader.readLong();
+                            final int nano = reader.readInt();
+                            cells.setDate(columnNum, LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC));
+                        }
+                        case TRUE_TAG -> cells.setBoolean(columnNum, true);
+                        case FALSE_TAG -> cells.setBoolean(columnNum, false);
+                        default -> throw new IOException("Spill file " + sheet.file() + " of sheet " + sheet.sheetName() +
+                                " is corrupted: unknown value tag " + tag + ".");
+                    }
+                }
+                handler.row(rowNum, cells);
+            }
+        }
+        handler.endSheet(sheet.columnStats());
+    }
+
+    private static void awaitAll(final List<Future<?>> futures) throws IOException, ExcelFileStructureException {
+        Exception firstFailure = null;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                if (firstFailure == null) {
+                    firstFailure = (Exception) cause;
+                } else {
+                    firstFailure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for spilled worksheets to be read.");
+            }
+        }
+        if (firstFailure instanceof IOException e) {
+            throw e;
+        } else if (firstFailure instanceof ExcelFileStructureException e) {
+            throw e;
+        } else if (firstFailure instanceof RuntimeException e) {
+            throw e;
+        } else if (firstFailure != null) {
+            throw new IllegalStateException("Unexpected exception while reading spilled worksheet.", firstFailure);
+        }
+    }
+
+    /** Passes rows to the handler and writes them into the spill file of the sheet. */
+    private class RecordingHandler implements ExcelRowHandler {
+
+        private final ExcelRowHandler handler;
+        private String sheetName;
+        private List<String> columnNames;
+        private Path file;
+        private SpillWriter writer;
+
+        RecordingHandler(final ExcelRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startSheet(final String sheetName, final List<String> columnNames) throws ExcelFileStructureException {
+            handler.startSheet(sheetName, columnNames);
+            this.sheetName = sheetName;
+            this.columnNames = List.copyOf(columnNames);
+            try {
+                file = Files.createTempFile("worksheet-to-db-", ".rows");
+                files.add(file);
+                writer = new SpillWriter(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Sheet " + sheetName + ": Failed to create spill file.", e);
+            }
+        }
+
+        @Override
+        public void row(final int rowNum, final List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+            handler.row(rowNum, values);
+            try {
+                writer.writeRow(rowNum, values);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Sheet " + sheetName + ": Failed to write spill file " + file + ".", e);
+            }
+        }
+
+        @Override
+        public void endSheet(final List<ColumnStats> columnStats) throws ExcelFileStructureException {
+            handler.endSheet(columnStats);
+            final long sizeInBytes;
+            try {
+                sizeInBytes = writer.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Sheet " + sheetName + ": Failed to write spill file " + file + ".", e);
+            }
+            writer = null;
+            sheets.add(new SpilledSheet(sheetName, columnNames, columnStats, file, sizeInBytes));
+        }
+
+        /** Closes file of the sheet, which was not finished (e.g. reading failed). */
+        void closeWriter() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // the file is deleted anyway, when the spill is closed
+                }
+                writer = null;
+            }
+        }
+    }
+
+    private static class SpillWriter implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long sizeInBytes;
+
+        SpillWriter(final Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void writeRow(final int rowNum, final List<ExcelValueWrapper> values) throws IOException {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(rowNum);
+            for (int columnNum = 0; columnNum < values.size(); ++columnNum) {
+                final ExcelValueWrapper value = values.get(columnNum);
+                switch (value.type()) {
+                    case EMPTY -> {
+                        ensureRemaining(1);
+                        buffer.put(EMPTY_TAG);
+                    }
+                    case STRING -> {
+                        final byte[] bytes = value.maybeStringValue().getBytes(StandardCharsets.UTF_8);
+                        ensureRemaining(1 + Integer.BYTES);
+                        buffer.put(STRING_TAG);
+                        buffer.putInt(bytes.length);
+                        writeBytes(bytes);
+                    }
+                    case DOUBLE -> {
+                        ensureRemaining(1 + Double.BYTES);
+                        buffer.put(DOUBLE_TAG);
+                        buffer.putDouble(value.doubleValue());
+                    }
+                    case DATE -> {
+                        final LocalDateTime date = value.maybeDateValue();
+                        ensureRemaining(1 + Long.BYTES + Integer.BYTES);
+                        buffer.put(DATE_TAG);
+                        buffer.putLong(date.toEpochSecond(ZoneOffset.UTC));
+                        buffer.putInt(date.getNano());
+                    }
+                    case BOOLEAN -> {
+                        ensureRemaining(1);
+                        buffer.put(value.booleanValue() ? TRUE_TAG : FALSE_TAG);
+                    }
+                }
+            }
+        }
+
+        /** Writes the rest of the buffer and closes the file. Returns size of the file. */
+        long finish() throws IOException {
+            flush();
+            close();
+            return sizeInBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /** Strings may be longer, than the buffer. */
+        private void writeBytes(final byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensureRemaining(final int bytesCount) throws IOException {
+            if (buffer.remaining() < bytesCount) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                sizeInBytes += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static class SpillReader implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private byte[] stringBytes = new byte[256];
+        private boolean endOfFile;
+
+        SpillReader(final Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip(); // empty
+        }
+
+        boolean hasMore() throws IOException {
+            return ensureAvailable(1, false);
+        }
+
+        byte readByte() throws IOException {
+            ensureAvailable(1, true);
+            return buffer.get();
+        }
+
+        int readInt() throws IOException {
+            ensureAvailable(Integer.BYTES, true);
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            ensureAvailable(Long.BYTES, true);
+            return buffer.getLong();
+        }
+
+        double readDouble() throws IOException {
+            ensureAvailable(Double.BYTES, true);
+            return buffer.getDouble();
+        }
+
+        String readString() throws IOException {
+            final int length = readInt();
+            if (length > stringBytes.length) {
+                stringBytes = new byte[Math.max(length, 2 * stringBytes.length)];
+            }
+            int offset = 0;
+            while (offset < length) {
+                ensureAvailable(1, true);
+                final int chunkLength = Math.min(buffer.remaining(), length - offset);
+                buffer.get(stringBytes, offset, chunkLength);
+                offset += chunkLength;
+            }
+            return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /** Returns false, if file ends before {@code bytesCount} bytes and it is not {@code required}. */
+        private boolean ensureAvailable(final int bytesCount, final boolean required) throws IOException {
+            while (buffer.remaining() < bytesCount && !endOfFile) {
+                buffer.compact();
+                endOfFile = channel.read(buffer) == -1;
+                buffer.flip();
+            }
+            if (buffer.remaining() >= bytesCount) {
+                return true;
+            }
+            if (required) {
+                throw new EOFException("Unexpected end of spill file.");
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content of one worksheet stored column by column.
+ *
+ * Each column keeps values of only one type in primitive form: {@code double[]} for numbers,
+ * {@code BitSet} for booleans, {@code long[]} (milliseconds since epoch in UTC) for dates and
+ * {@code String[]} for strings. Presence of the value (i.e. non-empty cell) is tracked with
+ * separate bitmap. This is much more compact, than keeping {@link ExcelValueWrapper} for each cell.
+ *
+ * String columns are dictionary-encoded: each distinct string is stored once, and cells keep
+ * 16-bit codes. Columns with more than {@value #MAX_DICTIONARY_SIZE} distinct strings are
+ * converted to plain {@code String[]}.
+ *
+ * As a consequence, all non-empty cells of one column must have the same type, and this is
+ * checked, when rows are added.
+ */
+public class SheetData {
+
+    private static final int INITIAL_CAPACITY = 16;
+    static final int MAX_DICTIONARY_SIZE = Character.MAX_VALUE + 1;
+
+    private final String sheetName;
+    private final List<String> columnNames;
+    private final List<Column> columns;
+    private int rowCount;
+    private List<ColumnStats> columnStats;
+
+    public SheetData(final String sheetName, final List<String> columnNames) {
+        this.sheetName = sheetName;
+        this.columnNames = List.copyOf(columnNames);
+        this.columns = new ArrayList<>(columnNames.size());
+        for (int columnNum = 0; columnNum < columnNames.size(); ++columnNum) {
+            columns.add(new Column());
+        }
+    }
+
+    /** Size of {@code values} must be equal to the number of columns. */
+    public void appendRow(final List<ExcelValueWrapper> values) throws ExcelFileStructureException {
+        if (values.size() != columns.size()) {
+            throw new IllegalArgumentException("Sheet " + sheetName + ": Row has " + values.size() +
+                    " values, but sheet has " + columns.size() + " columns.");
+        }
+        for (int columnNum = 0; columnNum < columns.size(); ++columnNum) {
+            final ExcelValueWrapper value = values.get(columnNum);
+            final Column column = columns.get(columnNum);
+            if (!column.accepts(value.type())) {
+                throw new ExcelFileStructureException("Sheet " + sheetName + ": ERROR: column " + columnNames.get(columnNum) +
+                        " has cells of more than one type in it. It is not allowed.");
+            }
+        }
+        for (int columnNum = 0; columnNum < columns.size(); ++columnNum) {
+            columns.get(columnNum).set(rowCount, values.get(columnNum));
+        }
+        ++rowCount;
+    }
+
+    public String sheetName() {
+        return sheetName;
+    }
+
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    public int columnsCount() {
+        return columns.size();
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /** EMPTY, if all cells of the column are empty. */
+    public ExcelValueWrapper.Type columnType(final int columnNum) {
+        return columns.get(columnNum).type;
+    }
+
+    /** Statistics are calculated by the reader (see {@link ExcelRowHandler#endSheet(List)}). */
+    public ColumnStats columnStats(final int columnNum) {
+        if (columnStats == null) {
+            throw new IllegalStateException("Sheet " + sheetName + ": Column statistics are not yet available. " +
+                    "They are set, when the sheet is completely read.");
+        }
+        return columnStats.get(columnNum);
+    }
+
+    void setColumnStats(final List<ColumnStats> columnStats) {
+        if (columnStats.size() != columns.size()) {
+            throw new IllegalArgumentException("Sheet " + sheetName + ": Statistics are provided for " + columnStats.size() +
+                    " columns, but sheet has " + columns.size() + " columns.");
+        }
+        this.columnStats = List.copyOf(columnStats);
+    }
+
+    public boolean isEmpty(final int columnNum, final int rowNum) {
+        checkRowNum(rowNum);
+        return !columns.get(columnNum).present.get(rowNum);
+    }
+
+    /** Check with {@code isEmpty} first. */
+    public double doubleValue(final int columnNum, final int rowNum) {
+        checkRowNum(rowNum);
+        return columns.get(columnNum).doubles[rowNum];
+    }
+
+    /** Check with {@code isEmpty} first. */
+    public boolean booleanValue(final int columnNum, final int rowNum) {
+        checkRowNum(rowNum);
+        return columns.get(columnNum).booleans.get(rowNum);
+    }
+
+    /** Milliseconds since epoch in UTC. Check with {@code isEmpty} first. */
+    public long dateEpochMillis(final int columnNum, final int rowNum) {
+        checkRowNum(rowNum);
+        return columns.get(columnNum).dates[rowNum];
+    }
+
+    /** Check with {@code isEmpty} first. */
+    public LocalDateTime dateValue(final int columnNum, final int rowNum) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(dateEpochMillis(columnNum, rowNum)), ZoneOffset.UTC);
+    }
+
+    /** {@code null} for empty cells. */
+    public String stringValue(final int columnNum, final int rowNum) {
+        checkRowNum(rowNum);
+        return columns.get(columnNum).stringValue(rowNum);
+    }
+
+    /** Number of distinct strings in dictionary-encoded string column or -1, if the column is not encoded. */
+    public int dictionarySize(final int columnNum) {
+        final Column column = columns.get(columnNum);
+        return column.dictionary == null ? -1 : column.dictionary.size();
+    }
+
+    /** Creates new wrapper object (except empty and boolean values), so should not be used on hot paths. */
+    public ExcelValueWrapper value(final int columnNum, final int rowNum) {
+        if (isEmpty(columnNum, rowNum)) {
+            return ExcelValueWrapper.EMPTY;
+        }
+        return switch (columnType(columnNum)) {
+            case DOUBLE -> ExcelValueWrapper.of(doubleValue(columnNum, rowNum));
+            case BOOLEAN -> ExcelValueWrapper.of(booleanValue(columnNum, rowNum));
+            case DATE -> ExcelValueWrapper.of(dateValue(columnNum, rowNum));
+            case STRING -> ExcelValueWrapper.of(stringValue(columnNum, rowNum));
+            case EMPTY -> ExcelValueWrapper.EMPTY;
+        };
+    }
+
+    private void checkRowNum(final int rowNum) {
+        if (rowNum < 0 || rowNum >= rowCount) {
+            throw new IndexOutOfBoundsException("Sheet " + sheetName + ": Row num " + rowNum +
+                    " is out of range [0, " + rowCount + ").");
+        }
+    }
+
+    private static class Column {
+
+        private ExcelValueWrapper.Type type = ExcelValueWrapper.Type.EMPTY;
+        private final BitSet present = new BitSet();
+        private double[] doubles;
+        private long[] dates;
+        private BitSet booleans;
+        // String column is either dictionary-encoded (codes + dictionary) or plain (strings).
+        private char[] codes;
+        private List<String> dictionary;
+        private Map<String, Integer> dictionaryCodes;
+        private String[] strings;
+
+        boolean accepts(final ExcelValueWrapper.Type valueType) {
+            return valueType == ExcelValueWrapper.Type.EMPTY
+                    || type == ExcelValueWrapper.Type.EMPTY
+                    || type == valueType;
+        }
+
+        void set(final int rowNum, final ExcelValueWrapper value) {
+            if (value.type() == ExcelValueWrapper.Type.EMPTY) {
+                // Arrays still must be large enough to be indexed with any row num
+                ensureCapacity(rowNum + 1);
+                return;
+            }
+            type = value.type();
+            ensureCapacity(rowNum + 1);
+            present.set(rowNum);
+            switch (type) {
+                case DOUBLE -> doubles[rowNum] = value.doubleValue();
+                case BOOLEAN -> booleans.set(rowNum, value.booleanValue());
+                case DATE -> dates[rowNum] = value.maybeDateValue().toInstant(ZoneOffset.UTC).toEpochMilli();
+                case STRING -> setString(rowNum, value.maybeStringValue());
+                case EMPTY -> throw new IllegalStateException("EMPTY values are handled above.");
+            }
+        }
+
+        String stringValue(final int rowNum) {
+            if (strings != null) {
+                return strings[rowNum];
+            }
+            if (codes == null || !present.get(rowNum)) {
+                return null;
+            }
+            return dictionary.get(codes[rowNum]);
+        }
+
+        private void setString(final int rowNum, final String value) {
+            if (strings != null) {
+                strings[rowNum] = value;
+                return;
+            }
+            Integer code = dictionaryCodes.get(value);
+            if (code == null) {
+                if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+                    decodeStrings();
+                    strings[rowNum] = value;
+                    return;
+                }
+                code = dictionary.size();
+                dictionary.add(value);
+                dictionaryCodes.put(value, code);
+            }
+            codes[rowNum] = (char) code.intValue();
+        }
+
+        /** Too many distinct strings: codes would not fit into 16 bits. */
+        private void decodeStrings() {
+            strings = new String[codes.length];
+            for (int rowNum = present.nextSetBit(0); rowNum >= 0 && rowNum < codes.length; rowNum = present.nextSetBit(rowNum + 1)) {
+                strings[rowNum] = dictionary.get(codes[rowNum]);
+            }
+            codes = null;
+            dictionary = null;
+            dictionaryCodes = null;
+        }
+
+        private void ensureCapacity(final int minCapacity) {
+            switch (type) {
+                case DOUBLE -> doubles = grow(doubles, minCapacity);
+                case DATE -> dates = grow(dates, minCapacity);
+                case BOOLEAN -> {
+                    if (booleans == null) {
+                        booleans = new BitSet();
+                    }
+                }
+                case STRING -> {
+                    if (strings != null) {
+                        strings = grow(strings, minCapacity);
+                    } else {
+                        if (dictionary == null) {
+                            dictionary = new ArrayList<>();
+                            dictionaryCodes = new HashMap<>();
+                        }
+                        codes = grow(codes, minCapacity);
+                    }
+                }
+                case EMPTY -> { /* nothing is stored */ }
+            }
+        }
+
+        private static double[] grow(final double[] array, final int minCapacity) {
+            if (array == null) {
+                return new double[newCapacity(0, minCapacity)];
+            }
+            return array.length >= minCapacity ? array : Arrays.copyOf(array, newCapacity(array.length, minCapacity));
+        }
+
+        private static long[] grow(final long[] array, final int minCapacity) {
+            if (array == null) {
+                return new long[newCapacity(0, minCapacity)];
+            }
+            return array.length >= minCapacity ? array : Arrays.copyOf(array, newCapacity(array.length, minCapacity));
+        }
+
+        private static char[] grow(final char[] array, final int minCapacity) {
+            if (array == null) {
+                return new char[newCapacity(0, minCapacity)];
+            }
+            return array.length >= minCapacity ? array : Arrays.copyOf(array, newCapacity(array.length, minCapacity));
+        }
+
+        private static String[] grow(final String[] array, final int minCapacity) {
+            if (array == null) {
+                return new String[newCapacity(0, minCapacity)];
+            }
+            return array.length >= minCapacity ? array : Arrays.copyOf(array, newCapacity(array.length, minCapacity));
+        }
+
+        private static int newCapacity(final int oldCapacity, final int minCapacity) {
+            return Math.max(Math.max(INITIAL_CAPACITY, oldCapacity * 2), minCapacity);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps fingerprints of successfully imported worksheets (see {@link RowSource#sheetFingerprints()})
+ * in DB table {@value #SHEET_FINGERPRINTS_TABLE}, so that worksheets, which did not change since
+ * the last import, can be skipped.
+ */
+class SheetFingerprintStore {
+
+    static final String SHEET_FINGERPRINTS_TABLE = "worksheet_to_db_sheet_fingerprints";
+
+    /** Table name is {@code null}, if the sheet did not have any data. */
+    record StoredFingerprint(String tableName, String fingerprint) {}
+
+    private final ConnectionPool connectionPool;
+
+    SheetFingerprintStore(final ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /** Key is sheet name. */
+    Map<String, StoredFingerprint> load() throws SQLException {
+        final Map<String, StoredFingerprint> fingerprints = new HashMap<>();
+        final Connection connection = connectionPool.acquire();
+        try {
+            if (SqlDbTableImporter.findExistingTableName(connection, SHEET_FINGERPRINTS_TABLE) == null) {
+                return fingerprints;
+            }
+            try (
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(
+                            "SELECT sheet_name, table_name, fingerprint FROM " + SHEET_FINGERPRINTS_TABLE)
+            ) {
+                while (resultSet.next()) {
+                    fingerprints.put(resultSet.getString(1), new StoredFingerprint(resultSet.getString(2), resultSet.getString(3)));
+                }
+            }
+        } finally {
+            connectionPool.release(connection);
+        }
+        return fingerprints;
+    }
+
+    /** Key is sheet name. Existing fingerprints of the same sheets are replaced. */
+    void save(final Map<String, StoredFingerprint> fingerprints) throws SQLException {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        final Connection connection = connectionPool.acquire();
+        try {
+            connection.setAutoCommit(false);
+            if (SqlDbTableImporter.findExistingTableName(connection, SHEET_FINGERPRINTS_TABLE) == null) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("CREATE TABLE " + SHEET_FINGERPRINTS_TABLE + " (" +
+                            "sheet_name VARCHAR(255) NOT NULL PRIMARY KEY, " +
+                            "table_name VARCHAR(255), " +
+                            "fingerprint VARCHAR(1000) NOT NULL)");
+                }
+            }
+            try (
+                    PreparedStatement deleteStatement = connection.prepareStatement(
+                            "DELETE FROM " + SHEET_FINGERPRINTS_TABLE + " WHERE sheet_name = ?");
+                    PreparedStatement insertStatement = connection.prepareStatement(
+                            "INSERT INTO " + SHEET_FINGERPRINTS_TABLE + " (sheet_name, table_name, fingerprint) VALUES (?, ?, ?)")
+            ) {
+                for (final Map.Entry<String, StoredFingerprint> entry : fingerprints.entrySet()) {
+                    deleteStatement.setString(1, entry.getKey());
+                    deleteStatement.addBatch();
+                    insertStatement.setString(1, entry.getKey());
+                    insertStatement.setString(2, entry.getValue().tableName());
+                    insertStatement.setString(3, entry.getValue().fingerprint());
+                    insertStatement.addBatch();
+                }
+                deleteStatement.executeBatch();
+                insertStatement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+}
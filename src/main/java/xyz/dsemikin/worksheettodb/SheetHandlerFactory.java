@@ -0,0 +1,14 @@
+package xyz.dsemikin.worksheettodb;
+
+/**
+ * Creates separate {@link ExcelRowHandler} for each worksheet, so that worksheets can be
+ * read in parallel. Each created handler receives calls only for its own worksheet
+ * (or no calls at all, if the worksheet has no data), always from one thread.
+ *
+ * Handlers are requested in the order of the worksheets in the file.
+ */
+@FunctionalInterface
+public interface SheetHandlerFactory {
+
+    ExcelRowHandler handlerFor(String sheetName);
+}
@@ -0,0 +1,25 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Import of one or more worksheets failed. Other worksheets may have been imported successfully.
+ * Original exceptions are available per sheet and also as suppressed exceptions.
+ */
+public class SheetImportException extends Exception {
+
+    private final Map<String, Exception> failures;
+
+    public SheetImportException(final Map<String, Exception> failures) {
+        super("Import of " + failures.size() + " sheet(s) failed: " + failures.keySet());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        failures.values().forEach(this::addSuppressed);
+    }
+
+    /** Key is sheet name, value is the reason of the failure. */
+    public Map<String, Exception> failures() {
+        return failures;
+    }
+}
@@ -0,0 +1,82 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs import tasks of the worksheets on the pool of {@code parallelism} threads.
+ *
+ * Tasks are independent: failure of one of them does not stop other ones. All the failures
+ * are reported together by {@code awaitAll}.
+ */
+class SheetTaskRunner implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SheetTaskRunner.class);
+
+    interface SheetTask {
+        void run() throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final Map<String, Future<?>> futures = new LinkedHashMap<>();
+
+    SheetTaskRunner(final int parallelism) {
+        final AtomicInteger threadNum = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "sheet-writer-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** May be called from different threads. */
+    synchronized void submit(final String sheetName, final SheetTask task) {
+        futures.put(sheetName, executor.submit(() -> {
+            task.run();
+            return null;
+        }));
+    }
+
+    /** Waits for all submitted tasks. */
+    void awaitAll() throws SheetImportException {
+        final Map<String, Future<?>> submittedFutures;
+        synchronized (this) {
+            submittedFutures = new LinkedHashMap<>(futures);
+            futures.clear();
+        }
+        final Map<String, Exception> failures = new LinkedHashMap<>();
+        for (final var futureEntry : submittedFutures.entrySet()) {
+            final String sheetName = futureEntry.getKey();
+            try {
+                futureEntry.getValue().get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                LOGGER.error("Sheet " + sheetName + ": Import failed.", cause);
+                failures.put(sheetName, (Exception) cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for import of sheet " + sheetName + ".");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new SheetImportException(failures);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
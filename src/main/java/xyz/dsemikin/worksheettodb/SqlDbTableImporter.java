@@ -3,262 +3,623 @@ package xyz.dsemikin.worksheettodb;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
-import java.sql.Types;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 public class SqlDbTableImporter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SqlDbTableImporter.class);
-    private static final Integer NON_STRING_FIELD_LENGTH_PLACEHOLDER = -4455; // just random number, which is invalid length
 
     public static void importTables(
             final String connectionString,
             final Properties connectionProperties,
-            final Map<String, List<Map<String, ExcelValueWrapper>>> data
-    ) throws ExcelFileStructureException, SQLException {
+            final Map<String, SheetData> data
+    ) throws SheetImportException {
+        importTables(connectionString, connectionProperties, data, new ImportOptions());
+    }
+
+    /**
+     * Imports data, which is already loaded into memory by {@link ExcelFileReader#readExcelFile(java.nio.file.Path)}.
+     *
+     * Sheets are imported in parallel (see {@link ImportOptions#parallelism()}). Failure of one sheet
+     * does not stop import of other ones. All failures are reported with {@link SheetImportException}.
+     */
+    public static void importTables(
+            final String connectionString,
+            final Properties connectionProperties,
+            final Map<String, SheetData> data,
+            final ImportOptions options
+    ) throws SheetImportException {
+        importTables(connectionString, connectionProperties, data, options, new ImportMetrics());
+    }
 
-        if (data.isEmpty()) {
+    /** Same as above, but progress of the import is recorded in {@code metrics}, while it runs. */
+    public static void importTables(
+            final String connectionString,
+            final Properties connectionProperties,
+            final Map<String, SheetData> data,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws SheetImportException {
+
+        final TableDefinitionsCollector collector = new TableDefinitionsCollector();
+        final Map<String, TableDefinition> tableDefinitions = calculateTableDefinitions(data, collector);
+        if (tableDefinitions.isEmpty()) {
             LOGGER.info("Provided data is empty. No DB modification will be done.");
             return;
         }
 
+        try (
+                ConnectionPool connectionPool = new ConnectionPool(connectionString, connectionProperties, connectionPoolSize(options));
+                SheetTaskRunner taskRunner = new SheetTaskRunner(options.parallelism())
+        ) {
+            final TableIndexes tableIndexes = new TableIndexes(connectionPool, options);
+            RowSink.Factory sinkFactory = tableIndexes.wrap(createSinkFactory(connectionString, connectionPool, options, metrics, null));
+            if (lookupTablesEnabled(options)) {
+                sinkFactory = new LookupTables(collector, connectionPool, options).wrap(sinkFactory);
+            }
+            final RowSink.Factory tableSinkFactory = sinkFactory;
+            for (final TableDefinition tableDefinition : tableDefinitions.values()) {
+                final SheetData sheetData = data.get(tableDefinition.sheetName());
+                taskRunner.submit(tableDefinition.sheetName(), () -> {
+                    try (RowSink sink = tableSinkFactory.createSink()) {
+                        try {
+                            sink.startTable(tableDefinition);
+                            for (int rowNum = 0; rowNum < sheetData.rowCount(); ++rowNum) {
+                                sink.row(sheetData, rowNum);
+                            }
+                            sink.endTable();
+                        } catch (Exception e) {
+                            sink.abortTable();
+                            throw e;
+                        }
+                    }
+                });
+            }
+            try {
+                taskRunner.awaitAll();
+            } finally {
+                tableIndexes.buildIndexes();
+            }
+        }
+    }
+
+    /**
+     * Imports data in streaming mode.
+     *
+     * By default source is read twice: first time to detect table definitions (column types and
+     * lengths), second time to insert data. During the second pass reading and inserting run in
+     * parallel (see {@link RowPipeline}), and only limited number of rows is kept in memory.
+     *
+     * If {@link ImportOptions#sampleRows()} is set, source is read only once, and table definitions
+     * are detected from the first rows of each sheet.
+     *
+     * If {@link ImportOptions#importPlans()} is set, sheets, whose layout did not change since the last
+     * import, are loaded with the stored table definitions without detection of types (see {@link ImportPlans}).
+     *
+     * If {@link ImportOptions#resumable()} is set, progress of each table is recorded, and the import,
+     * which failed, is continued from the last committed row of each unfinished table next time
+     * (see {@link ImportCheckpoints}).
+     *
+     * If {@link ImportOptions#skipUnchanged()} is set, sheets, whose fingerprints did not change
+     * since the last successful import (see {@link SheetFingerprintStore}), are not read at all.
+     * It requires {@link ImportOptions#incremental()}, since tables of the sheets, which changed, exist.
+     *
+     * Indexes from {@link ImportOptions#indexHints()} are created after all the sheets are loaded
+     * (see {@link TableIndexes}).
+     */
+    public static void importTables(
+            final String connectionString,
+            final Properties connectionProperties,
+            final RowSource source,
+            final ImportOptions options
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        importTables(connectionString, connectionProperties, source, options, new ImportMetrics());
+    }
+
+    /** Same as above, but progress of the import is recorded in {@code metrics}, while it runs. */
+    public static void importTables(
+            final String connectionString,
+            final Properties connectionProperties,
+            final RowSource source,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+
         // - create table
         //   - table name - simplify sheet names
         //   - column names - simplify column names
         //   - column types - detect from data format
 
-        final List<String> sheetNames = new ArrayList<>(data.keySet());
-        final List<String> tableNames = generateUniqueNamesForDb(sheetNames);
-        assert sheetNames.size() == tableNames.size();
-
-        final TableDefinitions tableDefinitions = calculateTableDefinitions(data, sheetNames, tableNames);
-
-        final Map<String, String> createTableStatements = generateCreateTableStatements(tableNames, tableDefinitions);
-        final Map<String, String> insertStatements = generateInsertStatements(tableNames, tableDefinitions);
+        try (ConnectionPool connectionPool = new ConnectionPool(connectionString, connectionProperties, connectionPoolSize(options))) {
+            importTables(connectionString, connectionPool, source, options, metrics);
+        }
+    }
 
+    /**
+     * Same as above, but connections are taken from {@code connectionPool}, which stays open, so that
+     * connections can be reused by the next imports (see {@link ImportDaemon}).
+     */
+    static void importTables(
+            final String connectionString,
+            final ConnectionPool connectionPool,
+            final RowSource source,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        options.validate();
+        final ImportCheckpoints checkpoints = loadCheckpoints(connectionPool, source, options, metrics);
+        final RowSink.Factory sinkFactory = createSinkFactory(connectionString, connectionPool, options, metrics, checkpoints);
+        if (!options.skipUnchanged()) {
+            importTables(source, createCollector(Set.of(), checkpoints), connectionPool, sinkFactory, checkpoints, options, metrics);
+            return;
+        }
 
-        try (Connection connection = DriverManager.getConnection(connectionString, connectionProperties)) {
-            for (int sheetNum = 0; sheetNum < sheetNames.size(); ++ sheetNum) {
-                final String sheetName = sheetNames.get(sheetNum);
-                final String tableName = tableNames.get(sheetNum);
+        final Map<String, String> fingerprints = source.sheetFingerprints();
+        if (fingerprints.isEmpty()) {
+            LOGGER.info("Sheet fingerprints are not supported for the source. All sheets will be imported.");
+            importTables(source, createCollector(Set.of(), checkpoints), connectionPool, sinkFactory, checkpoints, options, metrics);
+            return;
+        }
 
-                List<Map<String, ExcelValueWrapper>> sheetData = data.get(sheetName);
-                assert sheetData.size() > 0;
-                List<String> fieldNames = getFieldNames(sheetData);
+        final SheetFingerprintStore fingerprintStore = new SheetFingerprintStore(connectionPool);
+        Map<String, SheetFingerprintStore.StoredFingerprint> storedFingerprints;
+        try {
+            storedFingerprints = fingerprintStore.load();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to load sheet fingerprints. All sheets will be imported.", e);
+            storedFingerprints = Map.of();
+        }
 
-                final String createTableStatement = createTableStatements.get(tableName);
-                LOGGER.info("Create table statement: ");
-                LOGGER.info(createTableStatement);
-                try (Statement statement = connection.createStatement()) {
-                    statement.executeUpdate(createTableStatement);
+        final Set<String> unchangedSheets = new HashSet<>();
+        final Set<String> reservedTableNames = new HashSet<>();
+        for (final Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            final SheetFingerprintStore.StoredFingerprint stored = storedFingerprints.get(entry.getKey());
+            if (stored != null && stored.fingerprint().equals(entry.getValue())) {
+                LOGGER.info("Sheet " + entry.getKey() + " did not change since last import. Skipping.");
+                unchangedSheets.add(entry.getKey());
+                if (stored.tableName() != null) {
+                    // Other sheets must not take the name, so that they get the same names, as last time.
+                    reservedTableNames.add(stored.tableName());
                 }
+            }
+        }
 
-                final String insertStatement = insertStatements.get(tableName);
-                LOGGER.info("Inset data statement: ");
-                LOGGER.info(insertStatement);
-                try (PreparedStatement statement = connection.prepareStatement(insertStatement)) {
-                    for (final var rowData : sheetData) {
-                        final int columnsCount = tableDefinitions.columnsCount(tableName);
-                        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
-                            final String fieldName = fieldNames.get(columnNum);
-                            ExcelValueWrapper.Type columnType = tableDefinitions.columnTypes(tableName).get(columnNum);
-                            ExcelValueWrapper value = rowData.get(fieldName);
-                            final int parameterIndex = columnNum + 1; // parameterIndex is 1-based
-                            switch (columnType) {
-                                case DOUBLE  -> {
-                                    if (value.maybeDoubleValue() == null) {
-                                        statement.setNull(parameterIndex, Types.DOUBLE);
-                                    } else {
-                                        statement.setDouble(parameterIndex, value.maybeDoubleValue());
-                                    }
-                                }
-                                case DATE    -> statement.setTimestamp(parameterIndex, value.maybeDateValue() == null ? null : Timestamp.valueOf(value.maybeDateValue()));
-                                case BOOLEAN -> {
-                                    if (value.maybeBooleanValue() == null) {
-                                        statement.setNull(parameterIndex, Types.BOOLEAN);
-                                    } else {
-                                        statement.setBoolean(parameterIndex, value.maybeBooleanValue());
-                                    }
-                                }
-                                case STRING  -> statement.setString(parameterIndex, value.maybeStringValue());
-                                case EMPTY   -> statement.setString(parameterIndex, ""); // by convention we use empty string
-                                default -> throw new IllegalStateException(
-                                        "Sheet: " + sheetName + ", column " +
-                                                tableDefinitions.columnNames(tableName).get(columnNum) +
-                                                "Unknown column type: " + columnType
-                                );
-                            }
-                        }
-                        statement.executeUpdate();
-                    }
-                }
+        final TableDefinitionsCollector collector = createCollector(reservedTableNames, checkpoints);
+        SheetImportException importFailure = null;
+        try {
+            importTables(source.withSheetFilter(sheetName -> !unchangedSheets.contains(sheetName)), collector, connectionPool, sinkFactory, checkpoints, options, metrics);
+        } catch (SheetImportException e) {
+            importFailure = e;
+        }
+
+        final Map<String, String> tableNames = collector.tableNames();
+        final Map<String, SheetFingerprintStore.StoredFingerprint> importedFingerprints = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            final String sheetName = entry.getKey();
+            if (!unchangedSheets.contains(sheetName) && (importFailure == null || !importFailure.failures().containsKey(sheetName))) {
+                importedFingerprints.put(sheetName, new SheetFingerprintStore.StoredFingerprint(tableNames.get(sheetName), entry.getValue()));
             }
         }
+        try {
+            fingerprintStore.save(importedFingerprints);
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to save sheet fingerprints. Unchanged sheets will be imported again next time.", e);
+        }
+
+        if (importFailure != null) {
+            throw importFailure;
+        }
     }
 
-    private static ArrayList<String> getFieldNames(List<Map<String, ExcelValueWrapper>> sheetData) {
-        return new ArrayList<>(sheetData.get(0).keySet());
+    private static void importTables(
+            final RowSource source,
+            final TableDefinitionsCollector collector,
+            final ConnectionPool connectionPool,
+            final RowSink.Factory sinkFactory,
+            final ImportCheckpoints checkpoints,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        final TableIndexes tableIndexes = new TableIndexes(connectionPool, options);
+        try {
+            if (checkpoints == null) {
+                loadTables(source, collector, connectionPool, tableIndexes.wrap(sinkFactory), false, options, metrics);
+            } else {
+                loadTables(checkpoints.unfinishedRows(source), collector, connectionPool,
+                        tableIndexes.wrap(checkpoints.wrap(sinkFactory)), true, options, metrics);
+                // Progress is needed only to resume the import, which failed.
+                checkpoints.clear();
+            }
+        } finally {
+            // Tables, which are loaded, get their indexes, even if other tables failed.
+            tableIndexes.buildIndexes();
+        }
     }
 
-    private static Map<String, String> generateInsertStatements(
-            final List<String> tableNames,
-            final TableDefinitions tableDefinitions
+    /** Resumed tables keep their names, and other sheets do not take them. */
+    private static TableDefinitionsCollector createCollector(
+            final Set<String> reservedTableNames,
+            final ImportCheckpoints checkpoints
     ) {
-        final Map<String, String> insertStatements = new HashMap<>();
-        for (final String tableName : tableNames) {
-            final List<String> columnNames = tableDefinitions.columnNames(tableName);
-            final int columnsCount = tableDefinitions.columnsCount(tableName);
-
-            final StringBuilder insertStatement = new StringBuilder();
-            insertStatement.append("INSERT INTO ").append(tableName).append(" ( ");
-            for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
-                insertStatement.append(columnNames.get(columnNum));
-                if (columnNum != columnsCount - 1) {
-                    insertStatement.append(", ");
-                }
+        if (checkpoints == null) {
+            return new TableDefinitionsCollector(reservedTableNames);
+        }
+        return new TableDefinitionsCollector(reservedTableNames, checkpoints.storedTableNames());
+    }
+
+    /** {@code null}, if progress of the import is not recorded (see {@link ImportOptions#resumable()}). */
+    private static ImportCheckpoints loadCheckpoints(
+            final ConnectionPool connectionPool,
+            final RowSource source,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws IOException {
+        if (!options.resumable()) {
+            return null;
+        }
+        if (options.incremental()) {
+            LOGGER.warn("Incremental import can be repeated after failure without checkpoints. Progress will not be recorded.");
+            return null;
+        }
+        final String sourceIdentity = source.contentIdentity();
+        if (sourceIdentity == null) {
+            LOGGER.warn("Source can not be identified. Its progress is shared with other sources, which can not be identified, so " +
+                    "it will not be checked, that interrupted import is resumed with the same source.");
+        }
+        final ImportCheckpoints checkpoints = new ImportCheckpoints(connectionPool, metrics, sourceIdentity);
+        try {
+            checkpoints.load();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to load import progress. Import will not be resumable.", e);
+            return null;
+        }
+        return checkpoints;
+    }
+
+    private static void loadTables(
+            final RowSource source,
+            final TableDefinitionsCollector collector,
+            final ConnectionPool connectionPool,
+            final RowSink.Factory sinkFactory,
+            final boolean resumable,
+            final ImportOptions options,
+            final ImportMetrics metrics
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        // Only the pass, which feeds the DB, is metered, so that rows are not counted twice.
+        final RowSource meteredSource = new MeteredRowSource(source, metrics);
+        boolean lookupTablesEnabled = lookupTablesEnabled(options);
+        if (resumable) {
+            // Continued tables must get the same columns, as they got, when they were created.
+            if (options.sampleRows() > 0 || options.importPlans()) {
+                LOGGER.warn("Column types are detected from all rows in resumable import. Sample rows and import plans are ignored.");
             }
-            insertStatement.append(" ) VALUES ( " );
-            for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
-                insertStatement.append("?");
-                if (columnNum != columnsCount - 1) {
-                    insertStatement.append(", ");
-                }
+            if (lookupTablesEnabled) {
+                LOGGER.warn("Lookup tables are not supported in resumable import. They will not be created.");
+                lookupTablesEnabled = false;
+            }
+        } else if (options.importPlans()) {
+            loadTablesWithPlans(meteredSource, source, collector, connectionPool, sinkFactory, options);
+            return;
+        }
+        if (!resumable && options.sampleRows() > 0) {
+            if (lookupTablesEnabled) {
+                // All distinct values must be known before the table is created.
+                LOGGER.warn("Lookup tables are not supported, when column types are detected from samples. They will not be created.");
             }
-            insertStatement.append(")");
-            insertStatements.put(tableName, insertStatement.toString());
+            // Tables are created before their sheets are read completely, so tables of failed sheets are dropped.
+            RowPipeline.runWithSampling(meteredSource, collector, new CreatedTables(connectionPool).wrap(sinkFactory), options);
+            return;
+        }
+
+        try (RowSpill spill = options.spillRows() ? new RowSpill() : null) {
+            final long schemaDetectionStartNanos = System.nanoTime();
+            if (spill == null) {
+                source.readRows(collector);
+            } else {
+                spill.record(source, collector);
+                LOGGER.info("Rows are spilled to temporary files (" + spill.sizeInBytes() + " bytes).");
+            }
+            metrics.schemaDetectionFinished(System.nanoTime() - schemaDetectionStartNanos);
+            final Map<String, TableDefinition> tableDefinitions = collector.tableDefinitions();
+            if (tableDefinitions.isEmpty()) {
+                LOGGER.info("Provided data is empty. No DB modification will be done.");
+                return;
+            }
+            final RowSink.Factory tableSinkFactory = lookupTablesEnabled
+                    ? new LookupTables(collector, connectionPool, options).wrap(sinkFactory)
+                    : sinkFactory;
+            // With spill the second pass reads the temporary files instead of parsing the source again.
+            final RowSource rowsSource = spill == null ? meteredSource : new MeteredRowSource(spill, metrics);
+            RowPipeline.run(rowsSource, tableDefinitions, tableSinkFactory, options);
         }
-        return insertStatements;
     }
 
-    private static Map<String, String> generateCreateTableStatements(
-            final List<String> tableNames,
-            final TableDefinitions tableDefinitions
+    /**
+     * Sheets, which have import plans, are loaded during the first read. Only the sheets, whose
+     * types had to be detected from all rows, are read again (see {@link RowPipeline#runWithPlans}).
+     * Rows of the first read are metered, so rows of the second one are not counted again.
+     */
+    private static void loadTablesWithPlans(
+            final RowSource meteredSource,
+            final RowSource source,
+            final TableDefinitionsCollector collector,
+            final ConnectionPool connectionPool,
+            final RowSink.Factory sinkFactory,
+            final ImportOptions options
+    ) throws ExcelFileStructureException, IOException, SheetImportException {
+        if (lookupTablesEnabled(options)) {
+            // Planned tables are created before distinct values of their columns are known.
+            LOGGER.warn("Lookup tables are not supported with import plans. They will not be created.");
+        }
+        if (options.spillRows() && options.sampleRows() == 0) {
+            LOGGER.info("Rows are not spilled with import plans. Sheets without plans are read from the source again.");
+        }
+        final ImportPlans plans = new ImportPlans(connectionPool);
+        plans.load();
+        final RowSink.Factory planningSinkFactory = plans.wrap(sinkFactory);
+        try {
+            final Map<String, TableDefinition> detectedDefinitions =
+                    RowPipeline.runWithPlans(meteredSource, collector, plans, planningSinkFactory, options);
+            if (!detectedDefinitions.isEmpty()) {
+                RowPipeline.run(source.withSheetFilter(detectedDefinitions::containsKey), detectedDefinitions, planningSinkFactory, options);
+            }
+        } finally {
+            // Plans of the sheets, which are loaded, are kept, even if other sheets failed.
+            plans.save();
+        }
+    }
+
+    /**
+     * Chooses the fastest way to load rows, which is supported by the database
+     * (see {@link ImportOptions#bulkLoad()}). Incremental import is always done with
+     * INSERT/UPDATE statements. Rows of each sheet are written in parallel chunks, if
+     * {@link ImportOptions#insertParallelism()} is greater than 1 (see {@link ChunkedRowSink}).
+     * Sinks record progress with {@code checkpoints}, unless they are {@code null}.
+     */
+    static RowSink.Factory createSinkFactory(
+            final String connectionString,
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics,
+            final ImportCheckpoints checkpoints
+    ) {
+        if (options.incremental()) {
+            if (options.insertParallelism() > 1) {
+                // Rows of the sheet are matched with stored row hashes, which are loaded by one sink.
+                LOGGER.warn("Parallel insert of rows of one sheet is not supported in incremental import. Each sheet will be written over one connection.");
+            }
+            return () -> new IncrementalRowSink(connectionPool, options, metrics);
+        }
+        final RowSink.Factory sinkFactory = createLoadingSinkFactory(connectionString, connectionPool, options, metrics, checkpoints);
+        if (options.insertParallelism() == 1) {
+            return sinkFactory;
+        }
+        if (checkpoints != null) {
+            // Chunks are committed in arbitrary order, so there is no row, before which all rows are committed.
+            LOGGER.warn("Parallel insert of rows of one sheet is not supported in resumable import. Each sheet will be written over one connection.");
+            return sinkFactory;
+        }
+        LOGGER.info("Rows of each sheet are written over " + options.insertParallelism() + " connections in parallel.");
+        return () -> new ChunkedRowSink(connectionPool, sinkFactory, options, metrics);
+    }
+
+    /**
+     * Each sheet, which is written, needs a connection per chunk, which is written in parallel
+     * (see {@link ImportOptions#insertParallelism()}).
+     */
+    static int connectionPoolSize(final ImportOptions options) {
+        return options.parallelism() * options.insertParallelism();
+    }
+
+    private static RowSink.Factory createLoadingSinkFactory(
+            final String connectionString,
+            final ConnectionPool connectionPool,
+            final ImportOptions options,
+            final ImportMetrics metrics,
+            final ImportCheckpoints checkpoints
     ) {
-        final Map<String, String> createTableStatements = new HashMap<>();
-        for (final String tableName : tableNames) {
+        if (options.bulkLoad()) {
+            if (H2CsvRowSink.supports(connectionString)) {
+                LOGGER.info("Rows are loaded with H2 CSVREAD.");
+                return () -> new H2CsvRowSink(connectionPool, options, metrics, checkpoints);
+            }
+            if (PostgresCopyRowSink.supports(connectionString)) {
+                LOGGER.info("Rows are loaded with PostgreSQL COPY.");
+                return () -> new PostgresCopyRowSink(connectionPool, options, metrics, checkpoints);
+            }
+            LOGGER.info("Bulk load is not supported for the connection. Rows are inserted with JDBC batches.");
+        }
+        return () -> new JdbcRowSink(connectionPool, options, metrics, checkpoints);
+    }
+
+    /** Lookup tables are not created in incremental import, because existing rows keep strings. */
+    private static boolean lookupTablesEnabled(final ImportOptions options) {
+        if (options.lookupTableMaxValues() == 0) {
+            return false;
+        }
+        if (options.incremental()) {
+            LOGGER.warn("Lookup tables are not supported in incremental import. They will not be created.");
+            return false;
+        }
+        return true;
+    }
+
+    static String generateInsertStatement(final TableDefinition tableDefinition) {
+        final String tableName = tableDefinition.tableName();
+        final List<String> columnNames = tableDefinition.columnNames();
+        final int columnsCount = tableDefinition.columnsCount();
+
+        final StringBuilder insertStatement = new StringBuilder();
+        insertStatement.append("INSERT INTO ").append(tableName).append(" ( ");
+        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+            insertStatement.append(columnNames.get(columnNum));
+            if (columnNum != columnsCount - 1) {
+                insertStatement.append(", ");
+            }
+        }
+        insertStatement.append(" ) VALUES ( " );
+        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+            insertStatement.append("?");
+            if (columnNum != columnsCount - 1) {
+                insertStatement.append(", ");
+            }
+        }
+        insertStatement.append(")");
+        return insertStatement.toString();
+    }
 
-            final List<String> columnNames = tableDefinitions.columnNames(tableName);
-            final List<ExcelValueWrapper.Type> columnTypes = tableDefinitions.columnTypes(tableName);
-            final List<Integer> stringColumnLengths = tableDefinitions.stringColumnLengths(tableName);
+    static String generateCreateTableStatement(final TableDefinition tableDefinition) {
+        return generateCreateTableStatement(tableDefinition, true);
+    }
 
-            final StringBuilder createTableSqlStatement = new StringBuilder();
+    /**
+     * If {@code withForeignKeys} is not set, columns, which refer to lookup tables, are created without
+     * constraints. They can be added later with {@link #generateAddForeignKeyStatements(TableDefinition)}.
+     */
+    static String generateCreateTableStatement(final TableDefinition tableDefinition, final boolean withForeignKeys) {
+        final String tableName = tableDefinition.tableName();
+        final List<String> columnNames = tableDefinition.columnNames();
+        final List<ExcelValueWrapper.Type> columnTypes = tableDefinition.columnTypes();
+        final List<Integer> stringColumnLengths = tableDefinition.stringColumnLengths();
+
+        final StringBuilder createTableSqlStatement = new StringBuilder();
+        createTableSqlStatement
+                .append("CREATE TABLE ").append(tableName)
+                .append("(");
+        if (tableDefinition.idColumnName() != null) {
+            // Insert statements list columns of the sheet only, so ids are generated by DB.
             createTableSqlStatement
-                    .append("CREATE TABLE ").append(tableName)
-                    .append("(");
-            final int columnsCount = tableDefinitions.columnsCount(tableName);
-            for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
-                final String columnType = switch (columnTypes.get(columnNum)) {
-                    case BOOLEAN -> "BOOLEAN";
-                    case DATE -> "TIMESTAMP WITH TIME ZONE";
-                    case DOUBLE -> "DOUBLE";
-                    case EMPTY -> "VARCHAR(10)"; // just default type. Could be anything
-                    case STRING -> "VARCHAR(" + (stringColumnLengths.get(columnNum) + 3) + ")"; // +3 - just in case
-                };
-                createTableSqlStatement
-                        .append(columnNames.get(columnNum)).append(" ").append(columnType);
-                if (columnNum != columnsCount - 1) {
-                    createTableSqlStatement.append(", ");
-                }
+                    .append(tableDefinition.idColumnName()).append(" BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY");
+        }
+        final int columnsCount = tableDefinition.columnsCount();
+        if (tableDefinition.idColumnName() != null && columnsCount > 0) {
+            createTableSqlStatement.append(", ");
+        }
+        for (int columnNum = 0; columnNum < columnsCount; ++columnNum) {
+            final String lookupTableName = tableDefinition.lookupTableName(columnNum);
+            final String columnType = lookupTableName == null
+                    ? columnSqlType(columnTypes.get(columnNum), stringColumnLengths.get(columnNum))
+                    : withForeignKeys ? "INTEGER REFERENCES " + lookupTableName + " (id)" : "INTEGER";
+            createTableSqlStatement
+                    .append(columnNames.get(columnNum)).append(" ").append(columnType);
+            if (columnNum != columnsCount - 1) {
+                createTableSqlStatement.append(", ");
             }
-            createTableSqlStatement.append(")");
-            createTableStatements.put(tableName, createTableSqlStatement.toString());
         }
-        return createTableStatements;
+        createTableSqlStatement.append(")");
+        return createTableSqlStatement.toString();
     }
 
-    private static TableDefinitions calculateTableDefinitions(
-            Map<String, List<Map<String, ExcelValueWrapper>>> data,
-            List<String> sheetNames,
-            List<String> tableNames
-    ) throws ExcelFileStructureException {
-        if (sheetNames.size() != tableNames.size()) {
-            String message = "Sizes of sheetNames and tableNames must be equal. They are (respectively): "
-                    + sheetNames.size() + " and " + tableNames.size() + ".";
-            assert false: message;
-            throw new IllegalStateException(message);
+    /** Foreign keys of the columns, which refer to lookup tables. Empty list, if there are no such columns. */
+    static List<String> generateAddForeignKeyStatements(final TableDefinition tableDefinition) {
+        final List<String> statements = new ArrayList<>();
+        for (int columnNum = 0; columnNum < tableDefinition.columnsCount(); ++columnNum) {
+            final String lookupTableName = tableDefinition.lookupTableName(columnNum);
+            if (lookupTableName != null) {
+                statements.add("ALTER TABLE " + tableDefinition.tableName() + " ADD FOREIGN KEY (" +
+                        tableDefinition.columnNames().get(columnNum) + ") REFERENCES " + lookupTableName + " (id)");
+            }
         }
+        return statements;
+    }
 
-        final TableDefinitions tableDefinitions = new TableDefinitions();
+    static String columnSqlType(final ExcelValueWrapper.Type columnType, final int stringColumnLength) {
+        return switch (columnType) {
+            case BOOLEAN -> "BOOLEAN";
+            case DATE -> "TIMESTAMP WITH TIME ZONE";
+            case DOUBLE -> "DOUBLE";
+            case EMPTY -> "VARCHAR(10)"; // just default type. Could be anything
+            case STRING -> "VARCHAR(" + (stringColumnLength + 3) + ")"; // +3 - just in case
+        };
+    }
 
-        for (int sheetNum = 0; sheetNum < sheetNames.size(); ++sheetNum) {
+    /**
+     * Statements, which change column types of the table from {@code oldDefinition} to {@code newDefinition}.
+     * Only EMPTY columns may get other types and STRING columns may get greater lengths.
+     */
+    static List<String> generateWidenColumnStatements(
+            final TableDefinition oldDefinition,
+            final TableDefinition newDefinition
+    ) {
+        final String tableName = newDefinition.tableName();
+        final List<String> statements = new ArrayList<>();
+        for (int columnNum = 0; columnNum < newDefinition.columnsCount(); ++columnNum) {
+            final ExcelValueWrapper.Type oldType = oldDefinition.columnTypes().get(columnNum);
+            final ExcelValueWrapper.Type newType = newDefinition.columnTypes().get(columnNum);
+            final int oldLength = oldDefinition.stringColumnLengths().get(columnNum);
+            final int newLength = newDefinition.stringColumnLengths().get(columnNum);
+            if (oldType == newType && (newType != ExcelValueWrapper.Type.STRING || oldLength == newLength)) {
+                continue;
+            }
+            final String columnName = newDefinition.columnNames().get(columnNum);
+            if (oldType == ExcelValueWrapper.Type.EMPTY) {
+                // By convention EMPTY columns are filled with empty strings, which can not be converted to other types.
+                statements.add("UPDATE " + tableName + " SET " + columnName + " = NULL");
+            } else if (oldType != newType) {
+                throw new IllegalArgumentException("Table " + tableName + ", column " + columnName +
+                        ": Column type can not be changed from " + oldType + " to " + newType + ".");
+            }
+            statements.add("ALTER TABLE " + tableName + " ALTER COLUMN " + columnName +
+                    " SET DATA TYPE " + columnSqlType(newType, newLength));
+        }
+        return statements;
+    }
 
-            final String sheetName = sheetNames.get(sheetNum);
-            final String tableName = tableNames.get(sheetNum);
-            final List<Map<String, ExcelValueWrapper>> sheetData = data.get(sheetName);
+    /** Key of the returned map is sheet name. */
+    static Map<String, TableDefinition> calculateTableDefinitions(
+            final Map<String, SheetData> data
+    ) {
+        return calculateTableDefinitions(data, new TableDefinitionsCollector());
+    }
 
-            if (sheetData.isEmpty()) {
-                LOGGER.info("Data for sheet " + sheetName + " is empty. Skipping.");
+    /** Same as above, but column statistics stay available in {@code collector}. */
+    private static Map<String, TableDefinition> calculateTableDefinitions(
+            final Map<String, SheetData> data,
+            final TableDefinitionsCollector collector
+    ) {
+        for (final SheetData sheetData : data.values()) {
+            if (sheetData.rowCount() == 0) {
+                LOGGER.info("Data for sheet " + sheetData.sheetName() + " is empty. Skipping.");
                 continue;
             }
+            collector.addSheet(sheetData);
+        }
+        return collector.tableDefinitions();
+    }
 
-            final List<String> fieldNames = new ArrayList<>(sheetData.get(0).keySet());
-            final List<String> dbColumnNames = generateUniqueNamesForDb(fieldNames);
-            final List<ExcelValueWrapper.Type> dbColumnTypes = new ArrayList<>();
-            final List<Integer> stringColumnLengths = new ArrayList<>(); // For non-string columns it is just -1
-
-            for (final String fieldName : fieldNames) {
-                Set<ExcelValueWrapper.Type> columnTypes = sheetData.stream()
-                        .map(rowData -> rowData.get(fieldName).type())
-                        .filter(type -> !type.equals(ExcelValueWrapper.Type.EMPTY))
-                        .collect(Collectors.toSet());
-                final ExcelValueWrapper.Type columnType;
-                if (columnTypes.isEmpty()) {
-                    columnType = ExcelValueWrapper.Type.EMPTY;
-                } else if (columnTypes.size() == 1) {
-                    columnType = columnTypes.iterator().next();
-                } else {
-                    throw new ExcelFileStructureException("Sheet " + sheetName + ": ERROR: column " + fieldName +
-                            " has cells of more than one type in it. It is not allowed.");
+    /**
+     * Name of the table as it is stored in DB (databases change case of unquoted names differently)
+     * or {@code null}, if there is no such table in the current schema.
+     */
+    static String findExistingTableName(final Connection connection, final String tableName) throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        for (final String candidate : List.of(tableName, tableName.toUpperCase(Locale.ROOT), tableName.toLowerCase(Locale.ROOT))) {
+            try (ResultSet tables = metaData.getTables(null, connection.getSchema(), candidate, new String[] {"TABLE"})) {
+                if (tables.next()) {
+                    return tables.getString("TABLE_NAME");
                 }
-                dbColumnTypes.add(columnType);
-
-                Optional<Integer> maxFieldLength = sheetData.stream()
-                        .map(rowData -> {
-                            ExcelValueWrapper value = rowData.get(fieldName);
-                            if (value.type().equals(ExcelValueWrapper.Type.STRING)) {
-                                return value.maybeStringValue().length();
-                            } else {
-                                return NON_STRING_FIELD_LENGTH_PLACEHOLDER;
-                            }
-                        })
-                        .max(Comparator.naturalOrder());
-                if (maxFieldLength.isEmpty()) {
-                    String message = "Sheet " + sheetName + ": Sheet data is not expected to be empty at this point.";
-                    assert false : message;
-                    throw new IllegalStateException(message);
-                }
-                stringColumnLengths.add(maxFieldLength.get());
             }
-
-            tableDefinitions.addTableDefinition(tableName, dbColumnNames, dbColumnTypes, stringColumnLengths);
         }
-        return tableDefinitions;
+        return null;
     }
 
-    private static List<String> generateUniqueNamesForDb(final List<String> baseNames) {
+    static List<String> generateUniqueNamesForDb(final List<String> baseNames) {
         final Set<String> usedNames = new HashSet<>();
         final List<String> generatedNames = new ArrayList<>();
         for (var baseName : baseNames) {
-            final var simplifiedName = simplifyStringForDbName(baseName);
-            final var uniqueName = ensureNameIsUnique(simplifiedName, usedNames);
-            usedNames.add(uniqueName);
-            generatedNames.add(uniqueName);
+            generatedNames.add(generateUniqueNameForDb(baseName, usedNames));
         }
         if (generatedNames.size() != baseNames.size()) {
             throw new IllegalStateException("Failed to generate unique names for DB. Algorithm does not support import data.");
@@ -266,7 +627,15 @@ public class SqlDbTableImporter {
         return generatedNames;
     }
 
-    private static String simplifyStringForDbName(final String baseName) {
+    /** Generated name is added to {@code usedNames}. */
+    static String generateUniqueNameForDb(final String baseName, final Set<String> usedNames) {
+        final var simplifiedName = simplifyStringForDbName(baseName);
+        final var uniqueName = ensureNameIsUnique(simplifiedName, usedNames);
+        usedNames.add(uniqueName);
+        return uniqueName;
+    }
+
+    static String simplifyStringForDbName(final String baseName) {
         final String lowerCaseName = baseName.toLowerCase(Locale.ROOT);
         final char[] lowerCaseNameChars = lowerCaseName.toCharArray();
         final char[] simplifiedNameChars = new char[lowerCaseNameChars.length];
@@ -304,56 +673,4 @@ public class SqlDbTableImporter {
         );
     }
 
-    private static class TableDefinitions {
-
-        private final Map<String, List<String>> tableColumnNamesMap = new HashMap<>();
-        private final Map<String, List<ExcelValueWrapper.Type>> tableColumnTypesMap = new HashMap<>();
-        private final Map<String, List<Integer>> tableStringColumnLengthsMap = new HashMap<>();
-
-        public TableDefinitions() {
-            // Nothing to do here yet
-        }
-
-        public void addTableDefinition(
-                final String tableName,
-                final List<String> tableColumnNames,
-                final List<ExcelValueWrapper.Type> tableColumnTypes,
-                final List<Integer> tableStringColumnLengths
-        ) {
-            if (
-                    tableColumnNames.size() != tableColumnTypes.size() ||
-                    tableColumnNames.size() != tableStringColumnLengths.size()
-            ) {
-                throw new IllegalArgumentException("Length of column names list must be " +
-                        "equal to column types list and to the column lengths list. " +
-                        "Provided column names list length: " + tableColumnNames.size() +
-                        ". Provided column types length: " + tableColumnTypes.size() +
-                        ". Provided column lengths length: " + tableStringColumnLengths.size()
-                );
-            }
-            if (tableColumnNamesMap.containsKey(tableName)) {
-                LOGGER.warn("Table definitions already contains definition for table " + tableName + ". It will be replaced.");
-            }
-            tableColumnNamesMap.put(tableName, tableColumnNames);
-            tableColumnTypesMap.put(tableName, tableColumnTypes);
-            tableStringColumnLengthsMap.put(tableName, tableStringColumnLengths);
-        }
-
-        public List<String> columnNames(final String tableName) {
-            return tableColumnNamesMap.get(tableName);
-        }
-
-        public List<ExcelValueWrapper.Type> columnTypes(final String tableName) {
-            return tableColumnTypesMap.get(tableName);
-        }
-
-        public List<Integer> stringColumnLengths(final String tableName) {
-            return tableStringColumnLengthsMap.get(tableName);
-        }
-
-        public int columnsCount(final String tableName) {
-            return tableColumnNamesMap.get(tableName).size();
-        }
-    }
-
 }
@@ -0,0 +1,140 @@
+package xyz.dsemikin.worksheettodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Description of the DB table, which is created for one worksheet. */
+public class TableDefinition {
+
+    private final String sheetName;
+    private final String tableName;
+    private final List<String> columnNames;
+    private final List<ExcelValueWrapper.Type> columnTypes;
+    private final List<Integer> stringColumnLengths;
+    private final List<String> lookupTableNames;
+    private final String idColumnName;
+
+    public TableDefinition(
+            final String sheetName,
+            final String tableName,
+            final List<String> columnNames,
+            final List<ExcelValueWrapper.Type> columnTypes,
+            final List<Integer> stringColumnLengths
+    ) {
+        this(sheetName, tableName, columnNames, columnTypes, stringColumnLengths, Collections.nCopies(columnNames.size(), null));
+    }
+
+    /** Entries of {@code lookupTableNames} are {@code null} for columns, which do not refer to lookup tables. */
+    public TableDefinition(
+            final String sheetName,
+            final String tableName,
+            final List<String> columnNames,
+            final List<ExcelValueWrapper.Type> columnTypes,
+            final List<Integer> stringColumnLengths,
+            final List<String> lookupTableNames
+    ) {
+        this(sheetName, tableName, columnNames, columnTypes, stringColumnLengths, lookupTableNames, null);
+    }
+
+    /** {@code idColumnName} is {@code null}, if the table has no id column (see {@link #idColumnName()}). */
+    public TableDefinition(
+            final String sheetName,
+            final String tableName,
+            final List<String> columnNames,
+            final List<ExcelValueWrapper.Type> columnTypes,
+            final List<Integer> stringColumnLengths,
+            final List<String> lookupTableNames,
+            final String idColumnName
+    ) {
+        if (
+                columnNames.size() != columnTypes.size() ||
+                columnNames.size() != stringColumnLengths.size() ||
+                columnNames.size() != lookupTableNames.size()
+        ) {
+            throw new IllegalArgumentException("Length of column names list must be " +
+                    "equal to column types list and to the column lengths list. " +
+                    "Provided column names list length: " + columnNames.size() +
+                    ". Provided column types length: " + columnTypes.size() +
+                    ". Provided column lengths length: " + stringColumnLengths.size() +
+                    ". Provided lookup table names length: " + lookupTableNames.size()
+            );
+        }
+        this.sheetName = sheetName;
+        this.tableName = tableName;
+        this.columnNames = List.copyOf(columnNames);
+        this.columnTypes = List.copyOf(columnTypes);
+        this.stringColumnLengths = List.copyOf(stringColumnLengths);
+        // List.copyOf() does not allow nulls
+        this.lookupTableNames = Collections.unmodifiableList(new ArrayList<>(lookupTableNames));
+        this.idColumnName = idColumnName;
+    }
+
+    public String sheetName() {
+        return sheetName;
+    }
+
+    public String tableName() {
+        return tableName;
+    }
+
+    public List<String> columnNames() {
+        return columnNames;
+    }
+
+    public List<ExcelValueWrapper.Type> columnTypes() {
+        return columnTypes;
+    }
+
+    /** For non-string columns the value is meaningless. */
+    public List<Integer> stringColumnLengths() {
+        return stringColumnLengths;
+    }
+
+    /**
+     * Name of the lookup table, which keeps values of the column, or {@code null}. Column of the table
+     * itself keeps integer id of the value in the lookup table (see {@link LookupTables}).
+     */
+    public String lookupTableName(final int columnNum) {
+        return lookupTableNames.get(columnNum);
+    }
+
+    /**
+     * Name of the synthetic identity column (primary key), which is created in addition to the columns
+     * of the sheet and is filled by DB, or {@code null} (see {@link ImportOptions#idColumn()}).
+     */
+    public String idColumnName() {
+        return idColumnName;
+    }
+
+    /** Copy of this definition, where type and string length of one column are replaced. */
+    public TableDefinition withColumnType(
+            final int columnNum,
+            final ExcelValueWrapper.Type columnType,
+            final int stringColumnLength
+    ) {
+        final List<ExcelValueWrapper.Type> newColumnTypes = new ArrayList<>(columnTypes);
+        final List<Integer> newStringColumnLengths = new ArrayList<>(stringColumnLengths);
+        newColumnTypes.set(columnNum, columnType);
+        newStringColumnLengths.set(columnNum, stringColumnLength);
+        return new TableDefinition(sheetName, tableName, columnNames, newColumnTypes, newStringColumnLengths, lookupTableNames, idColumnName);
+    }
+
+    /** Copy of this definition, where values of the column are replaced by ids from the lookup table. */
+    public TableDefinition withLookupTable(final int columnNum, final String lookupTableName) {
+        final List<ExcelValueWrapper.Type> newColumnTypes = new ArrayList<>(columnTypes);
+        final List<String> newLookupTableNames = new ArrayList<>(lookupTableNames);
+        newColumnTypes.set(columnNum, ExcelValueWrapper.Type.DOUBLE);
+        newLookupTableNames.set(columnNum, lookupTableName);
+        return new TableDefinition(sheetName, tableName, columnNames, newColumnTypes, stringColumnLengths, newLookupTableNames, idColumnName);
+    }
+
+    /** Copy of this definition with id column. */
+    public TableDefinition withIdColumn(final String idColumnName) {
+        return new TableDefinition(sheetName, tableName, columnNames, columnTypes, stringColumnLengths, lookupTableNames, idColumnName);
+    }
+
+    public int columnsCount() {
+        return columnNames.size();
+    }
+}
@@ -0,0 +1,139 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates table definitions from the column statistics, which are calculated by the reader.
+ * Results are available after all rows are read.
+ */
+class TableDefinitionsCollector implements ExcelRowHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableDefinitionsCollector.class);
+    private static final Integer NON_STRING_FIELD_LENGTH_PLACEHOLDER = -4455; // just random number, which is invalid length
+
+    private final Map<String, TableDefinition> tableDefinitions = new LinkedHashMap<>();
+    private final Set<String> usedTableNames = new HashSet<>();
+    private final Map<String, String> assignedTableNames;
+    private final Map<String, String> tableNames = new LinkedHashMap<>();
+    private final Map<String, List<ColumnStats>> columnStats = new LinkedHashMap<>();
+
+    private String sheetName;
+    private List<String> fieldNames;
+
+    TableDefinitionsCollector() {
+        this(Set.of());
+    }
+
+    /** Reserved names are not allocated for any sheet (e.g. they belong to the sheets, which are skipped). */
+    TableDefinitionsCollector(final Set<String> reservedTableNames) {
+        this(reservedTableNames, Map.of());
+    }
+
+    /**
+     * Sheets from {@code assignedTableNames} (key is sheet name) get the given table names (e.g. tables,
+     * which are continued), and other sheets do not get them.
+     */
+    TableDefinitionsCollector(final Set<String> reservedTableNames, final Map<String, String> assignedTableNames) {
+        usedTableNames.addAll(reservedTableNames);
+        usedTableNames.addAll(assignedTableNames.values());
+        this.assignedTableNames = Map.copyOf(assignedTableNames);
+        // Sheets, which are not read again (e.g. their tables are already finished), still own their names.
+        tableNames.putAll(assignedTableNames);
+    }
+
+    @Override
+    public void startSheet(final String sheetName, final List<String> columnNames) {
+        this.sheetName = sheetName;
+        this.fieldNames = columnNames;
+    }
+
+    @Override
+    public void row(final int rowNum, final List<ExcelValueWrapper> values) {
+        // Everything needed is in column statistics.
+    }
+
+    @Override
+    public void endSheet(final List<ColumnStats> columnStats) {
+        addTableDefinition(sheetName, fieldNames, columnStats);
+    }
+
+    /** Sheet data, which is already in memory, has all the needed information, so rows are not scanned. */
+    public void addSheet(final SheetData sheetData) {
+        final List<ColumnStats> columnStats = new ArrayList<>(sheetData.columnsCount());
+        for (int columnNum = 0; columnNum < sheetData.columnsCount(); ++columnNum) {
+            columnStats.add(sheetData.columnStats(columnNum));
+        }
+        addTableDefinition(sheetData.sheetName(), sheetData.columnNames(), columnStats);
+    }
+
+    private void addTableDefinition(
+            final String sheetName,
+            final List<String> fieldNames,
+            final List<ColumnStats> columnStats
+    ) {
+        final String tableName = allocateTableName(sheetName);
+        if (tableDefinitions.containsKey(sheetName)) {
+            LOGGER.warn("Table definitions already contains definition for sheet " + sheetName + ". It will be replaced.");
+        }
+        tableDefinitions.put(sheetName, createTableDefinition(sheetName, tableName, fieldNames, columnStats));
+        this.columnStats.put(sheetName, columnStats);
+    }
+
+    /** Table names are unique among all the names allocated by this collector. */
+    public synchronized String allocateTableName(final String sheetName) {
+        final String assignedTableName = assignedTableNames.get(sheetName);
+        final String tableName = assignedTableName != null
+                ? assignedTableName
+                : SqlDbTableImporter.generateUniqueNameForDb(sheetName, usedTableNames);
+        tableNames.put(sheetName, tableName);
+        return tableName;
+    }
+
+    /** Name of a table, which does not belong to any sheet (e.g. lookup table). It is unique in the same way, as table names. */
+    public synchronized String allocateAuxiliaryTableName(final String baseName) {
+        return SqlDbTableImporter.generateUniqueNameForDb(baseName, usedTableNames);
+    }
+
+    /** Names, allocated or assigned by this collector. Key is sheet name. */
+    public synchronized Map<String, String> tableNames() {
+        return new LinkedHashMap<>(tableNames);
+    }
+
+    public static TableDefinition createTableDefinition(
+            final String sheetName,
+            final String tableName,
+            final List<String> fieldNames,
+            final List<ColumnStats> columnStats
+    ) {
+        final List<ExcelValueWrapper.Type> columnTypes = new ArrayList<>(columnStats.size());
+        final List<Integer> stringColumnLengths = new ArrayList<>(columnStats.size());
+        for (final ColumnStats stats : columnStats) {
+            columnTypes.add(stats.type());
+            stringColumnLengths.add(
+                    stats.type() == ExcelValueWrapper.Type.STRING
+                        ? stats.maxStringLength()
+                        : NON_STRING_FIELD_LENGTH_PLACEHOLDER
+            );
+        }
+        final List<String> dbColumnNames = SqlDbTableImporter.generateUniqueNamesForDb(fieldNames);
+        return new TableDefinition(sheetName, tableName, dbColumnNames, columnTypes, stringColumnLengths);
+    }
+
+    /** Key is sheet name. Order is the same, as the order of sheets in the source. */
+    public Map<String, TableDefinition> tableDefinitions() {
+        return tableDefinitions;
+    }
+
+    /** Statistics, from which table definitions were created. Key is sheet name. */
+    public Map<String, List<ColumnStats>> columnStats() {
+        return columnStats;
+    }
+}
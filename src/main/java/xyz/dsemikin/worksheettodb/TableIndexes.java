@@ -0,0 +1,233 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Id columns, indexes and statistics of the tables (see {@link ImportOptions#idColumn()} and
+ * {@link ImportOptions#indexHints()}).
+ *
+ * Id column is added to the definition of each table, before it is created. Indexes are created
+ * by {@link #buildIndexes()} after all the tables are loaded, so that DB builds each index once
+ * instead of updating it row by row, and then the tables are analyzed. At that time sinks
+ * have already returned their connections, so the connection for indexes is always available.
+ *
+ * Failures of these statements do not fail the import: data is already loaded, and the tables
+ * can be queried without indexes.
+ */
+class TableIndexes {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableIndexes.class);
+
+    static final String ID_COLUMN_BASE_NAME = "id";
+    private static final String ALL_TABLES = "*";
+
+    /** Columns of one index. Names are simplified in the same way, as names of tables and columns. */
+    private record IndexHint(String tableName, List<String> columnNames) {}
+
+    private final ConnectionPool connectionPool;
+    private final boolean idColumn;
+    private final List<IndexHint> indexHints = new ArrayList<>();
+    // Tables, which are loaded completely. Sinks add them from several threads.
+    private final List<TableDefinition> loadedTables = new ArrayList<>();
+
+    TableIndexes(final ConnectionPool connectionPool, final ImportOptions options) {
+        this.connectionPool = connectionPool;
+        this.idColumn = options.idColumn();
+        for (final String indexHint : options.indexHints()) {
+            final int separatorIndex = indexHint.indexOf('.');
+            final List<String> columnNames = new ArrayList<>();
+            for (final String columnName : indexHint.substring(separatorIndex + 1).split("\\+")) {
+                columnNames.add(SqlDbTableImporter.simplifyStringForDbName(columnName.trim()));
+            }
+            final String tableName = indexHint.substring(0, separatorIndex).trim();
+            indexHints.add(new IndexHint(
+                    tableName.equals(ALL_TABLES) ? ALL_TABLES : SqlDbTableImporter.simplifyStringForDbName(tableName),
+                    columnNames));
+        }
+    }
+
+    /** Sinks, which add id column to the tables, and remember tables, which are loaded. */
+    RowSink.Factory wrap(final RowSink.Factory sinkFactory) {
+        if (!idColumn && indexHints.isEmpty()) {
+            return sinkFactory;
+        }
+        return () -> new IndexedRowSink(sinkFactory.createSink());
+    }
+
+    /** Creates indexes of the tables, which were loaded since the previous call, and analyzes them. */
+    void buildIndexes() {
+        final List<TableDefinition> tables;
+        synchronized (loadedTables) {
+            tables = new ArrayList<>(loadedTables);
+            loadedTables.clear();
+        }
+        if (tables.isEmpty()) {
+            return;
+        }
+        final Connection connection;
+        try {
+            connection = connectionPool.acquire();
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to get connection. Indexes will not be created and tables will not be analyzed.", e);
+            return;
+        }
+        try {
+            connection.setAutoCommit(true);
+            final String databaseName = connection.getMetaData().getDatabaseProductName();
+            for (final TableDefinition tableDefinition : tables) {
+                for (final String createIndexStatement : generateCreateIndexStatements(tableDefinition)) {
+                    LOGGER.info("Create index statement: " + createIndexStatement);
+                    execute(connection, createIndexStatement, tableDefinition);
+                }
+                final String analyzeStatement = generateAnalyzeStatement(databaseName, tableDefinition.tableName());
+                if (analyzeStatement == null) {
+                    LOGGER.info("Table " + tableDefinition.tableName() + ": Analyzing tables is not supported for " + databaseName + ".");
+                } else {
+                    LOGGER.info("Analyze statement: " + analyzeStatement);
+                    execute(connection, analyzeStatement, tableDefinition);
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Failed to prepare connection. Indexes will not be created and tables will not be analyzed.", e);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Indexes, which are declared for the table. Hints with columns, which are not in the table, are skipped.
+     * Indexes are created only if they do not exist yet (e.g. in incremental import).
+     */
+    List<String> generateCreateIndexStatements(final TableDefinition tableDefinition) {
+        final List<String> statements = new ArrayList<>();
+        for (final IndexHint indexHint : indexHints) {
+            final boolean allTables = indexHint.tableName().equals(ALL_TABLES);
+            if (!allTables && !matchesTable(indexHint.tableName(), tableDefinition)) {
+                continue;
+            }
+            final List<String> columnNames = new ArrayList<>();
+            for (final String hintColumnName : indexHint.columnNames()) {
+                final String columnName = findColumnName(tableDefinition, hintColumnName);
+                if (columnName != null) {
+                    columnNames.add(columnName);
+                }
+            }
+            if (columnNames.size() != indexHint.columnNames().size()) {
+                if (!allTables) {
+                    LOGGER.warn("Table " + tableDefinition.tableName() + ": Some of the columns " + indexHint.columnNames() +
+                            " do not exist. Index is not created.");
+                }
+                continue;
+            }
+            statements.add("CREATE INDEX IF NOT EXISTS " + tableDefinition.tableName() + "_" + String.join("_", columnNames) + "_idx" +
+                    " ON " + tableDefinition.tableName() + " (" + String.join(", ", columnNames) + ")");
+        }
+        return statements;
+    }
+
+    /** {@code null}, if it is not known, how to analyze tables in the DB. */
+    static String generateAnalyzeStatement(final String databaseName, final String tableName) {
+        return switch (databaseName.toLowerCase(Locale.ROOT)) {
+            case "postgresql" -> "ANALYZE " + tableName;
+            case "h2", "mysql", "mariadb" -> "ANALYZE TABLE " + tableName;
+            default -> null;
+        };
+    }
+
+    /** Table is matched by the name of the sheet or by the name of the table (without suffix, which makes it unique). */
+    private static boolean matchesTable(final String hintTableName, final TableDefinition tableDefinition) {
+        return hintTableName.equals(tableDefinition.tableName())
+                || hintTableName.equals(SqlDbTableImporter.simplifyStringForDbName(tableDefinition.sheetName()));
+    }
+
+    /** Name of the column in DB or {@code null}. */
+    private static String findColumnName(final TableDefinition tableDefinition, final String hintColumnName) {
+        if (hintColumnName.equals(tableDefinition.idColumnName())) {
+            return hintColumnName;
+        }
+        for (final String columnName : tableDefinition.columnNames()) {
+            if (columnName.equals(hintColumnName)) {
+                return columnName;
+            }
+        }
+        return null;
+    }
+
+    private static void execute(final Connection connection, final String sql, final TableDefinition tableDefinition) {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        } catch (SQLException e) {
+            LOGGER.warn("Table " + tableDefinition.tableName() + ": Failed to execute " + sql + ".", e);
+        }
+    }
+
+    private class IndexedRowSink implements RowSink {
+
+        private final RowSink sink;
+        private TableDefinition tableDefinition;
+
+        IndexedRowSink(final RowSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startTable(final TableDefinition tableDefinition) throws SQLException {
+            this.tableDefinition = withIdColumn(tableDefinition);
+            sink.startTable(this.tableDefinition);
+        }
+
+        @Override
+        public void row(final List<ExcelValueWrapper> values) throws SQLException {
+            sink.row(values);
+        }
+
+        @Override
+        public void row(final SheetData sheetData, final int rowNum) throws SQLException {
+            sink.row(sheetData, rowNum);
+        }
+
+        @Override
+        public void endTable() throws SQLException {
+            sink.endTable();
+            synchronized (loadedTables) {
+                loadedTables.add(tableDefinition);
+            }
+            tableDefinition = null;
+        }
+
+        @Override
+        public void widenTable(final TableDefinition widenedDefinition) throws SQLException {
+            tableDefinition = withIdColumn(widenedDefinition);
+            sink.widenTable(tableDefinition);
+        }
+
+        @Override
+        public void abortTable() {
+            sink.abortTable();
+            tableDefinition = null;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            sink.close();
+        }
+
+        private TableDefinition withIdColumn(final TableDefinition tableDefinition) {
+            if (!idColumn) {
+                return tableDefinition;
+            }
+            final String idColumnName = SqlDbTableImporter.generateUniqueNameForDb(
+                    ID_COLUMN_BASE_NAME, new HashSet<>(tableDefinition.columnNames()));
+            return tableDefinition.withIdColumn(idColumnName);
+        }
+    }
+}
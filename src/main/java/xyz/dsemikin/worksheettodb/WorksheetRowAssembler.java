@@ -0,0 +1,149 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Takes raw rows of the worksheet (as they are found in the file), checks header and
+ * data rows and passes them further to {@link ExcelRowHandler}.
+ *
+ * This logic is common for all the readers (streaming and not streaming), so that all
+ * of them perform exactly the same checks and produce exactly the same data.
+ */
+class WorksheetRowAssembler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorksheetRowAssembler.class);
+
+    private final ExcelRowHandler handler;
+
+    private String sheetName;
+    private boolean headerSeen;
+    private boolean dataRowSeen;
+    private boolean sheetStarted;
+    private List<String> columnNames;
+    private List<ColumnStats> columnStats;
+    // Header is validated lazily, because worksheets without data rows are skipped
+    // without any checks.
+    private ExcelFileStructureException headerError;
+
+    WorksheetRowAssembler(final ExcelRowHandler handler) {
+        this.handler = handler;
+    }
+
+    void startSheet(final String sheetName) {
+        this.sheetName = sheetName;
+        headerSeen = false;
+        dataRowSeen = false;
+        sheetStarted = false;
+        columnNames = null;
+        columnStats = null;
+        headerError = null;
+    }
+
+    /**
+     * @param rowNum 0-based row number.
+     * @param cells cells of the row, where index is the column index. Missing cells are represented
+     *              with {@code null}. Missing cells are filled with EMPTY values, and the cursor is passed
+     *              to the handler as is, so the reader may reuse it only after the call returns.
+     */
+    void acceptRow(final int rowNum, final RowCursor cells) throws ExcelFileStructureException {
+        if (!headerSeen) {
+            if (rowNum != 0) {
+                throw new ExcelFileStructureException("Sheet " + sheetName + ": First row of the worksheet must be header row, " +
+                        "but first found row has row num " + rowNum + ".");
+            }
+            readHeader(cells);
+            headerSeen = true;
+            return;
+        }
+
+        dataRowSeen = true;
+        if (headerError != null) {
+            throw headerError;
+        }
+
+        final int headerCellsCount = columnNames.size();
+        if (cells.isEmpty()) {
+            LOGGER.info("Sheet {}, row num {}: Empty row. Skipping.", sheetName, rowNum);
+            return;
+        }
+        if (cells.size() > headerCellsCount) {
+            throw new ExcelFileStructureException("Sheet " + sheetName + ", row " + rowNum +
+                    ": Cell count in the row (" + cells.size() + ") is greater, than cell count in header (" +
+                    headerCellsCount + "). It is not allowed.");
+        }
+
+        // If the cells at the end are missing, we fill data with "EMPTY" values
+        cells.fillEmpty(headerCellsCount);
+        boolean allEmpty = true;
+        for (int cellNum = 0; cellNum < headerCellsCount; ++cellNum) {
+            if (cells.get(cellNum).type() != ExcelValueWrapper.Type.EMPTY) {
+                allEmpty = false;
+                break;
+            }
+        }
+
+        if (allEmpty) {
+            LOGGER.info("Sheet {}, row num {}: All cells are empty. Skipping row.", sheetName, rowNum);
+            return;
+        }
+
+        for (int cellNum = 0; cellNum < headerCellsCount; ++cellNum) {
+            final ExcelValueWrapper value = cells.get(cellNum);
+            final ColumnStats stats = columnStats.get(cellNum);
+            if (!stats.accepts(value.type())) {
+                throw new ExcelFileStructureException("Sheet " + sheetName + ": ERROR: column " + columnNames.get(cellNum) +
+                        " has cells of more than one type in it. It is not allowed.");
+            }
+            stats.add(value);
+        }
+
+        if (!sheetStarted) {
+            handler.startSheet(sheetName, columnNames);
+            sheetStarted = true;
+        }
+        handler.row(rowNum, cells);
+    }
+
+    void endSheet() throws ExcelFileStructureException {
+        if (sheetStarted) {
+            handler.endSheet(columnStats);
+        } else if (!headerSeen) {
+            LOGGER.info("Worksheet {} does not have any data. Skipping.", sheetName);
+        } else if (!dataRowSeen) {
+            LOGGER.info("Worksheet {} has only one row (header) and no data. Skipping.", sheetName);
+        } else {
+            LOGGER.info("Worksheet {} has only empty data rows. Skipping.", sheetName);
+        }
+    }
+
+    private void readHeader(final RowCursor cells) {
+        if (cells.isEmpty()) {
+            headerError = new ExcelFileStructureException("Sheet " + sheetName + " : Header row of the table must define at least one column.");
+            return;
+        }
+
+        final List<String> names = new ArrayList<>(cells.size());
+        for (int cellNum = 0; cellNum < cells.size(); ++cellNum) {
+            final ExcelValueWrapper cell = cells.get(cellNum);
+            if (cell == null || cell.type() != ExcelValueWrapper.Type.STRING) {
+                headerError = new ExcelFileStructureException("Sheet " + sheetName + ": All header cells must be of type 'text' or 'string'.");
+                return;
+            }
+            final String columnName = cell.maybeStringValue();
+            if (columnName == null || columnName.isBlank()) {
+                headerError = new ExcelFileStructureException("Sheet " + sheetName + ", column num " + cellNum + ": Column names must be non-empty non-blank strings.");
+                return;
+            }
+            names.add(columnName);
+        }
+        columnNames = names;
+        columnStats = new ArrayList<>(names.size());
+        for (int columnNum = 0; columnNum < names.size(); ++columnNum) {
+            columnStats.add(new ColumnStats());
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.apache.poi.EncryptedDocumentException;
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Reads binary xls (BIFF8) files using "event" API of Apache POI.
+ *
+ * Unlike {@code WorkbookFactory}, it does not build object model of the workbook in memory.
+ * Records of the workbook stream are processed in the order they are stored in the file, and
+ * rows are passed to {@link ExcelRowHandler} one by one, as soon as all their cells are read.
+ * Only shared strings table and number formats are kept in memory.
+ *
+ * Rows and values are the same, as the ones, which are read from the same file by POI "user model":
+ * rows without cells are reported as empty rows, and formula and error cells are not supported.
+ *
+ * All worksheets of xls file are stored in one stream, so they are always read sequentially.
+ * Reading stops after the last worksheet, which matches the filter.
+ */
+public class XlsStreamingReader {
+
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler
+    ) throws IOException, ExcelFileStructureException {
+        readExcelFile(excelFilePath, handler, sheetName -> true);
+    }
+
+    /** Records of worksheets, which do not match {@code sheetFilter}, are skipped. */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        try (POIFSFileSystem fileSystem = new POIFSFileSystem(excelFilePath.toFile(), true)) {
+            final HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new WorkbookListener(handler, sheetFilter));
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fileSystem);
+        } catch (HSSFUserException e) {
+            if (e.getReason() instanceof ExcelFileStructureException structureException) {
+                throw structureException;
+            }
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The file is OLE2 file with BIFF8 workbook stream. It is not the case e.g. for password
+     * protected xlsx files (which are OLE2 files too) and for files of Excel 95 and older.
+     */
+    public static boolean isXlsFile(final Path excelFilePath) throws IOException {
+        try (POIFSFileSystem fileSystem = new POIFSFileSystem(excelFilePath.toFile(), true)) {
+            HSSFWorkbook.getWorkbookDirEntryName(fileSystem.getRoot());
+            return true;
+        } catch (EncryptedDocumentException | IllegalArgumentException e) {
+            // also OldExcelFormatException
+            return false;
+        }
+    }
+
+    /**
+     * Workbook stream consists of substreams, each of which starts with BOF record and ends with
+     * EOF record. The first substream contains workbook globals (sheet names, shared strings,
+     * formats), then worksheets follow. Worksheet may contain nested substreams (e.g. of embedded
+     * charts), which are skipped.
+     *
+     * Cells of worksheet are stored row by row, after the row records of the block of rows they
+     * belong to. Row records without cells are kept until cells of the next rows are read.
+     */
+    private static class WorkbookListener extends AbortableHSSFListener {
+
+        private static final short CONTINUE = 0;
+        private static final short STOP = 1;
+
+        private final WorksheetRowAssembler assembler;
+        private final Predicate<String> sheetFilter;
+        private final RowCursor cells = new RowCursor();
+
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<>();
+        private final Map<Integer, String> customFormats = new HashMap<>();
+        private final List<Integer> styleFormatIds = new ArrayList<>();
+        private SSTRecord sharedStrings;
+        private boolean date1904;
+        private boolean[] dateStyles;
+        // In the order of worksheet substreams. null for worksheets, which must be skipped.
+        private String[] sheetNames;
+        private int lastSheetNumToRead = -1;
+
+        private int substreamDepth;
+        private boolean inGlobals;
+        private int sheetNum = -1;
+        private String sheetName;
+        private int rowNum = -1;
+        private final TreeSet<Integer> rowNumsWithoutCells = new TreeSet<>();
+
+        WorkbookListener(final ExcelRowHandler handler, final Predicate<String> sheetFilter) {
+            this.assembler = new WorksheetRowAssembler(handler);
+            this.sheetFilter = sheetFilter;
+        }
+
+        @Override
+        public short abortableProcessRecord(final Record record) throws HSSFUserException {
+            try {
+                return process(record);
+            } catch (ExcelFileStructureException e) {
+                throw new HSSFUserException(e);
+            }
+        }
+
+        private short process(final Record record) throws ExcelFileStructureException {
+            switch (record.getSid()) {
+                case BOFRecord.sid -> {
+                    ++substreamDepth;
+                    if (substreamDepth == 1) {
+                        if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKBOOK) {
+                            inGlobals = true;
+                        } else {
+                            startSheet();
+                        }
+                    }
+                    return CONTINUE;
+                }
+                case EOFRecord.sid -> {
+                    --substreamDepth;
+                    if (substreamDepth != 0) {
+                        return CONTINUE;
+                    }
+                    if (inGlobals) {
+                        inGlobals = false;
+                        endGlobals();
+                    } else {
+                        endSheet();
+                    }
+                    return sheetNum >= lastSheetNumToRead ? STOP : CONTINUE;
+                }
+                default -> {
+                    if (substreamDepth != 1) {
+                        return CONTINUE;
+                    }
+                    if (inGlobals) {
+                        processGlobalsRecord(record);
+                    } else if (sheetName != null) {
+                        processSheetRecord(record);
+                    }
+                    return CONTINUE;
+                }
+            }
+        }
+
+        private void processGlobalsRecord(final Record record) {
+            switch (record.getSid()) {
+                case BoundSheetRecord.sid -> boundSheets.add((BoundSheetRecord) record);
+                case SSTRecord.sid -> sharedStrings = (SSTRecord) record;
+                case FormatRecord.sid -> {
+                    final FormatRecord formatRecord = (FormatRecord) record;
+                    customFormats.put(formatRecord.getIndexCode(), formatRecord.getFormatString());
+                }
+                case ExtendedFormatRecord.sid -> styleFormatIds.add(Short.toUnsignedInt(((ExtendedFormatRecord) record).getFormatIndex()));
+                case DateWindow1904Record.sid -> date1904 = ((DateWindow1904Record) record).getWindowing() == 1;
+                default -> { }
+            }
+        }
+
+        private void endGlobals() {
+            // Worksheet substreams are stored in the order of their offsets, which is not necessarily the order of sheets.
+            final BoundSheetRecord[] sheetsInStreamOrder = BoundSheetRecord.orderByBofPosition(boundSheets);
+            sheetNames = new String[sheetsInStreamOrder.length];
+            for (int streamSheetNum = 0; streamSheetNum < sheetsInStreamOrder.length; ++streamSheetNum) {
+                final String name = sheetsInStreamOrder[streamSheetNum].getSheetname();
+                if (sheetFilter.test(name)) {
+                    sheetNames[streamSheetNum] = name;
+                    lastSheetNumToRead = streamSheetNum;
+                }
+            }
+            dateStyles = new boolean[styleFormatIds.size()];
+            for (int styleIndex = 0; styleIndex < dateStyles.length; ++styleIndex) {
+                final int formatId = styleFormatIds.get(styleIndex);
+                final String customFormat = customFormats.get(formatId);
+                final String format = customFormat != null ? customFormat : BuiltinFormats.getBuiltinFormat(formatId);
+                dateStyles[styleIndex] = DateUtil.isADateFormat(formatId, format);
+            }
+        }
+
+        private void startSheet() throws ExcelFileStructureException {
+            ++sheetNum;
+            sheetName = sheetNum < sheetNames.length ? sheetNames[sheetNum] : null;
+            if (sheetName != null) {
+                assembler.startSheet(sheetName);
+            }
+        }
+
+        private void endSheet() throws ExcelFileStructureException {
+            if (sheetName == null) {
+                return;
+            }
+            if (rowNum != -1) {
+                assembler.acceptRow(rowNum, cells);
+                rowNum = -1;
+            }
+            for (final int rowNumWithoutCells : rowNumsWithoutCells) {
+                acceptRowWithoutCells(rowNumWithoutCells);
+            }
+            rowNumsWithoutCells.clear();
+            assembler.endSheet();
+            sheetName = null;
+        }
+
+        private void processSheetRecord(final Record record) throws ExcelFileStructureException {
+            switch (record.getSid()) {
+                case RowRecord.sid -> rowNumsWithoutCells.add(((RowRecord) record).getRowNumber());
+                case NumberRecord.sid -> {
+                    final NumberRecord numberRecord = (NumberRecord) record;
+                    moveToRow(numberRecord.getRow());
+                    setNumber(numberRecord.getColumn(), numberRecord.getXFIndex(), numberRecord.getValue());
+                }
+                case RKRecord.sid -> {
+                    final RKRecord rkRecord = (RKRecord) record;
+                    moveToRow(rkRecord.getRow());
+                    setNumber(rkRecord.getColumn(), rkRecord.getXFIndex(), rkRecord.getRKNumber());
+                }
+                case MulRKRecord.sid -> {
+                    final MulRKRecord mulRkRecord = (MulRKRecord) record;
+                    moveToRow(mulRkRecord.getRow());
+                    for (int valueNum = 0; valueNum < mulRkRecord.getNumColumns(); ++valueNum) {
+                        setNumber(mulRkRecord.getFirstColumn() + valueNum, mulRkRecord.getXFAt(valueNum), mulRkRecord.getRKNumberAt(valueNum));
+                    }
+                }
+                case LabelSSTRecord.sid -> {
+                    final LabelSSTRecord labelSstRecord = (LabelSSTRecord) record;
+                    moveToRow(labelSstRecord.getRow());
+                    cells.setString(labelSstRecord.getColumn(), sharedStrings.getString(labelSstRecord.getSSTIndex()).getString());
+                }
+                case LabelRecord.sid -> {
+                    final LabelRecord labelRecord = (LabelRecord) record;
+                    moveToRow(labelRecord.getRow());
+                    cells.setString(labelRecord.getColumn(), labelRecord.getValue());
+                }
+                case BoolErrRecord.sid -> {
+                    final BoolErrRecord boolErrRecord = (BoolErrRecord) record;
+                    moveToRow(boolErrRecord.getRow());
+                    if (boolErrRecord.isError()) {
+                        throw unsupportedCellType(boolErrRecord.getColumn(), CellType.ERROR);
+                    }
+                    cells.setBoolean(boolErrRecord.getColumn(), boolErrRecord.getBooleanValue());
+                }
+                case BlankRecord.sid -> {
+                    final BlankRecord blankRecord = (BlankRecord) record;
+                    moveToRow(blankRecord.getRow());
+                    cells.setEmpty(blankRecord.getColumn());
+                }
+                case MulBlankRecord.sid -> {
+                    final MulBlankRecord mulBlankRecord = (MulBlankRecord) record;
+                    moveToRow(mulBlankRecord.getRow());
+                    for (int columnNum = mulBlankRecord.getFirstColumn(); columnNum <= mulBlankRecord.getLastColumn(); ++columnNum) {
+                        cells.setEmpty(columnNum);
+                    }
+                }
+                case FormulaRecord.sid -> {
+                    final FormulaRecord formulaRecord = (FormulaRecord) record;
+                    moveToRow(formulaRecord.getRow());
+                    throw unsupportedCellType(formulaRecord.getColumn(), CellType.FORMULA);
+                }
+                default -> { }
+            }
+        }
+
+        /** Rows before the row of the cell, which have row records, but no cells, are reported as empty rows. */
+        private void moveToRow(final int cellRowNum) throws ExcelFileStructureException {
+            if (cellRowNum == rowNum) {
+                return;
+            }
+            if (rowNum != -1) {
+                assembler.acceptRow(rowNum, cells);
+            }
+            while (!rowNumsWithoutCells.isEmpty() && rowNumsWithoutCells.first() < cellRowNum) {
+                acceptRowWithoutCells(rowNumsWithoutCells.pollFirst());
+            }
+            rowNumsWithoutCells.remove(cellRowNum);
+            rowNum = cellRowNum;
+            cells.clear(0);
+        }
+
+        private void acceptRowWithoutCells(final int emptyRowNum) throws ExcelFileStructureException {
+            cells.clear(0);
+            assembler.acceptRow(emptyRowNum, cells);
+        }
+
+        private void setNumber(final int columnNum, final int styleIndex, final double value) {
+            if (styleIndex >= 0 && styleIndex < dateStyles.length && dateStyles[styleIndex] && DateUtil.isValidExcelDate(value)) {
+                cells.setDate(columnNum, DateUtil.getLocalDateTime(value, date1904));
+            } else {
+                cells.setDouble(columnNum, value);
+            }
+        }
+
+        private ExcelFileStructureException unsupportedCellType(final int columnNum, final CellType cellType) {
+            return new ExcelFileStructureException(
+                    "Sheet " + sheetName + ", row num " + rowNum + ", column num " + columnNum +
+                    ": Unsupported cell type: " + cellType
+            );
+        }
+    }
+}
@@ -0,0 +1,909 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.ZipPackagePart;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Reads xlsx files using "event" (SAX) API of Apache POI.
+ *
+ * Unlike {@code WorkbookFactory}, it does not build object model of the whole workbook
+ * in memory. Instead, the XML of each worksheet is parsed sequentially and rows are passed
+ * to {@link ExcelRowHandler} one by one, as soon as they are read. Only shared strings table
+ * and styles table are kept in memory.
+ *
+ * Parts of the xlsx file are read directly from the file mapped into memory (see {@link MappedZipFile}),
+ * without POI OPC package, which is used only for files, which can not be read this way.
+ *
+ * Each worksheet is separate part (file) inside of xlsx file, so worksheets can also be parsed
+ * in parallel (see {@link #readExcelFile(Path, SheetHandlerFactory, int)}).
+ */
+public class XlsxStreamingReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XlsxStreamingReader.class);
+
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler
+    ) throws IOException, ExcelFileStructureException {
+        readExcelFile(excelFilePath, handler, sheetName -> true);
+    }
+
+    /** Worksheets, which do not match {@code sheetFilter}, are not parsed at all. */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final ExcelRowHandler handler,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        withOpenedWorkbook(excelFilePath, workbook -> {
+            for (final WorkbookSheet sheet : workbook.sheets(sheetFilter)) {
+                parseSheet(workbook, sheet, handler);
+            }
+        });
+    }
+
+    /**
+     * Reads worksheets in parallel using up to {@code parallelism} threads. Shared strings and
+     * styles are loaded only once and are used by all the threads.
+     *
+     * If some worksheets fail, others are still read to the end. Then the first failure is thrown
+     * (other failures are attached to it as suppressed exceptions).
+     */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism
+    ) throws IOException, ExcelFileStructureException {
+        readExcelFile(excelFilePath, handlerFactory, parallelism, sheetName -> true);
+    }
+
+    /** Worksheets, which do not match {@code sheetFilter}, are not parsed, and no handlers are created for them. */
+    public static void readExcelFile(
+            final Path excelFilePath,
+            final SheetHandlerFactory handlerFactory,
+            final int parallelism,
+            final Predicate<String> sheetFilter
+    ) throws IOException, ExcelFileStructureException {
+        withOpenedWorkbook(excelFilePath, workbook -> {
+            final List<WorkbookSheet> sheets = workbook.sheets(sheetFilter);
+            final List<ExcelRowHandler> handlers = new ArrayList<>(sheets.size());
+            for (final WorkbookSheet sheet : sheets) {
+                handlers.add(handlerFactory.handlerFor(sheet.sheetName()));
+            }
+
+            if (parallelism == 1 || sheets.size() <= 1) {
+                for (int sheetNum = 0; sheetNum < sheets.size(); ++sheetNum) {
+                    parseSheet(workbook, sheets.get(sheetNum), handlers.get(sheetNum));
+                }
+                return;
+            }
+
+            final AtomicInteger threadNum = new AtomicInteger();
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sheets.size()), runnable -> {
+                final Thread thread = new Thread(runnable, "sheet-reader-" + threadNum.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                final List<Future<?>> futures = new ArrayList<>(sheets.size());
+                for (int sheetNum = 0; sheetNum < sheets.size(); ++sheetNum) {
+                    final WorkbookSheet sheet = sheets.get(sheetNum);
+                    final ExcelRowHandler handler = handlers.get(sheetNum);
+                    futures.add(executor.submit(() -> {
+                        parseSheet(workbook, sheet, handler);
+                        return null;
+                    }));
+                }
+                awaitAll(futures);
+            } finally {
+                shutdownAndAwait(executor);
+            }
+        });
+    }
+
+    /**
+     * Tasks, which are still running (e.g. when reading was interrupted), are interrupted and awaited,
+     * so that none of them opens parts of the workbook, after it is closed.
+     */
+    private static void shutdownAndAwait(final ExecutorService executor) {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+                LOGGER.warn("Worksheet readers are still running after they were interrupted. Waiting for them.");
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitAll(final List<Future<?>> futures) throws IOException, SAXException, OpenXML4JException {
+        Exception firstFailure = null;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                if (firstFailure == null) {
+                    firstFailure = (Exception) cause;
+                } else {
+                    firstFailure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for worksheets to be read.");
+            }
+        }
+        if (firstFailure instanceof IOException e) {
+            throw e;
+        } else if (firstFailure instanceof SAXException e) {
+            throw e;
+        } else if (firstFailure instanceof OpenXML4JException e) {
+            throw e;
+        } else if (firstFailure instanceof RuntimeException e) {
+            throw e;
+        } else if (firstFailure != null) {
+            throw new IllegalStateException("Unexpected exception while reading worksheet.", firstFailure);
+        }
+    }
+
+    private interface WorkbookAction {
+        void run(OpenedWorkbook workbook) throws IOException, SAXException, OpenXML4JException;
+    }
+
+    /**
+     * The file is mapped into memory and read directly (see {@link MappedZipFile}), and the mapping
+     * is released, when the action finishes. Files, which can not be read this way (e.g. zip64 or
+     * strict OOXML), are opened with POI OPC package.
+     */
+    private static void withOpenedWorkbook(
+            final Path excelFilePath,
+            final WorkbookAction action
+    ) throws IOException, ExcelFileStructureException {
+        MappedZipFile zipFile = null;
+        OpenedWorkbook mappedWorkbook = null;
+        try {
+            zipFile = MappedZipFile.open(excelFilePath);
+            mappedWorkbook = openMappedWorkbook(zipFile);
+        } catch (MappedZipFile.UnsupportedZipException e) {
+            LOGGER.info("File " + excelFilePath + " can not be read directly (" + e.getMessage() + "). It will be read with POI OPC package.");
+        } catch (IOException | SAXException e) {
+            // OPC package reports the problem, if the file is really broken.
+            LOGGER.info("File " + excelFilePath + " can not be read directly. It will be read with POI OPC package.", e);
+        }
+
+        try {
+            if (mappedWorkbook != null) {
+                action.run(mappedWorkbook);
+                return;
+            }
+            try (OPCPackage opcPackage = OPCPackage.open(excelFilePath.toFile(), PackageAccess.READ)) {
+                action.run(openOpcWorkbook(opcPackage));
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Failed to open excel file " + excelFilePath + " : " + e.getMessage(), e);
+        } catch (SAXException e) {
+            if (e.getException() instanceof ExcelFileStructureException structureException) {
+                for (final Throwable suppressed : e.getSuppressed()) {
+                    structureException.addSuppressed(suppressed);
+                }
+                throw structureException;
+            }
+            throw new IOException("Failed to parse excel file " + excelFilePath + " : " + e.getMessage(), e);
+        } finally {
+            if (zipFile != null) {
+                // Mapping is released, as soon as streams of its parts, which are still read, are closed.
+                zipFile.close();
+            }
+        }
+    }
+
+    private static void parseSheet(
+            final OpenedWorkbook workbook,
+            final WorkbookSheet sheet,
+            final ExcelRowHandler handler
+    ) throws IOException, SAXException {
+        try (InputStream sheetInputStream = sheet.part().open()) {
+            final WorksheetRowAssembler assembler = new WorksheetRowAssembler(handler);
+            assembler.startSheet(sheet.sheetName());
+            parseXml(sheetInputStream, new SheetXmlHandler(
+                    sheet.sheetName(), workbook.sharedStrings(), workbook.dateStyles(), workbook.date1904(), assembler));
+            try {
+                assembler.endSheet();
+            } catch (ExcelFileStructureException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
+
+    /** Part (file) of xlsx package, which can be opened several times (possibly by different threads). */
+    private interface Part {
+        InputStream open() throws IOException;
+    }
+
+    private record WorkbookSheet(String sheetName, Part part) {}
+
+    /** Parts of the workbook, which are needed to read any worksheet. They are shared between threads. */
+    private static class OpenedWorkbook {
+
+        private final List<WorkbookSheet> sheets;
+        private final CanonicalSharedStrings sharedStrings;
+        private final boolean[] dateStyles;
+        private final boolean date1904;
+
+        /** Shared strings and styles parts are {@code null}, if workbook does not have them. */
+        OpenedWorkbook(
+                final List<WorkbookSheet> sheets,
+                final boolean date1904,
+                final Part sharedStringsPart,
+                final Part stylesPart
+        ) throws IOException, SAXException {
+            this.sheets = sheets;
+            this.date1904 = date1904;
+            this.sharedStrings = readSharedStrings(sharedStringsPart);
+            this.dateStyles = readDateStyles(stylesPart);
+        }
+
+        CanonicalSharedStrings sharedStrings() {
+            return sharedStrings;
+        }
+
+        /** Index is style index. {@code true} means, that style formats numbers as dates. */
+        boolean[] dateStyles() {
+            return dateStyles;
+        }
+
+        boolean date1904() {
+            return date1904;
+        }
+
+        List<WorkbookSheet> sheets(final Predicate<String> sheetFilter) {
+            final List<WorkbookSheet> filteredSheets = new ArrayList<>();
+            for (final WorkbookSheet sheet : sheets) {
+                if (sheetFilter.test(sheet.sheetName())) {
+                    filteredSheets.add(sheet);
+                }
+            }
+            return filteredSheets;
+        }
+    }
+
+    /**
+     * Finds the parts in the same way, as POI does it: workbook by the relationship of the package,
+     * and worksheets, shared strings and styles by the relationships of the workbook.
+     */
+    private static OpenedWorkbook openMappedWorkbook(final MappedZipFile zipFile) throws IOException, SAXException {
+        final String workbookPartName = readRelationships(zipFile, "/").stream()
+                .filter(relationship -> PackageRelationshipTypes.CORE_DOCUMENT.equals(relationship.type()))
+                .map(Relationship::targetPartName)
+                .findFirst()
+                .orElseThrow(() -> new MappedZipFile.UnsupportedZipException("Workbook part is not found."));
+        final WorkbookXmlHandler workbookXml = new WorkbookXmlHandler();
+        try (InputStream workbookInputStream = mappedPart(zipFile, workbookPartName).open()) {
+            parseXml(workbookInputStream, workbookXml);
+        }
+
+        final Map<String, Relationship> workbookRelationships = new LinkedHashMap<>();
+        for (final Relationship relationship : readRelationships(zipFile, workbookPartName)) {
+            workbookRelationships.put(relationship.id(), relationship);
+        }
+        final List<WorkbookSheet> sheets = new ArrayList<>();
+        for (final Map.Entry<String, String> sheetRef : workbookXml.sheetRelationshipIds().entrySet()) {
+            final Relationship relationship = workbookRelationships.get(sheetRef.getValue());
+            if (relationship != null && SHEET_RELATIONSHIP_TYPES.contains(relationship.type())) {
+                sheets.add(new WorkbookSheet(sheetRef.getKey(), mappedPart(zipFile, relationship.targetPartName())));
+            }
+        }
+        return new OpenedWorkbook(
+                sheets,
+                workbookXml.date1904(),
+                mappedPart(zipFile, workbookRelationships.values(), XSSFRelation.SHARED_STRINGS.getRelation()),
+                mappedPart(zipFile, workbookRelationships.values(), XSSFRelation.STYLES.getRelation()));
+    }
+
+    private static OpenedWorkbook openOpcWorkbook(final OPCPackage opcPackage) throws IOException, SAXException, OpenXML4JException {
+        final XSSFReader xssfReader = new XSSFReader(opcPackage);
+        final List<WorkbookSheet> sheets = new ArrayList<>();
+        for (final OpcSheet sheet : listOpcSheets(xssfReader)) {
+            sheets.add(new WorkbookSheet(sheet.sheetName(), sheet.sheetPart()::getInputStream));
+        }
+        final List<PackagePart> sharedStringsParts = opcPackage.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        final List<PackagePart> stylesParts = opcPackage.getPartsByContentType(XSSFRelation.STYLES.getContentType());
+        return new OpenedWorkbook(
+                sheets,
+                isDate1904(xssfReader),
+                sharedStringsParts.isEmpty() ? null : sharedStringsParts.get(0)::getInputStream,
+                stylesParts.isEmpty() ? null : stylesParts.get(0)::getInputStream);
+    }
+
+    private static final Set<String> SHEET_RELATIONSHIP_TYPES = Set.of(
+            XSSFRelation.WORKSHEET.getRelation(),
+            XSSFRelation.CHARTSHEET.getRelation(),
+            XSSFRelation.MACRO_SHEET_BIN.getRelation());
+
+    private record Relationship(String id, String type, String targetPartName) {}
+
+    /** Relationships of the part (for the package itself {@code partName} is "/"). Targets are resolved to part names. */
+    private static List<Relationship> readRelationships(final MappedZipFile zipFile, final String partName) throws IOException, SAXException {
+        final int nameStart = partName.lastIndexOf('/') + 1;
+        final String relationshipsPartName = partName.substring(0, nameStart) + "_rels/" + partName.substring(nameStart) + ".rels";
+        final InputStream relationshipsInputStream = zipFile.openEntry(relationshipsPartName.substring(1));
+        if (relationshipsInputStream == null) {
+            return List.of();
+        }
+        final URI sourceUri;
+        try {
+            sourceUri = new URI(partName);
+        } catch (URISyntaxException e) {
+            throw new MappedZipFile.UnsupportedZipException("Part name " + partName + " is not valid URI.");
+        }
+        final List<Relationship> relationships = new ArrayList<>();
+        try (relationshipsInputStream) {
+            parseXml(relationshipsInputStream, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                    if (!"Relationship".equals(localName) || "External".equals(attributes.getValue("TargetMode"))) {
+                        return;
+                    }
+                    final String target = attributes.getValue("Target");
+                    try {
+                        relationships.add(new Relationship(
+                                attributes.getValue("Id"),
+                                attributes.getValue("Type"),
+                                sourceUri.resolve(new URI(target)).getPath()));
+                    } catch (URISyntaxException | RuntimeException e) {
+                        throw new SAXException(new MappedZipFile.UnsupportedZipException("Relationship target " + target + " is not valid URI."));
+                    }
+                }
+            });
+        }
+        return relationships;
+    }
+
+    /** {@code null}, if there is no relationship of the type. */
+    private static Part mappedPart(
+            final MappedZipFile zipFile,
+            final Collection<Relationship> relationships,
+            final String relationshipType
+    ) throws IOException {
+        for (final Relationship relationship : relationships) {
+            if (relationshipType.equals(relationship.type())) {
+                return mappedPart(zipFile, relationship.targetPartName());
+            }
+        }
+        return null;
+    }
+
+    private static Part mappedPart(final MappedZipFile zipFile, final String partName) throws IOException {
+        final String entryName = partName.substring(1); // part names start with "/"
+        if (zipFile.entry(entryName) == null) {
+            throw new MappedZipFile.UnsupportedZipException("Part " + partName + " is not found.");
+        }
+        return () -> zipFile.openEntry(entryName);
+    }
+
+    /**
+     * Shared strings table (text cells of all worksheets are stored in one table). Each string is
+     * created only once, so all the cells with the same text refer to the same String instance.
+     */
+    private static class CanonicalSharedStrings {
+
+        private final List<String> strings;
+
+        CanonicalSharedStrings(final List<String> strings) {
+            this.strings = strings;
+        }
+
+        String get(final int index) {
+            return strings.get(index);
+        }
+    }
+
+    private static CanonicalSharedStrings readSharedStrings(final Part sharedStringsPart) throws IOException, SAXException {
+        if (sharedStringsPart == null) {
+            return new CanonicalSharedStrings(List.of());
+        }
+        final SharedStringsXmlHandler sharedStringsXml = new SharedStringsXmlHandler();
+        try (InputStream inputStream = sharedStringsPart.open()) {
+            parseXml(inputStream, sharedStringsXml);
+        }
+        return new CanonicalSharedStrings(sharedStringsXml.strings());
+    }
+
+    /**
+     * Handles shared strings XML ("sharedStrings.xml"). Text is the same, as returned by
+     * {@code ReadOnlySharedStringsTable} of POI: phonetic runs are skipped, and escaped
+     * characters ("_xHHHH_") are decoded.
+     */
+    private static class SharedStringsXmlHandler extends DefaultHandler {
+
+        private final ArrayList<String> strings = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean collectingText;
+        private boolean inPhoneticRun;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "sst" -> {
+                    final String uniqueCount = attributes.getValue("uniqueCount");
+                    if (uniqueCount != null) {
+                        try {
+                            strings.ensureCapacity(Integer.parseInt(uniqueCount));
+                        } catch (NumberFormatException e) {
+                            // only a hint
+                        }
+                    }
+                }
+                case "si" -> text.setLength(0);
+                case "rPh" -> inPhoneticRun = true;
+                case "t" -> collectingText = !inPhoneticRun;
+                default -> { /* not interesting */ }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "t" -> collectingText = false;
+                case "rPh" -> inPhoneticRun = false;
+                case "si" -> strings.add(decodeEscapedCharacters(text));
+                default -> { /* not interesting */ }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectingText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        List<String> strings() {
+            strings.trimToSize();
+            return strings;
+        }
+    }
+
+    /** Characters, which can not be written to XML, are escaped by Excel as "_xHHHH_" (HHHH is hex code). */
+    private static String decodeEscapedCharacters(final CharSequence text) {
+        final StringBuilder decoded = new StringBuilder(text.length());
+        int charNum = 0;
+        while (charNum < text.length()) {
+            if (isEscapedCharacter(text, charNum)) {
+                decoded.append((char) Integer.parseInt(text, charNum + 2, charNum + 6, 16));
+                charNum += 7;
+            } else {
+                decoded.append(text.charAt(charNum));
+                ++charNum;
+            }
+        }
+        return decoded.toString();
+    }
+
+    private static boolean isEscapedCharacter(final CharSequence text, final int start) {
+        if (start + 7 > text.length() || text.charAt(start) != '_' || text.charAt(start + 1) != 'x' || text.charAt(start + 6) != '_') {
+            return false;
+        }
+        for (int charNum = start + 2; charNum < start + 6; ++charNum) {
+            if (Character.digit(text.charAt(charNum), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record OpcSheet(String sheetName, PackagePart sheetPart) {}
+
+    private static List<OpcSheet> listOpcSheets(final XSSFReader xssfReader) throws IOException, OpenXML4JException {
+        final List<OpcSheet> sheets = new ArrayList<>();
+        final XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        while (sheetIterator.hasNext()) {
+            // Stream is opened by the iterator, but we open it again later, possibly in other thread.
+            sheetIterator.next().close();
+            sheets.add(new OpcSheet(sheetIterator.getSheetName(), sheetIterator.getSheetPart()));
+        }
+        return sheets;
+    }
+
+    /** Names of the worksheets in the order of the workbook. Neither worksheets nor shared strings are parsed. */
+    public static List<String> sheetNames(final Path excelFilePath) throws IOException {
+        final List<String> sheetNames = new ArrayList<>();
+        try (OPCPackage opcPackage = OPCPackage.open(excelFilePath.toFile(), PackageAccess.READ)) {
+            for (final OpcSheet sheet : listOpcSheets(new XSSFReader(opcPackage))) {
+                sheetNames.add(sheet.sheetName());
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Failed to open excel file " + excelFilePath + " : " + e.getMessage(), e);
+        }
+        return sheetNames;
+    }
+
+    /**
+     * Fingerprint of each worksheet (key is sheet name), which changes, when content of the worksheet
+     * may have changed. It is calculated without parsing worksheets: from CRC and size of the zip
+     * entries of the worksheet itself and of the parts, which are needed to interpret it (shared
+     * strings and styles).
+     *
+     * Since shared strings are common for all worksheets, adding new text to one worksheet usually
+     * changes fingerprints of all the worksheets, which contain text.
+     */
+    public static Map<String, String> sheetFingerprints(final Path excelFilePath) throws IOException {
+        final Map<String, String> fingerprints = new LinkedHashMap<>();
+        try (OPCPackage opcPackage = OPCPackage.open(excelFilePath.toFile(), PackageAccess.READ)) {
+            final XSSFReader xssfReader = new XSSFReader(opcPackage);
+            final String commonFingerprint =
+                    "sst=" + partsFingerprint(opcPackage.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType())) +
+                    ";styles=" + partsFingerprint(opcPackage.getPartsByContentType(XSSFRelation.STYLES.getContentType())) +
+                    ";date1904=" + isDate1904(xssfReader);
+            for (final OpcSheet sheet : listOpcSheets(xssfReader)) {
+                fingerprints.put(sheet.sheetName(), "sheet=" + partFingerprint(sheet.sheetPart()) + ";" + commonFingerprint);
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Failed to open excel file " + excelFilePath + " : " + e.getMessage(), e);
+        }
+        return fingerprints;
+    }
+
+    private static String partsFingerprint(final List<PackagePart> parts) throws IOException {
+        final StringBuilder fingerprint = new StringBuilder();
+        for (final PackagePart part : parts) {
+            fingerprint.append(partFingerprint(part));
+        }
+        return fingerprint.toString();
+    }
+
+    /** CRC and size of the part. They are taken from zip entry, if possible. */
+    private static String partFingerprint(final PackagePart part) throws IOException {
+        if (part instanceof ZipPackagePart zipPart
+                && zipPart.getZipArchive().getCrc() != -1
+                && zipPart.getZipArchive().getSize() != -1) {
+            return Long.toHexString(zipPart.getZipArchive().getCrc()) + "/" + zipPart.getZipArchive().getSize();
+        }
+        final CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream inputStream = part.getInputStream()) {
+            final byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                crc.update(buffer, 0, bytesRead);
+                size += bytesRead;
+            }
+        }
+        return Long.toHexString(crc.getValue()) + "/" + size;
+    }
+
+    /**
+     * Reads only number formats of cell styles, which is much cheaper, than building {@code StylesTable}.
+     * Format of the style is found in the same way, as {@code XSSFCellStyle.getDataFormatString()} does it.
+     */
+    private static boolean[] readDateStyles(final Part stylesPart) throws IOException, SAXException {
+        if (stylesPart == null) {
+            return new boolean[0];
+        }
+        final Map<Integer, String> numberFormats = new HashMap<>();
+        final List<Integer> styleFormatIds = new ArrayList<>();
+        try (InputStream inputStream = stylesPart.open()) {
+            parseXml(inputStream, new DefaultHandler() {
+                private boolean inCellFormats;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    switch (localName) {
+                        case "numFmt" -> numberFormats.put(
+                                (int) (short) Integer.parseInt(attributes.getValue("numFmtId")), attributes.getValue("formatCode"));
+                        case "cellXfs" -> inCellFormats = true;
+                        case "xf" -> {
+                            if (inCellFormats) {
+                                final String formatId = attributes.getValue("numFmtId");
+                                styleFormatIds.add(formatId == null ? 0 : (int) (short) Integer.parseInt(formatId));
+                            }
+                        }
+                        default -> { /* not interesting */ }
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    if ("cellXfs".equals(localName)) {
+                        inCellFormats = false;
+                    }
+                }
+            });
+        }
+        final boolean[] dateStyles = new boolean[styleFormatIds.size()];
+        for (int styleIndex = 0; styleIndex < dateStyles.length; ++styleIndex) {
+            final int formatId = styleFormatIds.get(styleIndex);
+            final String customFormat = numberFormats.get(formatId);
+            final String format = customFormat != null ? customFormat : BuiltinFormats.getBuiltinFormat(formatId);
+            dateStyles[styleIndex] = DateUtil.isADateFormat(formatId, format);
+        }
+        return dateStyles;
+    }
+
+    private static boolean isDate1904(final XSSFReader xssfReader) throws IOException, OpenXML4JException, SAXException {
+        final WorkbookXmlHandler workbookXml = new WorkbookXmlHandler();
+        try (InputStream workbookInputStream = xssfReader.getWorkbookData()) {
+            parseXml(workbookInputStream, workbookXml);
+        }
+        return workbookXml.date1904();
+    }
+
+    /** Handles workbook XML ("workbook.xml"): sheet names with their relationship ids and date system. */
+    private static class WorkbookXmlHandler extends DefaultHandler {
+
+        private static final String RELATIONSHIPS_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+        private final Map<String, String> sheetRelationshipIds = new LinkedHashMap<>();
+        private boolean date1904;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "workbookPr" -> {
+                    final String value = attributes.getValue("date1904");
+                    date1904 = "1".equals(value) || "true".equalsIgnoreCase(value);
+                }
+                case "sheet" -> {
+                    sheetRelationshipIds.put(attributes.getValue("name"), attributes.getValue(RELATIONSHIPS_NAMESPACE, "id"));
+                }
+                default -> { /* not interesting */ }
+            }
+        }
+
+        /** Key is sheet name. Order is the order of sheets in the workbook. */
+        Map<String, String> sheetRelationshipIds() {
+            return sheetRelationshipIds;
+        }
+
+        boolean date1904() {
+            return date1904;
+        }
+    }
+
+    private static void parseXml(final InputStream inputStream, final DefaultHandler contentHandler) throws IOException, SAXException {
+        final XMLReader xmlReader;
+        try {
+            xmlReader = XMLHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Failed to create SAX parser.", e);
+        }
+        xmlReader.setContentHandler(contentHandler);
+        xmlReader.parse(new InputSource(inputStream));
+    }
+
+    /**
+     * Handles content of one worksheet XML ("sheetN.xml"). Collects cells of each row and passes
+     * complete rows to {@link WorksheetRowAssembler}.
+     */
+    private static class SheetXmlHandler extends DefaultHandler {
+
+        private final String sheetName;
+        private final CanonicalSharedStrings sharedStrings;
+        private final boolean[] dateStyles;
+        private final boolean date1904;
+        private final WorksheetRowAssembler assembler;
+
+        private final RowCursor rowCells = new RowCursor();
+        private int rowNum = -1;
+        private int previousRowSize;
+        private int nextColumnNum;
+
+        private int columnNum;
+        private String cellType;
+        private String cellStyle;
+        private boolean cellHasFormula;
+        private boolean cellHasValue;
+        private final StringBuilder cellValue = new StringBuilder();
+        private boolean collectingText;
+        private boolean inInlineString;
+        private boolean inPhoneticRun;
+
+        SheetXmlHandler(
+                final String sheetName,
+                final CanonicalSharedStrings sharedStrings,
+                final boolean[] dateStyles,
+                final boolean date1904,
+                final WorksheetRowAssembler assembler
+        ) {
+            this.sheetName = sheetName;
+            this.sharedStrings = sharedStrings;
+            this.dateStyles = dateStyles;
+            this.date1904 = date1904;
+            this.assembler = assembler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row" -> {
+                    final String rowRef = attributes.getValue("r");
+                    rowNum = rowRef == null ? rowNum + 1 : Integer.parseInt(rowRef) - 1; // "r" is 1-based
+                    rowCells.clear(previousRowSize);
+                    nextColumnNum = 0;
+                }
+                case "c" -> {
+                    final String cellRef = attributes.getValue("r");
+                    columnNum = cellRef == null ? nextColumnNum : columnIndex(cellRef);
+                    nextColumnNum = columnNum + 1;
+                    cellType = attributes.getValue("t");
+                    cellStyle = attributes.getValue("s");
+                    cellHasFormula = false;
+                    cellHasValue = false;
+                    cellValue.setLength(0);
+                }
+                case "f" -> cellHasFormula = true;
+                case "v" -> {
+                    cellHasValue = true;
+                    collectingText = true;
+                }
+                case "is" -> {
+                    cellHasValue = true;
+                    inInlineString = true;
+                }
+                case "rPh" -> inPhoneticRun = true;
+                case "t" -> collectingText = inInlineString && !inPhoneticRun;
+                default -> { /* not interesting */ }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v", "t" -> collectingText = false;
+                case "is" -> inInlineString = false;
+                case "rPh" -> inPhoneticRun = false;
+                case "c" -> wrapException(() -> {
+                    setCellValue();
+                    return null;
+                });
+                case "row" -> wrapException(() -> {
+                    assembler.acceptRow(rowNum, rowCells);
+                    previousRowSize = rowCells.size();
+                    return null;
+                });
+                default -> { /* not interesting */ }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectingText) {
+                cellValue.append(ch, start, length);
+            }
+        }
+
+        private void setCellValue() throws ExcelFileStructureException {
+            if (cellHasFormula) {
+                throw unsupportedCellType("FORMULA");
+            }
+            if (!cellHasValue) {
+                rowCells.setEmpty(columnNum);
+                return;
+            }
+            if (cellType == null || "n".equals(cellType)) {
+                if (cellValue.length() == 0) {
+                    rowCells.setEmpty(columnNum);
+                    return;
+                }
+                // Parsing of CharSequence would not help: Double.parseDouble() needs String anyway.
+                final double doubleValue = Double.parseDouble(cellValue.toString());
+                if (isDateStyle() && DateUtil.isValidExcelDate(doubleValue)) {
+                    rowCells.setDate(columnNum, DateUtil.getLocalDateTime(doubleValue, date1904));
+                } else {
+                    rowCells.setDouble(columnNum, doubleValue);
+                }
+                return;
+            }
+            switch (cellType) {
+                case "s" -> rowCells.setString(columnNum, sharedStrings.get(parseIndex(cellValue)));
+                case "inlineStr", "str" -> rowCells.setString(columnNum, cellValue.toString());
+                case "b" -> rowCells.setBoolean(columnNum, cellValue.length() == 1 && cellValue.charAt(0) == '1');
+                case "e" -> throw unsupportedCellType("ERROR");
+                default -> throw unsupportedCellType(cellType);
+            }
+        }
+
+        /** Same as {@code Integer.parseInt(text.toString())}, but without creating the string. */
+        private int parseIndex(final CharSequence text) throws ExcelFileStructureException {
+            try {
+                return Integer.parseInt(text, 0, text.length(), 10);
+            } catch (NumberFormatException e) {
+                throw new ExcelFileStructureException("Sheet " + sheetName + ", row num " + rowNum + ", column num " + columnNum +
+                        ": Shared string index is not a number: " + text);
+            }
+        }
+
+        /** 0-based column index of the cell reference like "AB12". Unlike {@link CellReference} it does not allocate. */
+        private static int columnIndex(final String cellRef) {
+            int columnIndex = 0;
+            for (int charNum = 0; charNum < cellRef.length(); ++charNum) {
+                final char c = cellRef.charAt(charNum);
+                if (c >= 'A' && c <= 'Z') {
+                    columnIndex = columnIndex * 26 + (c - 'A' + 1);
+                } else if (c >= '0' && c <= '9' && charNum > 0) {
+                    break;
+                } else {
+                    // Unusual reference (e.g. with "$"). Let POI deal with it.
+                    return new CellReference(cellRef).getCol();
+                }
+            }
+            return columnIndex - 1;
+        }
+
+        private boolean isDateStyle() {
+            if (cellStyle == null) {
+                return false;
+            }
+            final int styleIndex = Integer.parseInt(cellStyle);
+            return styleIndex < dateStyles.length && dateStyles[styleIndex];
+        }
+
+        private ExcelFileStructureException unsupportedCellType(final String type) {
+            return new ExcelFileStructureException(
+                    "Sheet " + sheetName + ", row num " + rowNum + ", column num " + columnNum +
+                    ": Unsupported cell type: " + type
+            );
+        }
+
+        private interface StructureAction<T> {
+            T run() throws ExcelFileStructureException;
+        }
+
+        private static <T> T wrapException(final StructureAction<T> action) throws SAXException {
+            try {
+                return action.run();
+            } catch (ExcelFileStructureException e) {
+                throw new SAXException(e);
+            }
+        }
+    }
+}
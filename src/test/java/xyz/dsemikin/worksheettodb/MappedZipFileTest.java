@@ -0,0 +1,201 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedZipFileTest {
+
+    private static final byte[] TEXT;
+    private static final byte[] RANDOM = new byte[100_000];
+
+    static {
+        final Random random = new Random(42);
+        final StringBuilder text = new StringBuilder();
+        for (int rowNum = 1; rowNum <= 20_000; ++rowNum) {
+            text.append("<row r=\"").append(rowNum).append("\"><c r=\"A").append(rowNum).append("\"><v>")
+                    .append(random.nextInt()).append("</v></c></row>\n");
+        }
+        TEXT = text.toString().getBytes(StandardCharsets.UTF_8);
+        random.nextBytes(RANDOM);
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesAreReadAsByJavaZip() throws IOException {
+        final Path file = writeZip(
+                stored("stored.xml", TEXT),
+                deflated("xl/worksheets/sheet1.xml", TEXT),
+                deflated("random.bin", RANDOM),
+                stored("empty.txt", new byte[0]),
+                deflated("empty-deflated.txt", new byte[0]),
+                deflated("\u00fcn\u00efc\u00f6d\u00e9/\u2713.xml", TEXT)
+        );
+        try (ZipFile zipFile = new ZipFile(file.toFile()); MappedZipFile mappedZipFile = MappedZipFile.open(file)) {
+            for (final ZipEntry zipEntry : zipFile.stream().toList()) {
+                final byte[] expected;
+                try (InputStream input = zipFile.getInputStream(zipEntry)) {
+                    expected = input.readAllBytes();
+                }
+                assertEquals(zipEntry.getMethod(), mappedZipFile.entry(zipEntry.getName()).method());
+                assertArrayEquals(expected, readAll(mappedZipFile, zipEntry.getName()), zipEntry.getName());
+                assertArrayEquals(expected, readByteByByte(mappedZipFile, zipEntry.getName()), zipEntry.getName());
+            }
+            assertNull(mappedZipFile.openEntry("missing.xml"));
+        }
+    }
+
+    @Test
+    void truncatedDeflatedEntryFailsAsInJavaZip() throws IOException {
+        final Path file = writeZip(deflated("sheet.xml", RANDOM));
+        setCompressedSizeInCentralDirectory(file, "sheet.xml", RANDOM.length / 2);
+
+        try (ZipFile zipFile = new ZipFile(file.toFile()); InputStream input = zipFile.getInputStream(zipFile.getEntry("sheet.xml"))) {
+            assertThrows(IOException.class, input::readAllBytes);
+        }
+        try (MappedZipFile mappedZipFile = MappedZipFile.open(file)) {
+            assertThrows(IOException.class, () -> readAll(mappedZipFile, "sheet.xml"));
+        }
+    }
+
+    @Test
+    void truncatedStoredEntryIsShorterAsInJavaZip() throws IOException {
+        final Path file = writeZip(stored("sheet.xml", TEXT));
+        setCompressedSizeInCentralDirectory(file, "sheet.xml", 1000);
+
+        try (ZipFile zipFile = new ZipFile(file.toFile()); InputStream input = zipFile.getInputStream(zipFile.getEntry("sheet.xml"))) {
+            assertArrayEquals(Arrays.copyOf(TEXT, 1000), input.readAllBytes());
+        }
+        try (MappedZipFile mappedZipFile = MappedZipFile.open(file)) {
+            assertArrayEquals(Arrays.copyOf(TEXT, 1000), readAll(mappedZipFile, "sheet.xml"));
+        }
+    }
+
+    @Test
+    void entryBeyondEndOfFileFails() throws IOException {
+        final Path file = writeZip(deflated("sheet.xml", TEXT));
+        setCompressedSizeInCentralDirectory(file, "sheet.xml", Files.size(file));
+
+        try (MappedZipFile mappedZipFile = MappedZipFile.open(file)) {
+            assertThrows(ZipException.class, () -> mappedZipFile.openEntry("sheet.xml"));
+            // Stream, which failed to open, is not counted, so the mapping is released on close.
+            mappedZipFile.close();
+            assertThrows(IOException.class, () -> mappedZipFile.openEntry("sheet.xml"));
+        }
+    }
+
+    @Test
+    void highlyCompressedEntryIsRejected() throws IOException {
+        final Path file = writeZip(deflated("bomb.xml", new byte[10_000_000]));
+        try (MappedZipFile mappedZipFile = MappedZipFile.open(file)) {
+            assertThrows(ZipException.class, () -> readAll(mappedZipFile, "bomb.xml"));
+        }
+    }
+
+    @Test
+    void truncatedFileFailsAsInJavaZip() throws IOException {
+        final Path file = writeZip(deflated("sheet.xml", RANDOM), stored("other.xml", TEXT));
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(ZipException.class, () -> new ZipFile(file.toFile()).close());
+        assertThrows(MappedZipFile.UnsupportedZipException.class, () -> MappedZipFile.open(file).close());
+    }
+
+    @Test
+    void openStreamIsReadableAfterFileIsClosed() throws IOException {
+        final Path file = writeZip(deflated("sheet.xml", TEXT));
+        final MappedZipFile mappedZipFile = MappedZipFile.open(file);
+        try (InputStream input = mappedZipFile.openEntry("sheet.xml")) {
+            mappedZipFile.close();
+            assertThrows(IOException.class, () -> mappedZipFile.openEntry("sheet.xml"));
+            assertArrayEquals(TEXT, input.readAllBytes());
+        }
+    }
+
+    private record TestEntry(String name, byte[] content, int method) {}
+
+    private static TestEntry stored(final String name, final byte[] content) {
+        return new TestEntry(name, content, ZipEntry.STORED);
+    }
+
+    private static TestEntry deflated(final String name, final byte[] content) {
+        return new TestEntry(name, content, ZipEntry.DEFLATED);
+    }
+
+    private Path writeZip(final TestEntry... entries) throws IOException {
+        final Path file = Files.createTempFile(directory, "test", ".zip");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(file), StandardCharsets.UTF_8)) {
+            for (final TestEntry entry : entries) {
+                final ZipEntry zipEntry = new ZipEntry(entry.name());
+                zipEntry.setMethod(entry.method());
+                if (entry.method() == ZipEntry.STORED) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(entry.content());
+                    zipEntry.setSize(entry.content().length);
+                    zipEntry.setCompressedSize(entry.content().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                output.putNextEntry(zipEntry);
+                output.write(entry.content());
+                output.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    /** Readers use sizes from the central directory, so only it is changed. */
+    private static void setCompressedSizeInCentralDirectory(final Path file, final String name, final long compressedSize) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset + 46 + nameBytes.length <= bytes.length; ++offset) {
+            if (buffer.getInt(offset) == 0x02014b50
+                    && Arrays.equals(bytes, offset + 46, offset + 46 + nameBytes.length, nameBytes, 0, nameBytes.length)) {
+                buffer.putInt(offset + 20, (int) compressedSize);
+                Files.write(file, bytes);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Entry " + name + " is not found in " + file + ".");
+    }
+
+    private static byte[] readAll(final MappedZipFile zipFile, final String name) throws IOException {
+        try (InputStream input = zipFile.openEntry(name)) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static byte[] readByteByByte(final MappedZipFile zipFile, final String name) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = zipFile.openEntry(name)) {
+            int b;
+            while ((b = input.read()) != -1) {
+                output.write(b);
+            }
+        }
+        return output.toByteArray();
+    }
+}
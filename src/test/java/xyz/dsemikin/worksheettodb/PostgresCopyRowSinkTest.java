@@ -0,0 +1,76 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostgresCopyRowSinkTest {
+
+    @Test
+    void specialCharactersAreEscaped() {
+        assertEquals("a\\tb", escaped("a\tb"));
+        assertEquals("line 1\\nline 2\\r\\n", escaped("line 1\nline 2\r\n"));
+        assertEquals("C:\\\\data\\\\file.xlsx", escaped("C:\\data\\file.xlsx"));
+        assertEquals("plain text, with \"quotes\" and 'apostrophes'; \u00fc\u2713", escaped("plain text, with \"quotes\" and 'apostrophes'; \u00fc\u2713"));
+    }
+
+    @Test
+    void nullIsNotMixedUpWithText() {
+        assertEquals("\\N", escaped(null));
+        assertEquals("\\\\N", escaped("\\N"));
+        assertEquals("N", escaped("N"));
+        assertEquals("", escaped(""));
+    }
+
+    @Test
+    void rowIsParsedBackByCopyRules() {
+        final List<String> values = Arrays.asList("\t", "\n", "\\", "\\N", null, "", "\\\\N\t\\n", "end\r");
+        final StringBuilder line = new StringBuilder();
+        for (final String value : values) {
+            if (line.length() > 0) {
+                line.append('\t');
+            }
+            PostgresCopyRowSink.appendEscaped(line, value);
+        }
+        assertEquals(-1, line.indexOf("\n"));
+        assertEquals(values, parseCopyLine(line.toString()));
+    }
+
+    private static String escaped(final String text) {
+        final StringBuilder buffer = new StringBuilder();
+        PostgresCopyRowSink.appendEscaped(buffer, text);
+        return buffer.toString();
+    }
+
+    /** Columns of one line in COPY text format, as the server reads them (only the escapes, which are written by the sink). */
+    private static List<String> parseCopyLine(final String line) {
+        final List<String> values = new ArrayList<>();
+        for (final String field : line.split("\t", -1)) {
+            if (field.equals("\\N")) {
+                values.add(null);
+                continue;
+            }
+            final StringBuilder value = new StringBuilder();
+            for (int charNum = 0; charNum < field.length(); ++charNum) {
+                final char c = field.charAt(charNum);
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                final char escaped = field.charAt(++charNum);
+                value.append(switch (escaped) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> escaped;
+                });
+            }
+            values.add(value.toString());
+        }
+        return values;
+    }
+}
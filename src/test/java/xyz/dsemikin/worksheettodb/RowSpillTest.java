@@ -0,0 +1,163 @@
+package xyz.dsemikin.worksheettodb;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowSpillTest {
+
+    private static final List<String> COLUMN_NAMES = List.of("text", "number", "date", "flag", "nothing");
+
+    @Test
+    void rowsAreReadBackAsTheyWereRecorded() throws Exception {
+        final RowSource source = sourceOf(Map.of(
+                "first", List.of(
+                        row(1, ExcelValueWrapper.of("plain"), ExcelValueWrapper.of(1.5), ExcelValueWrapper.of(LocalDateTime.of(2021, 5, 17, 10, 30, 0, 123_000_000)),
+                                ExcelValueWrapper.TRUE, ExcelValueWrapper.EMPTY),
+                        row(2, ExcelValueWrapper.of("\u00dc\u00f1\u00ef\u00e7\u00f8d\u00e9 \u2713 \ud83d\ude00 and \t\n"), ExcelValueWrapper.of(-0.0), ExcelValueWrapper.of(LocalDateTime.of(1899, 12, 31, 0, 0)),
+                                ExcelValueWrapper.FALSE, ExcelValueWrapper.EMPTY),
+                        row(7, ExcelValueWrapper.of(""), ExcelValueWrapper.of(Double.MAX_VALUE), ExcelValueWrapper.EMPTY,
+                                ExcelValueWrapper.EMPTY, ExcelValueWrapper.EMPTY)
+                ),
+                "second", List.of(
+                        row(1, ExcelValueWrapper.of("x".repeat(100_000)), ExcelValueWrapper.of(42), ExcelValueWrapper.EMPTY,
+                                ExcelValueWrapper.TRUE, ExcelValueWrapper.EMPTY)
+                )
+        ));
+        final CollectingHandler recorded = new CollectingHandler();
+        final CollectingHandler replayed = new CollectingHandler();
+        try (RowSpill spill = new RowSpill()) {
+            spill.record(source, recorded);
+            assertTrue(spill.sizeInBytes() > 100_000);
+            spill.readRows(replayed);
+        }
+
+        assertEquals(source.toString(), recorded.toString());
+        assertEquals(recorded.toString(), replayed.toString());
+        assertEquals(List.of("first", "second"), replayed.sheetNames);
+        for (final String sheetName : replayed.sheetNames) {
+            assertSame(recorded.columnStats.get(sheetName), replayed.columnStats.get(sheetName));
+        }
+    }
+
+    @Test
+    void sheetsAreReadBackInParallel() throws Exception {
+        final List<Row> rows = new ArrayList<>();
+        for (int rowNum = 1; rowNum <= 10_000; ++rowNum) {
+            rows.add(row(rowNum, ExcelValueWrapper.of("row " + rowNum), ExcelValueWrapper.of(rowNum), ExcelValueWrapper.EMPTY,
+                    ExcelValueWrapper.of(rowNum % 2 == 0), ExcelValueWrapper.EMPTY));
+        }
+        final RowSource source = sourceOf(Map.of("a", rows, "b", rows, "c", rows));
+        final Map<String, CollectingHandler> replayed = new ConcurrentHashMap<>();
+        try (RowSpill spill = new RowSpill()) {
+            spill.record(source, new CollectingHandler());
+            spill.readRowsInParallel(sheetName -> replayed.computeIfAbsent(sheetName, name -> new CollectingHandler()), 3);
+        }
+
+        final Map<String, CollectingHandler> expected = new ConcurrentHashMap<>();
+        source.readRows(ExcelFileReader.demultiplex(sheetName -> expected.computeIfAbsent(sheetName, name -> new CollectingHandler())));
+        assertEquals(expected.keySet(), replayed.keySet());
+        for (final String sheetName : expected.keySet()) {
+            assertEquals(expected.get(sheetName).toString(), replayed.get(sheetName).toString());
+        }
+    }
+
+    private record Row(int rowNum, List<ExcelValueWrapper> values) {}
+
+    private static Row row(final int rowNum, final ExcelValueWrapper... values) {
+        return new Row(rowNum, List.of(values));
+    }
+
+    /** Source, which passes values through a reused cursor, as readers do. Sheets are read in the order of their names. */
+    private static RowSource sourceOf(final Map<String, List<Row>> sheets) {
+        return new RowSource() {
+            @Override
+            public void readRows(final ExcelRowHandler handler) throws ExcelFileStructureException {
+                for (final String sheetName : sheets.keySet().stream().sorted().toList()) {
+                    handler.startSheet(sheetName, COLUMN_NAMES);
+                    final RowCursor cells = new RowCursor();
+                    final List<ColumnStats> columnStats = new ArrayList<>();
+                    for (int columnNum = 0; columnNum < COLUMN_NAMES.size(); ++columnNum) {
+                        columnStats.add(new ColumnStats());
+                    }
+                    for (final Row row : sheets.get(sheetName)) {
+                        cells.clear(COLUMN_NAMES.size());
+                        for (int columnNum = 0; columnNum < COLUMN_NAMES.size(); ++columnNum) {
+                            final ExcelValueWrapper value = row.values().get(columnNum);
+                            switch (value.type()) {
+                                case STRING -> cells.setString(columnNum, value.maybeStringValue());
+                                case DOUBLE -> cells.setDouble(columnNum, value.doubleValue());
+                                case DATE -> cells.setDate(columnNum, value.maybeDateValue());
+                                case BOOLEAN -> cells.setBoolean(columnNum, value.booleanValue());
+                                case EMPTY -> cells.setEmpty(columnNum);
+                            }
+                            columnStats.get(columnNum).add(value);
+                        }
+                        handler.row(row.rowNum(), cells);
+                    }
+                    handler.endSheet(columnStats);
+                }
+            }
+
+            @Override
+            public String toString() {
+                final CollectingHandler handler = new CollectingHandler();
+                try {
+                    readRows(handler);
+                } catch (ExcelFileStructureException e) {
+                    throw new IllegalStateException(e);
+                }
+                return handler.toString();
+            }
+        };
+    }
+
+    /** Keeps rows as text, so that values, which the reader reuses, are compared by content. */
+    private static class CollectingHandler implements ExcelRowHandler {
+
+        private final List<String> sheetNames = new ArrayList<>();
+        private final List<String> rows = new ArrayList<>();
+        private final Map<String, List<ColumnStats>> columnStats = new ConcurrentHashMap<>();
+
+        @Override
+        public void startSheet(final String sheetName, final List<String> columnNames) {
+            sheetNames.add(sheetName);
+            rows.add(sheetName + " " + columnNames);
+        }
+
+        @Override
+        public void row(final int rowNum, final List<ExcelValueWrapper> values) {
+            final StringBuilder row = new StringBuilder().append(rowNum).append(':');
+            for (final ExcelValueWrapper value : values) {
+                row.append(' ').append(value.type()).append('=');
+                switch (value.type()) {
+                    case STRING -> row.append(value.maybeStringValue());
+                    // Bits, so that e.g. -0.0 is not equal to 0.0.
+                    case DOUBLE -> row.append(Long.toHexString(Double.doubleToRawLongBits(value.doubleValue())));
+                    case DATE -> row.append(value.maybeDateValue());
+                    case BOOLEAN -> row.append(value.booleanValue());
+                    case EMPTY -> row.append('-');
+                }
+            }
+            rows.add(row.toString());
+        }
+
+        @Override
+        public void endSheet(final List<ColumnStats> columnStats) {
+            this.columnStats.put(sheetNames.get(sheetNames.size() - 1), columnStats);
+        }
+
+        @Override
+        public String toString() {
+            return String.join("\n", rows);
+        }
+    }
+}